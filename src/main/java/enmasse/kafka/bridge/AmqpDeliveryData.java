@@ -16,17 +16,17 @@
 
 package enmasse.kafka.bridge;
 
-import io.vertx.core.shareddata.Shareable;
 import io.vertx.proton.ProtonDelivery;
 
 /**
  * Wrapper class around AMQP delivery withe a internal generated delivery ID (not tag)
  */
-public class AmqpDeliveryData implements Shareable {
+public class AmqpDeliveryData {
 
 	private String linkName;
-	private String deliveryId;
+	private long deliveryId;
 	private ProtonDelivery delivery;
+	private long sendTime;
 	
 	/**
 	 * Constructor
@@ -34,11 +34,13 @@ public class AmqpDeliveryData implements Shareable {
 	 * @param linkName				AMQP link name related to the delivery
 	 * @param deliveryId		Internal generated delivery ID
 	 * @param delivery			AMQP delivery
+	 * @param sendTime			time (System.nanoTime) at which the related record was sent to Kafka
 	 */
-	public AmqpDeliveryData(String linkName, String deliveryId, ProtonDelivery delivery) {
+	public AmqpDeliveryData(String linkName, long deliveryId, ProtonDelivery delivery, long sendTime) {
 		this.linkName = linkName;
 		this.deliveryId = deliveryId;
 		this.delivery = delivery;
+		this.sendTime = sendTime;
 	}
 
 	/**
@@ -51,7 +53,7 @@ public class AmqpDeliveryData implements Shareable {
 	 * Internal generated delivery ID
 	 * @return
 	 */
-	public String getDeliveryId() {
+	public long getDeliveryId() {
 		return this.deliveryId;
 	}
 	
@@ -62,4 +64,12 @@ public class AmqpDeliveryData implements Shareable {
 	public ProtonDelivery getDelivery() {
 		return this.delivery;
 	}
+
+	/**
+	 * Time (System.nanoTime) at which the related record was sent to Kafka
+	 * @return
+	 */
+	public long getSendTime() {
+		return this.sendTime;
+	}
 }
@@ -0,0 +1,205 @@
+/*
+ * Copyright 2016 Red Hat Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package enmasse.kafka.bridge;
+
+import io.vertx.core.Handler;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Commits the offsets of the fetched records for an AT_MOST_ONCE sender link, ahead of their delivery.
+ * Each batch of records is committed asynchronously and it's handed for sending only when its commit succeeds,
+ * so a record is never delivered before its offset is committed (no redelivery) while the next batches
+ * are fetched and committed meantime. The records waiting for their commit are bounded by a window :
+ * when a batch would exceed it, all the waiting batches are committed synchronously.
+ * It MUST be used by the Kafka consumer thread only (commit callbacks are executed by the poll)
+ *
+ * @param <K>		Key type for Kafka consumer and record
+ * @param <V>		Value type for Kafka consumer and record
+ */
+public class AtMostOnceCommitter<K, V> {
+
+	private static final Logger LOG = LoggerFactory.getLogger(AtMostOnceCommitter.class);
+
+	private Consumer<K, V> consumer;
+
+	// max number of records waiting for their commit, 0 means synchronous commit for each batch
+	private int window;
+
+	// handler in charge of sending the committed records
+	private Handler<ConsumerRecords<K, V>> handler;
+
+	// batches waiting for their commit, in fetching order
+	private Queue<Batch<K, V>> batches;
+	private volatile int waiting;
+
+	// latency (in ms) of the last commit
+	private volatile long latency;
+
+	/**
+	 * Constructor
+	 *
+	 * @param consumer		Kafka consumer
+	 * @param window		max number of records waiting for their commit
+	 * @param handler		handler in charge of sending the committed records
+	 */
+	public AtMostOnceCommitter(Consumer<K, V> consumer, int window, Handler<ConsumerRecords<K, V>> handler) {
+
+		this.consumer = consumer;
+		this.window = Math.max(0, window);
+		this.handler = handler;
+		this.batches = new ArrayDeque<>();
+	}
+
+	/**
+	 * Commit the offsets of the fetched records, which are handed for sending
+	 * as soon as the commit succeeds
+	 *
+	 * @param records	fetched records
+	 */
+	public void commit(ConsumerRecords<K, V> records) {
+
+		if (records.isEmpty())
+			return;
+
+		Batch<K, V> batch = new Batch<>(records, this.offsets(records));
+		this.batches.add(batch);
+		this.waiting += records.count();
+
+		if (this.waiting > this.window) {
+
+			// window exceeded, all the waiting batches are committed synchronously
+			Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+			for (Batch<K, V> waiting : this.batches) {
+				offsets.putAll(waiting.offsets);
+			}
+
+			long start = System.nanoTime();
+			try {
+				this.consumer.commitSync(offsets);
+				this.latency = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+				for (Batch<K, V> waiting : this.batches) {
+					waiting.committed = true;
+				}
+			} catch (Exception e) {
+				LOG.error("Error committing ... {}", e.getMessage());
+				for (Batch<K, V> waiting : this.batches) {
+					waiting.failed = true;
+				}
+			}
+			this.flush();
+
+		} else {
+
+			long start = System.nanoTime();
+			this.consumer.commitAsync(batch.offsets, (offsets, exception) -> {
+
+				this.latency = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+				if (exception == null) {
+					batch.committed = true;
+				} else {
+					LOG.error("Error committing ... {}", exception.getMessage());
+					batch.failed = true;
+				}
+				this.flush();
+			});
+		}
+	}
+
+	/**
+	 * Number of records waiting for their commit
+	 *
+	 * @return
+	 */
+	public int waiting() {
+		return this.waiting;
+	}
+
+	/**
+	 * Latency (in ms) of the last commit
+	 *
+	 * @return
+	 */
+	public long latency() {
+		return this.latency;
+	}
+
+	/**
+	 * Hand the committed batches for sending, preserving the fetching order
+	 */
+	private void flush() {
+
+		Batch<K, V> batch;
+		while ((batch = this.batches.peek()) != null && (batch.committed || batch.failed)) {
+
+			this.batches.remove();
+			this.waiting -= batch.records.count();
+
+			if (batch.committed) {
+				this.handler.handle(batch.records);
+			} else {
+				// offsets not committed, records aren't sent (they MAY be lost but never redelivered)
+				LOG.warn("{} records not sent, commit failed", batch.records.count());
+			}
+		}
+	}
+
+	/**
+	 * Get the offsets to commit to Kafka for the fetched records
+	 *
+	 * @param records	fetched records
+	 * @return			offsets to commit (the offset of the next record to read for each partition)
+	 */
+	private Map<TopicPartition, OffsetAndMetadata> offsets(ConsumerRecords<K, V> records) {
+
+		Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+		for (TopicPartition partition : records.partitions()) {
+			List<ConsumerRecord<K, V>> partitionRecords = records.records(partition);
+			offsets.put(partition, new OffsetAndMetadata(partitionRecords.get(partitionRecords.size() - 1).offset() + 1));
+		}
+		return offsets;
+	}
+
+	/**
+	 * Batch of fetched records with the related offsets to commit
+	 */
+	private static class Batch<K, V> {
+
+		private ConsumerRecords<K, V> records;
+		private Map<TopicPartition, OffsetAndMetadata> offsets;
+		private boolean committed;
+		private boolean failed;
+
+		Batch(ConsumerRecords<K, V> records, Map<TopicPartition, OffsetAndMetadata> offsets) {
+			this.records = records;
+			this.offsets = offsets;
+		}
+	}
+}
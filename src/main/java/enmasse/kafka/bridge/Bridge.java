@@ -18,6 +18,10 @@ package enmasse.kafka.bridge;
 
 import enmasse.kafka.bridge.config.AmqpMode;
 import enmasse.kafka.bridge.config.BridgeConfigProperties;
+import enmasse.kafka.bridge.converter.ConverterRegistry;
+import enmasse.kafka.bridge.credit.CreditControllerFactory;
+import enmasse.kafka.bridge.routing.RoutingTable;
+import enmasse.kafka.bridge.tracker.OffsetTrackerFactory;
 import io.netty.handler.codec.http.HttpResponseStatus;
 import io.vertx.core.AbstractVerticle;
 import io.vertx.core.AsyncResult;
@@ -30,6 +34,7 @@ import io.vertx.proton.ProtonSender;
 import io.vertx.proton.ProtonServer;
 import io.vertx.proton.ProtonServerOptions;
 import io.vertx.proton.ProtonSession;
+import org.apache.kafka.clients.producer.ProducerConfig;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -37,6 +42,7 @@ import org.springframework.stereotype.Component;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Properties;
 
 /**
  * Main bridge class listening for connections
@@ -62,15 +68,23 @@ public class Bridge extends AbstractVerticle {
 	public static final String AMQP_ERROR_WRONG_OFFSET_FILTER = "enmasse:wrong-partition-filter";
 	public static final String AMQP_ERROR_NO_PARTITION_FILTER = "enmasse:no-partition-filter";
 	public static final String AMQP_ERROR_WRONG_FILTER = "enmasse:wrong-filter";
+	public static final String AMQP_ERROR_NO_ROUTE = "enmasse:no-route";
+	public static final String AMQP_ERROR_TOPIC_METADATA = "enmasse:topic-metadata-error";
 	
 	// AMQP filters
 	public static final String AMQP_PARTITION_FILTER = "enmasse:partition-filter:int";
 	public static final String AMQP_OFFSET_FILTER = "enmasse:offset-filter:long";
+	public static final String AMQP_OFFSET_TRACKER_FILTER = "enmasse:offset-tracker-filter:string";
+	
+	// offset trackers which can be requested through the offset tracker filter
+	public static final String AMQP_OFFSET_TRACKER_SIMPLE = "simple";
+	public static final String AMQP_OFFSET_TRACKER_FULL = "full";
 
 	// container-id needed for working in "client" mode
 	private static final String CONTAINER_ID = "amqp-kafka-bridge-service";
 
 	private static final int HEALTH_SERVER_PORT = 8080;
+	private static final String METRICS_PATH = "/metrics";
 	
 	// AMQP client/server related stuff
 	private ProtonServer server;
@@ -79,6 +93,28 @@ public class Bridge extends AbstractVerticle {
 	// endpoints for handling incoming and outcoming messages
 	private Map<ProtonConnection, ConnectionEndpoint> endpoints;
 
+	// Kafka producers shared by all the source endpoints
+	// key and value types depend on the configured serializers and message converter
+	private KafkaProducerPool<Object, Object> producerUnsettledMode;
+	private KafkaProducerPool<Object, Object> producerSettledMode;
+
+	private BridgeMetrics metrics;
+
+	// topic metadata shared by all the endpoints
+	private TopicMetadataCache topicMetadataCache;
+
+	// message converters shared by all the endpoints
+	private ConverterRegistry converterRegistry;
+
+	// routes from AMQP addresses to Kafka topics shared by all the source endpoints
+	private RoutingTable routingTable;
+
+	// credit controllers factory shared by all the source endpoints
+	private CreditControllerFactory creditControllerFactory;
+
+	// offset trackers factory shared by all the sink endpoints
+	private OffsetTrackerFactory offsetTrackerFactory;
+
 	private BridgeConfigProperties bridgeConfigProperties;
 
 	@Autowired
@@ -160,6 +196,36 @@ public class Bridge extends AbstractVerticle {
 
 		this.endpoints = new HashMap<>();
 
+		try {
+			this.converterRegistry = new ConverterRegistry(this.bridgeConfigProperties.getAmqpConfigProperties().getMessageConverter(),
+					this.bridgeConfigProperties.getAmqpConfigProperties().getMessageConverterRules());
+			this.converterRegistry.checkSerializers(
+					this.bridgeConfigProperties.getKafkaConfigProperties().getProducerConfig().getKeySerializer(),
+					this.bridgeConfigProperties.getKafkaConfigProperties().getProducerConfig().getValueSerializer(),
+					this.bridgeConfigProperties.getKafkaConfigProperties().getConsumerConfig().getKeyDeserializer(),
+					this.bridgeConfigProperties.getKafkaConfigProperties().getConsumerConfig().getValueDeserializer());
+			this.routingTable = new RoutingTable(this.bridgeConfigProperties.getAmqpConfigProperties().getRoutes(),
+					this.converterRegistry);
+			this.creditControllerFactory = new CreditControllerFactory(this.bridgeConfigProperties.getAmqpConfigProperties());
+			this.offsetTrackerFactory = new OffsetTrackerFactory(this.bridgeConfigProperties.getAmqpConfigProperties());
+		} catch (IllegalArgumentException e) {
+			LOG.error("Error configuring the message converters, routes, credit controller and offset tracker", e);
+			startFuture.fail(e);
+			return;
+		}
+
+		this.producerUnsettledMode = this.createProducerPool(this.bridgeConfigProperties.getKafkaConfigProperties().getProducerConfig().getAcks());
+		this.producerSettledMode = this.createProducerPool("0");
+
+		this.metrics = new BridgeMetrics();
+		this.producerMetrics("producer.unsettled.", this.producerUnsettledMode);
+		this.producerMetrics("producer.settled.", this.producerSettledMode);
+
+		this.topicMetadataCache = new TopicMetadataCache(this.vertx,
+				this.bridgeConfigProperties.getKafkaConfigProperties().getBootstrapServers(),
+				this.bridgeConfigProperties.getKafkaConfigProperties().getMetadataCacheTtl());
+		this.metrics.gauge("metadata.requests", this.topicMetadataCache::requests);
+
 		AmqpMode mode = this.bridgeConfigProperties.getAmqpConfigProperties().getMode();
 		LOG.info("AMQP-Kafka Bridge configured in {} mode", mode);
 		if (mode == AmqpMode.SERVER) {
@@ -188,6 +254,15 @@ public class Bridge extends AbstractVerticle {
 		});
 		this.endpoints.clear();
 
+		if (this.producerSettledMode != null)
+			this.producerSettledMode.close();
+
+		if (this.producerUnsettledMode != null)
+			this.producerUnsettledMode.close();
+
+		if (this.topicMetadataCache != null)
+			this.topicMetadataCache.close();
+
 		if (this.server != null) {
 
 			this.server.close(done -> {
@@ -204,15 +279,58 @@ public class Bridge extends AbstractVerticle {
 	}
 
 	/**
-	 * Start an HTTP health server
+	 * Start an HTTP health server (exposing the bridge metrics as well)
 	 */
 	private void startHealthServer() {
 
 		vertx.createHttpServer()
-				.requestHandler(request -> request.response().setStatusCode(HttpResponseStatus.OK.code()).end())
+				.requestHandler(request -> {
+
+					if (request.path().equals(METRICS_PATH)) {
+						request.response()
+								.putHeader("Content-Type", "application/json")
+								.end(this.metrics.toJson().encode());
+					} else {
+						request.response().setStatusCode(HttpResponseStatus.OK.code()).end();
+					}
+				})
 				.listen(HEALTH_SERVER_PORT);
 	}
 	
+	/**
+	 * Create a pool of Kafka producers shared by all the source endpoints
+	 *
+	 * @param acks		acknowledgments behavior (0, 1, all)
+	 * @return		Kafka producers pool
+	 */
+	private KafkaProducerPool<Object, Object> createProducerPool(String acks) {
+
+		Properties props = new Properties();
+		props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, this.bridgeConfigProperties.getKafkaConfigProperties().getBootstrapServers());
+		props.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, this.bridgeConfigProperties.getKafkaConfigProperties().getProducerConfig().getKeySerializer());
+		props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, this.bridgeConfigProperties.getKafkaConfigProperties().getProducerConfig().getValueSerializer());
+		props.put(ProducerConfig.ACKS_CONFIG, acks);
+		props.put(ProducerConfig.PARTITIONER_CLASS_CONFIG, this.bridgeConfigProperties.getKafkaConfigProperties().getProducerConfig().getPartitioner());
+
+		return new KafkaProducerPool<>(props,
+				this.bridgeConfigProperties.getKafkaConfigProperties().getProducerConfig().getPoolSize(),
+				this.bridgeConfigProperties.getKafkaConfigProperties().getProducerConfig().getSendQueueSize());
+	}
+
+	/**
+	 * Register the metrics related to a pool of Kafka producers
+	 *
+	 * @param prefix	metrics name prefix
+	 * @param pool		Kafka producers pool
+	 */
+	private void producerMetrics(String prefix, KafkaProducerPool<?, ?> pool) {
+
+		this.metrics.gauge(prefix + "bufferUtilization", pool::bufferUtilization);
+		this.metrics.gauge(prefix + "blockedTime", pool::blockedTime);
+		this.metrics.gauge(prefix + "queued", pool::queued);
+		this.metrics.gauge(prefix + "rejected", pool::rejected);
+	}
+
 	/**
 	 * Create an options instance for the ProtonServer
 	 * based on AMQP-Kafka bridge internal configuration
@@ -358,10 +476,11 @@ public class Bridge extends AbstractVerticle {
 		LOG.info("Remote sender attached {}", receiver.getName());
 
 		ConnectionEndpoint endpoint = this.endpoints.get(connection);
-		SourceBridgeEndpoint source = endpoint.getSource();
+		SourceBridgeEndpoint<?, ?> source = endpoint.getSource();
 		// the source endpoint is only one, handling more AMQP receiver links internally
 		if (source == null) {
-			source = new SourceBridgeEndpoint(this.vertx, this.bridgeConfigProperties);
+			source = new SourceBridgeEndpoint<>(this.vertx, this.bridgeConfigProperties,
+					this.producerUnsettledMode, this.producerSettledMode, this.routingTable, this.creditControllerFactory, this.metrics);
 
 			source.closeHandler(s -> {
 				endpoint.setSource(null);
@@ -384,7 +503,8 @@ public class Bridge extends AbstractVerticle {
 		LOG.info("Remote receiver attached {}", sender.getName());
 		
 		// create and add a new sink to the map
-		SinkBridgeEndpoint sink = new SinkBridgeEndpoint(this.vertx, this.bridgeConfigProperties);
+		SinkBridgeEndpoint<Object, Object> sink = new SinkBridgeEndpoint<>(this.vertx, this.bridgeConfigProperties,
+				this.topicMetadataCache, this.converterRegistry, this.offsetTrackerFactory, this.metrics);
 
 		sink.closeHandler(s -> {
 			this.endpoints.get(connection).getSinks().remove(s);
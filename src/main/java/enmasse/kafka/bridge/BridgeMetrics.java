@@ -0,0 +1,72 @@
+/*
+ * Copyright 2016 Red Hat Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package enmasse.kafka.bridge;
+
+import io.vertx.core.json.JsonObject;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Supplier;
+
+/**
+ * Registry for the metrics exposed by the bridge.
+ * Each metric is a named gauge which is read when the metrics are requested
+ */
+public class BridgeMetrics {
+
+	private Map<String, Supplier<Number>> gauges;
+
+	/**
+	 * Constructor
+	 */
+	public BridgeMetrics() {
+		this.gauges = new ConcurrentSkipListMap<>();
+	}
+
+	/**
+	 * Register a gauge
+	 *
+	 * @param name		metric name
+	 * @param gauge		supplier for the metric value
+	 */
+	public void gauge(String name, Supplier<Number> gauge) {
+		this.gauges.put(name, gauge);
+	}
+
+	/**
+	 * Remove all the metrics with the provided name prefix
+	 *
+	 * @param prefix	metric name prefix
+	 */
+	public void remove(String prefix) {
+		this.gauges.keySet().removeIf(name -> name.startsWith(prefix));
+	}
+
+	/**
+	 * Get the current value of all the metrics
+	 *
+	 * @return		JSON object with metric name/metric value pairs
+	 */
+	public JsonObject toJson() {
+
+		JsonObject json = new JsonObject();
+		this.gauges.forEach((name, gauge) -> {
+			json.put(name, gauge.get());
+		});
+		return json;
+	}
+}
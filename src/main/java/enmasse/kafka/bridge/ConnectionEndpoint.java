@@ -25,9 +25,9 @@ import java.util.List;
 public class ConnectionEndpoint {
 
     // more sink endpoints per connection, each of them handling a sender link internally
-    private List<SinkBridgeEndpoint> sinks;
+    private List<SinkBridgeEndpoint<?, ?>> sinks;
     // only one source endpoint per connection, handling more receiver links internally
-    private SourceBridgeEndpoint source;
+    private SourceBridgeEndpoint<?, ?> source;
 
     /**
      * Constructor
@@ -42,7 +42,7 @@ public class ConnectionEndpoint {
      *
      * @return
      */
-    public List<SinkBridgeEndpoint> getSinks() {
+    public List<SinkBridgeEndpoint<?, ?>> getSinks() {
         return this.sinks;
     }
 
@@ -52,7 +52,7 @@ public class ConnectionEndpoint {
      * @param source    source endpoint to set
      * @return  current connection endpoint instance
      */
-    public ConnectionEndpoint setSource(SourceBridgeEndpoint source) {
+    public ConnectionEndpoint setSource(SourceBridgeEndpoint<?, ?> source) {
         this.source = source;
         return this;
     }
@@ -62,7 +62,7 @@ public class ConnectionEndpoint {
      *
      * @return
      */
-    public SourceBridgeEndpoint getSource() {
+    public SourceBridgeEndpoint<?, ?> getSource() {
         return this.source;
     }
 }
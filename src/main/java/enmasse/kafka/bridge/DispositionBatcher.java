@@ -0,0 +1,154 @@
+/*
+ * Copyright 2016 Red Hat Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package enmasse.kafka.bridge;
+
+import io.vertx.core.Vertx;
+import io.vertx.proton.ProtonDelivery;
+import io.vertx.proton.ProtonReceiver;
+import org.apache.qpid.proton.amqp.messaging.Accepted;
+import org.apache.qpid.proton.amqp.messaging.Rejected;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Coalesces the dispositions and the related credits for an AT_LEAST_ONCE receiver link.
+ * Deliveries acknowledged by Apache Kafka inside the same event loop iteration (or time window)
+ * are settled together and the link credits are granted with a single flow
+ */
+public class DispositionBatcher {
+
+	private static final Logger LOG = LoggerFactory.getLogger(DispositionBatcher.class);
+
+	private Vertx vertx;
+	private ProtonReceiver receiver;
+
+	// time window (in ms) for batching, 0 means the current event loop iteration
+	private int batchTime;
+
+	// accepted deliveries waiting to be settled
+	private List<ProtonDelivery> accepted;
+	// credits to grant on the next flush
+	private int credits;
+
+	private boolean flushScheduled;
+	private long timerId;
+
+	/**
+	 * Constructor
+	 *
+	 * @param vertx			Vert.x instance
+	 * @param receiver		receiver link on which sending dispositions and credits
+	 * @param batchTime		time window (in ms) for batching, 0 means the current event loop iteration
+	 */
+	public DispositionBatcher(Vertx vertx, ProtonReceiver receiver, int batchTime) {
+
+		this.vertx = vertx;
+		this.receiver = receiver;
+		this.batchTime = batchTime;
+		this.accepted = new ArrayList<>();
+		this.timerId = -1;
+	}
+
+	/**
+	 * Add an accepted delivery to the current batch
+	 *
+	 * @param delivery		delivery acknowledged by Apache Kafka
+	 * @param credits		credits to grant for this delivery
+	 */
+	public void accepted(ProtonDelivery delivery, int credits) {
+
+		this.accepted.add(delivery);
+		this.credits += credits;
+		this.scheduleFlush();
+	}
+
+	/**
+	 * Reject a delivery, the disposition is sent immediately but the credit is batched
+	 *
+	 * @param delivery		delivery not acknowledged by Apache Kafka
+	 * @param rejected		rejected delivery state with the related error
+	 * @param credits		credits to grant for this delivery
+	 */
+	public void rejected(ProtonDelivery delivery, Rejected rejected, int credits) {
+
+		delivery.disposition(rejected, true);
+		this.credits += credits;
+		this.scheduleFlush();
+	}
+
+	/**
+	 * Settle all the accepted deliveries in the current batch and grant the related credits
+	 */
+	public void flush() {
+
+		this.flushScheduled = false;
+		this.timerId = -1;
+
+		for (ProtonDelivery delivery : this.accepted) {
+			delivery.disposition(Accepted.getInstance(), true);
+		}
+
+		LOG.debug("Batch flushed, {} deliveries accepted, {} credits granted", this.accepted.size(), this.credits);
+
+		this.accepted.clear();
+
+		if (this.credits > 0) {
+			this.receiver.flow(this.credits);
+			this.credits = 0;
+		}
+	}
+
+	/**
+	 * Discard the current batch (i.e. the link is going to be closed)
+	 */
+	public void close() {
+
+		if (this.timerId != -1) {
+			this.vertx.cancelTimer(this.timerId);
+			this.timerId = -1;
+		}
+		this.accepted.clear();
+		this.credits = 0;
+		this.flushScheduled = false;
+	}
+
+	/**
+	 * Schedule the batch flush (if not already scheduled)
+	 */
+	private void scheduleFlush() {
+
+		if (this.flushScheduled)
+			return;
+
+		this.flushScheduled = true;
+
+		if (this.batchTime > 0) {
+			this.timerId = this.vertx.setTimer(this.batchTime, id -> {
+				this.flush();
+			});
+		} else {
+			// acks already queued on the event loop are handled before the flush
+			this.vertx.runOnContext(v -> {
+				if (this.flushScheduled)
+					this.flush();
+			});
+		}
+	}
+}
@@ -16,6 +16,8 @@
 
 package enmasse.kafka.bridge;
 
+import enmasse.kafka.bridge.config.KafkaConsumerConfigProperties;
+import enmasse.kafka.bridge.tracker.DeliveryTag;
 import io.vertx.core.Vertx;
 import io.vertx.core.eventbus.DeliveryOptions;
 import io.vertx.proton.ProtonQoS;
@@ -24,8 +26,6 @@ import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.clients.consumer.ConsumerRecords;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
-import org.apache.kafka.clients.consumer.OffsetAndMetadata;
-import org.apache.kafka.common.PartitionInfo;
 import org.apache.kafka.common.TopicPartition;
 import org.apache.kafka.common.errors.WakeupException;
 import org.slf4j.Logger;
@@ -34,11 +34,7 @@ import org.slf4j.LoggerFactory;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
-import java.util.Optional;
 import java.util.Properties;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -57,6 +53,8 @@ public class KafkaConsumerWorker<K, V> implements Runnable {
 	private AtomicBoolean closed;
 	private AtomicBoolean paused;
 	private Consumer<K, V> consumer;
+	private OffsetCommitter<K, V> offsetCommitter;
+	private AtMostOnceCommitter<K, V> atMostOnceCommitter;
 	
 	private Vertx vertx;
 	
@@ -67,18 +65,40 @@ public class KafkaConsumerWorker<K, V> implements Runnable {
 	 * @param props			Properties for KafkaConsumer instance
 	 * @param vertx			Vert.x instance
 	 * @param context		Context shared with sink endpoint
+	 * @param consumerConfig	Kafka consumer configuration (offsets commit)
 	 */
-	public KafkaConsumerWorker(Properties props, Vertx vertx, SinkBridgeContext<K, V> context) {
+	public KafkaConsumerWorker(Properties props, Vertx vertx, SinkBridgeContext<K, V> context, KafkaConsumerConfigProperties consumerConfig) {
 		
 		this.closed = new AtomicBoolean(false);
 		this.paused = new AtomicBoolean(false);
 		
 		this.consumer = new KafkaConsumer<>(props);
+		this.offsetCommitter = new OffsetCommitter<>(this.consumer, context.getOffsetTracker(),
+				consumerConfig.getCommitCount(), consumerConfig.getCommitInterval());
+		this.atMostOnceCommitter = new AtMostOnceCommitter<>(this.consumer, consumerConfig.getCommitAheadWindow(), this::send);
 		
 		this.vertx = vertx;
 		this.context = context;
 	}
 	
+	/**
+	 * Get the committer of the settled records offsets (AT_LEAST_ONCE)
+	 *
+	 * @return
+	 */
+	public OffsetCommitter<K, V> getOffsetCommitter() {
+		return this.offsetCommitter;
+	}
+	
+	/**
+	 * Get the committer of the fetched records offsets, ahead of their delivery (AT_MOST_ONCE)
+	 *
+	 * @return
+	 */
+	public AtMostOnceCommitter<K, V> getAtMostOnceCommitter() {
+		return this.atMostOnceCommitter;
+	}
+	
 	@Override
 	public void run() {
 		
@@ -89,40 +109,22 @@ public class KafkaConsumerWorker<K, V> implements Runnable {
 			
 			LOG.debug("Request to get from partition {}", this.context.getPartition());
 			
-			// check if partition exists, otherwise error condition and detach link
-			List<PartitionInfo> availablePartitions = this.consumer.partitionsFor(this.context.getTopic());
-			Optional<PartitionInfo> requestedPartitionInfo = availablePartitions.stream().filter(p -> p.partition() == this.context.getPartition()).findFirst();
+			// partition existence already checked by the sink endpoint
+			List<TopicPartition> partitions = new ArrayList<>();
+			partitions.add(new TopicPartition(this.context.getTopic(), this.context.getPartition()));
+			this.consumer.assign(partitions);
 			
-			if (requestedPartitionInfo.isPresent()) {
+			// start reading from specified offset inside partition
+			if (this.context.getOffset() != null) {
 				
-				List<TopicPartition> partitions = new ArrayList<>();
-				partitions.add(new TopicPartition(this.context.getTopic(), this.context.getPartition()));
-				this.consumer.assign(partitions);
+				LOG.debug("Request to start from offset {}", this.context.getOffset());
 				
-				// start reading from specified offset inside partition
-				if (this.context.getOffset() != null) {
-					
-					LOG.debug("Request to start from offset {}", this.context.getOffset());
-					
-					this.consumer.seek(new TopicPartition(this.context.getTopic(), this.context.getPartition()), this.context.getOffset());
-				}
-
-				DeliveryOptions options = new DeliveryOptions();
-				options.addHeader(SinkBridgeEndpoint.EVENT_BUS_REQUEST_HEADER, SinkBridgeEndpoint.EVENT_BUS_ASSIGNED);
-				vertx.eventBus().send(context.getEbName(), "", options);
-
-			} else {
-				
-				LOG.warn("Requested partition {} doesn't exist", this.context.getPartition());
-				
-				DeliveryOptions options = new DeliveryOptions();
-				options.addHeader(SinkBridgeEndpoint.EVENT_BUS_REQUEST_HEADER, SinkBridgeEndpoint.EVENT_BUS_ERROR);
-				options.addHeader(SinkBridgeEndpoint.EVENT_BUS_ERROR_AMQP_HEADER, Bridge.AMQP_ERROR_PARTITION_NOT_EXISTS);
-				options.addHeader(SinkBridgeEndpoint.EVENT_BUS_ERROR_DESC_HEADER, "Specified partition doesn't exist");
-				
-				// requested partition doesn't exist, the AMQP link and Kafka consumer will be closed
-				vertx.eventBus().send(this.context.getEbName(), "", options);
+				this.consumer.seek(new TopicPartition(this.context.getTopic(), this.context.getPartition()), this.context.getOffset());
 			}
+
+			DeliveryOptions options = new DeliveryOptions();
+			options.addHeader(SinkBridgeEndpoint.EVENT_BUS_REQUEST_HEADER, SinkBridgeEndpoint.EVENT_BUS_ASSIGNED);
+			vertx.eventBus().send(context.getEbName(), "", options);
 			
 		} else {
 			
@@ -143,26 +145,9 @@ public class KafkaConsumerWorker<K, V> implements Runnable {
 						
 						if (context.getQos() == ProtonQoS.AT_LEAST_ONCE) {
 							
-							// commit all tracked offsets for partitions
-							Map<TopicPartition, OffsetAndMetadata> offsets = context.getOffsetTracker().getOffsets();
-
-							// as Kafka documentation says, the committed offset should always be the offset of the next message
-							// that your application will read. Thus, when calling commitSync(offsets) you should
-							// add one to the offset of the last message processed.
-							Map<TopicPartition, OffsetAndMetadata> kafkaOffsets = new HashMap<>();
-							offsets.forEach((topicPartition, offsetAndMetadata) -> {
-								kafkaOffsets.put(topicPartition, new OffsetAndMetadata(offsetAndMetadata.offset() + 1, offsetAndMetadata.metadata()));
-							});
-							
-							if (offsets != null && !offsets.isEmpty()) {
-								consumer.commitSync(kafkaOffsets);
-								context.getOffsetTracker().commit(offsets);
-								context.getOffsetTracker().clear();
-								
-								for (Entry<TopicPartition, OffsetAndMetadata> entry : offsets.entrySet()) {
-									LOG.info("Committed {} - {} [{}]", entry.getKey().topic(), entry.getKey().partition(), entry.getValue().offset());
-								}
-							}
+							// commit all tracked offsets for partitions, synchronously
+							offsetCommitter.commitSync();
+							context.getOffsetTracker().clear();
 						}
 					}
 				}
@@ -201,33 +186,18 @@ public class KafkaConsumerWorker<K, V> implements Runnable {
 				
 				ConsumerRecords<K, V> records = this.consumer.poll(1000);
 				
-				DeliveryOptions options = new DeliveryOptions();
-				options.addHeader(SinkBridgeEndpoint.EVENT_BUS_REQUEST_HEADER, SinkBridgeEndpoint.EVENT_BUS_SEND);
-				
 				if (this.context.getQos() == ProtonQoS.AT_MOST_ONCE) {
 					
 					if (!records.isEmpty()) {
 						
 						LOG.debug("Fetched {} records [AT_MOST_ONCE]", records.count());
 					
-						// Sender QoS settled (AT_MOST_ONCE) : commit immediately and start message sending
+						// Sender QoS settled (AT_MOST_ONCE) : commit ahead and start message sending when committed
 						try {
 							
-							// 1. immediate commit 
-							this.consumer.commitSync();
-							
-							// 2. commit ok, so we can enqueue record for sending
-							for (ConsumerRecord<K, V> record : records)  {
-						        
-						    	LOG.debug("Received from Kafka partition {} [{}], key = {}, value = {}", record.partition(), record.offset(), record.key(), record.value());
-						    	
-						    	String deliveryTag = String.format("%s_%s", record.partition(), record.offset());
-						    	this.vertx.sharedData().getLocalMap(this.context.getEbName()).put(deliveryTag, new KafkaMessage<K,V>(deliveryTag, record));
-						    
-						    	// 3. start message sending
-						    	this.vertx.eventBus().send(this.context.getEbName(), deliveryTag, options);
-						    }
-							
+							// 1. commit (asynchronously, inside the commit-ahead window)
+							// 2. commit ok, so we can enqueue records for sending
+							this.atMostOnceCommitter.commit(records);
 							
 						} catch (Exception e) {
 							
@@ -243,40 +213,14 @@ public class KafkaConsumerWorker<K, V> implements Runnable {
 						
 						LOG.debug("Fetched {} records [AT_LEAST_ONCE]", records.count());
 						
-						// 1. enqueue record for sending
-						for (ConsumerRecord<K, V> record : records)  {
-					        
-					    	LOG.debug("Received from Kafka partition {} [{}], key = {}, value = {}", record.partition(), record.offset(), record.key(), record.value());
-					    	
-					    	String deliveryTag = String.format("%s_%s", record.partition(), record.offset());
-					    	this.vertx.sharedData().getLocalMap(this.context.getEbName()).put(deliveryTag, new KafkaMessage<K,V>(deliveryTag, record));
-					    
-					    	// 2. start message sending
-					    	this.vertx.eventBus().send(this.context.getEbName(), deliveryTag, options);
-					    }
-						
+						// 1. enqueue records for sending
+						// 2. start message sending
+						this.send(records);
 					}
 					
 					try {
-						// 3. commit all tracked offsets for partitions
-						Map<TopicPartition, OffsetAndMetadata> offsets = this.context.getOffsetTracker().getOffsets();
-
-						// as Kafka documentation says, the committed offset should always be the offset of the next message
-						// that your application will read. Thus, when calling commitSync(offsets) you should
-						// add one to the offset of the last message processed.
-						Map<TopicPartition, OffsetAndMetadata> kafkaOffsets = new HashMap<>();
-						offsets.forEach((topicPartition, offsetAndMetadata) -> {
-							kafkaOffsets.put(topicPartition, new OffsetAndMetadata(offsetAndMetadata.offset() + 1, offsetAndMetadata.metadata()));
-						});
-						
-						if (offsets != null && !offsets.isEmpty()) {
-							this.consumer.commitSync(kafkaOffsets);
-							this.context.getOffsetTracker().commit(offsets);
-							
-							for (Entry<TopicPartition, OffsetAndMetadata> entry : offsets.entrySet()) {
-								LOG.debug("Committed {} - {} [{}]", entry.getKey().topic(), entry.getKey().partition(), entry.getValue().offset());
-							}
-						}
+						// 3. commit tracked offsets for partitions (asynchronously, when enough records are settled)
+						this.offsetCommitter.commit();
 					} catch (Exception e) {
 						
 						LOG.error("Error committing ... {}", e.getMessage());
@@ -290,6 +234,10 @@ public class KafkaConsumerWorker<K, V> implements Runnable {
 		} catch (WakeupException e) {
 			if (!closed.get()) throw e;
 		} finally {
+			// last commit for the records settled meantime, then the tracked offsets can be dropped
+			if (this.context.getQos() == ProtonQoS.AT_LEAST_ONCE)
+				this.offsetCommitter.commitSync();
+			this.context.getOffsetTracker().clear();
 			this.consumer.close();
 		}
 		
@@ -304,6 +252,26 @@ public class KafkaConsumerWorker<K, V> implements Runnable {
 		this.consumer.wakeup();
 	}
 	
+	/**
+	 * Enqueue records for sending (AT_MOST_ONCE once committed, AT_LEAST_ONCE as fetched)
+	 *
+	 * @param records		records to send
+	 */
+	private void send(ConsumerRecords<K, V> records) {
+		
+		for (ConsumerRecord<K, V> record : records)  {
+	        
+	    	LOG.debug("Received from Kafka partition {} [{}], key = {}, value = {}", record.partition(), record.offset(), record.key(), record.value());
+	    	
+	    	this.context.enqueue(new KafkaMessage<K,V>(DeliveryTag.tag(record.partition(), record.offset()), record));
+	    }
+		
+		// a single notification for all the records, the sink endpoint sends as many as the receiver credits allow
+		DeliveryOptions options = new DeliveryOptions();
+		options.addHeader(SinkBridgeEndpoint.EVENT_BUS_REQUEST_HEADER, SinkBridgeEndpoint.EVENT_BUS_SEND);
+		this.vertx.eventBus().send(this.context.getEbName(), "", options);
+	}
+	
 	/**
 	 * Check external requests to pause/resume Kafka consumer
 	 * 
@@ -314,13 +282,13 @@ public class KafkaConsumerWorker<K, V> implements Runnable {
 		// check queue threshold and if it's needed to pause/resume Kafka consumer : 
 		// if the records we are going to send will increase the queue size over the threshold, we have to pause the Kafka consumer
 		// and giving more time to sender to send messages to AMQP client
-		boolean overThreshold = this.vertx.sharedData().getLocalMap(this.context.getEbName()).size() + recordsCount > SinkBridgeEndpoint.QUEUE_THRESHOLD;
+		boolean overThreshold = this.context.queued() + recordsCount > SinkBridgeEndpoint.QUEUE_THRESHOLD;
 		
 		if (this.paused.get()) {
 			
 			// Kafka consumer paused, can be resumed if :
 			// sink endpoint has sent all previous cached messages and AMQP sender queue isn't full and not above queue threshold
-			if (this.vertx.sharedData().getLocalMap(this.context.getEbName()).isEmpty() &&
+			if (this.context.queued() == 0 &&
 				!this.context.isSendQueueFull() &&
 				!overThreshold) {
 				
@@ -330,7 +298,7 @@ public class KafkaConsumerWorker<K, V> implements Runnable {
 				this.paused.set(false);
 				
 				LOG.debug("Apache Kafka consumer worker resumed ... {} {} {}", 
-						this.vertx.sharedData().getLocalMap(this.context.getEbName()).isEmpty(),
+						this.context.queued() == 0,
 						this.context.isSendQueueFull(),
 						overThreshold);
 			}
@@ -16,7 +16,6 @@
 
 package enmasse.kafka.bridge;
 
-import io.vertx.core.shareddata.Shareable;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 
 /**
@@ -25,18 +24,18 @@ import org.apache.kafka.clients.consumer.ConsumerRecord;
  * @param <K>		Key type for Kafka consumer and record
  * @param <V>		Value type for Kafka consumer and record
  */
-public class KafkaMessage<K, V> implements Shareable {
+public class KafkaMessage<K, V> {
 	
-	private String deliveryTag;
+	private byte[] deliveryTag;
 	private ConsumerRecord<K, V> record;
 	
 	/**
 	 * Constructor
 	 * 
-	 * @param deliveryTag		AMQP delivery tag
+	 * @param deliveryTag		AMQP delivery tag (partition and offset, see DeliveryTag)
 	 * @param record			Kafka record
 	 */
-	public KafkaMessage(String deliveryTag, ConsumerRecord<K, V> record) {
+	public KafkaMessage(byte[] deliveryTag, ConsumerRecord<K, V> record) {
 		this.deliveryTag = deliveryTag;
 		this.record = record;
 	}
@@ -45,7 +44,7 @@ public class KafkaMessage<K, V> implements Shareable {
 	 * AMQP delivery tag
 	 * @return
 	 */
-	public String getDeliveryTag() {
+	public byte[] getDeliveryTag() {
 		return this.deliveryTag;
 	}
 
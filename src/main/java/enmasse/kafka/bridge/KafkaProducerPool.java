@@ -0,0 +1,331 @@
+/*
+ * Copyright 2016 Red Hat Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package enmasse.kafka.bridge;
+
+import org.apache.kafka.clients.producer.Callback;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pool of Kafka producers shared by all the source endpoints.
+ * Records are sharded across the producers so that records with the same key
+ * (or for the same partition) are always sent by the same producer, preserving their ordering.
+ * Each producer has a dedicated sender thread fed through a bounded queue, so that a
+ * KafkaProducer.send blocked on metadata or buffer space never blocks the caller (i.e. the event loop)
+ *
+ * @param <K>		Key type for Kafka producer and record
+ * @param <V>		Value type for Kafka producer and record
+ */
+public class KafkaProducerPool<K, V> {
+
+	private static final Logger LOG = LoggerFactory.getLogger(KafkaProducerPool.class);
+
+	private static final String PRODUCER_METRICS_GROUP = "producer-metrics";
+	private static final String BUFFER_TOTAL_BYTES_METRIC = "buffer-total-bytes";
+	private static final String BUFFER_AVAILABLE_BYTES_METRIC = "buffer-available-bytes";
+
+	// minimum interval (in ms) between two samples of the producers buffer utilization
+	private static final long BUFFER_UTILIZATION_SAMPLE_INTERVAL = 100;
+
+	// max time (in ms) to wait for the queued records to be handed to the producers on close
+	private static final long CLOSE_TIMEOUT = 5000;
+
+	private List<Producer<K, V>> producers;
+	// sender threads, one for each producer
+	private List<ThreadPoolExecutor> senders;
+
+	// time spent (in ns) by the sender threads inside KafkaProducer.send
+	private LongAdder blockedTime;
+	// records not accepted because the sender queue was full
+	private LongAdder rejected;
+
+	// used for spreading records without key and partition across the producers
+	private AtomicInteger roundRobin;
+
+	// topics whose metadata are being requested by the producers
+	private Set<String> warming;
+
+	private volatile double bufferUtilization;
+	private volatile long bufferUtilizationTimestamp;
+
+	/**
+	 * Constructor
+	 *
+	 * @param props		Properties for the KafkaProducer instances
+	 * @param size		Number of KafkaProducer instances in the pool
+	 * @param queueSize	Max number of records queued for each producer sender thread
+	 */
+	public KafkaProducerPool(Properties props, int size, int queueSize) {
+
+		if (size <= 0)
+			throw new IllegalArgumentException("The producer pool size must be greater than 0");
+		if (queueSize <= 0)
+			throw new IllegalArgumentException("The producer send queue size must be greater than 0");
+
+		this.producers = new ArrayList<>(size);
+		this.senders = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			this.producers.add(new KafkaProducer<>(props));
+
+			String name = String.format("kafka-producer-sender-%s-%d", props.get("acks"), i);
+			this.senders.add(new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+					new ArrayBlockingQueue<>(queueSize),
+					runnable -> {
+						Thread thread = new Thread(runnable, name);
+						thread.setDaemon(true);
+						return thread;
+					}));
+		}
+		this.roundRobin = new AtomicInteger();
+		this.warming = ConcurrentHashMap.newKeySet();
+		this.blockedTime = new LongAdder();
+		this.rejected = new LongAdder();
+
+		LOG.info("Kafka producer pool created with {} producers [acks = {}, queue size = {}]", size, props.get("acks"), queueSize);
+	}
+
+	/**
+	 * Hand a record to the sender thread of the producer in charge of it, without blocking
+	 *
+	 * @param record	Kafka record to send
+	 * @param callback	callback invoked when the record is acknowledged by the Kafka server
+	 * 					(or on error, even if raised synchronously by the producer); it can be null
+	 * @return			false if the sender queue is full and the record wasn't accepted
+	 */
+	public boolean trySend(ProducerRecord<K, V> record, Callback callback) {
+
+		int shard = this.shard(record);
+		Producer<K, V> producer = this.producers.get(shard);
+
+		try {
+			this.senders.get(shard).execute(() -> {
+
+				long start = System.nanoTime();
+				try {
+					producer.send(record, callback);
+				} catch (Exception e) {
+					// i.e. timeout on metadata or buffer space, reported as a failed send
+					if (callback != null)
+						callback.onCompletion(null, e);
+				} finally {
+					this.blockedTime.add(System.nanoTime() - start);
+				}
+			});
+			return true;
+		} catch (RejectedExecutionException e) {
+			this.rejected.increment();
+			return false;
+		}
+	}
+
+	/**
+	 * Get the topic metadata on all the producers (through their sender threads, without blocking),
+	 * so that the first records sent to the topic don't block waiting for them.
+	 * Requests for a topic already in progress are coalesced; a producer which already has the
+	 * topic metadata returns them without any request to the Kafka server
+	 *
+	 * @param topic		topic name
+	 */
+	public void warm(String topic) {
+
+		if (!this.warming.add(topic))
+			return;
+
+		AtomicInteger remaining = new AtomicInteger(this.producers.size());
+		for (int i = 0; i < this.producers.size(); i++) {
+
+			Producer<K, V> producer = this.producers.get(i);
+			try {
+				this.senders.get(i).execute(() -> {
+					try {
+						producer.partitionsFor(topic);
+					} catch (Exception e) {
+						// the first send will get the metadata (or fail) anyway
+						LOG.debug("Error getting metadata for topic {}: {}", topic, e.getMessage());
+					} finally {
+						if (remaining.decrementAndGet() == 0)
+							this.warming.remove(topic);
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				// sender queue full (or pool closed), the records are more important than the metadata
+				if (remaining.decrementAndGet() == 0)
+					this.warming.remove(topic);
+			}
+		}
+	}
+
+	/**
+	 * Get the producer in charge of sending the provided record
+	 *
+	 * @param record	Kafka record to send
+	 * @return			Kafka producer
+	 */
+	public Producer<K, V> producer(ProducerRecord<K, V> record) {
+		return this.producers.get(this.shard(record));
+	}
+
+	/**
+	 * Number of producers in the pool
+	 *
+	 * @return
+	 */
+	public int size() {
+		return this.producers.size();
+	}
+
+	/**
+	 * Utilization of the producers buffer (from 0 to 1), used for records waiting to be sent
+	 * to the Kafka server. It's sampled at most every {@value #BUFFER_UTILIZATION_SAMPLE_INTERVAL} ms
+	 *
+	 * @return
+	 */
+	public double bufferUtilization() {
+
+		long now = System.currentTimeMillis();
+		if (now - this.bufferUtilizationTimestamp >= BUFFER_UTILIZATION_SAMPLE_INTERVAL) {
+
+			double total = 0, available = 0;
+			for (Producer<K, V> producer : this.producers) {
+
+				for (Map.Entry<MetricName, ? extends Metric> entry : producer.metrics().entrySet()) {
+
+					if (entry.getKey().group().equals(PRODUCER_METRICS_GROUP)) {
+
+						if (entry.getKey().name().equals(BUFFER_TOTAL_BYTES_METRIC)) {
+							total += entry.getValue().value();
+						} else if (entry.getKey().name().equals(BUFFER_AVAILABLE_BYTES_METRIC)) {
+							available += entry.getValue().value();
+						}
+					}
+				}
+			}
+
+			this.bufferUtilization = (total > 0) ? (total - available) / total : 0;
+			this.bufferUtilizationTimestamp = now;
+		}
+		return this.bufferUtilization;
+	}
+
+	/**
+	 * Time (in ms) spent by the sender threads inside KafkaProducer.send
+	 * (it would be time spent blocking the caller without the sender threads)
+	 *
+	 * @return
+	 */
+	public long blockedTime() {
+		return TimeUnit.NANOSECONDS.toMillis(this.blockedTime.sum());
+	}
+
+	/**
+	 * Number of records not accepted because the sender queue was full
+	 *
+	 * @return
+	 */
+	public long rejected() {
+		return this.rejected.sum();
+	}
+
+	/**
+	 * Number of records queued for the sender threads
+	 *
+	 * @return
+	 */
+	public int queued() {
+
+		int queued = 0;
+		for (ThreadPoolExecutor sender : this.senders) {
+			queued += sender.getQueue().size();
+		}
+		return queued;
+	}
+
+	/**
+	 * Close all the producers in the pool
+	 */
+	public void close() {
+
+		// queued records are handed to the producers before closing them
+		for (ExecutorService sender : this.senders) {
+			sender.shutdown();
+		}
+		for (ExecutorService sender : this.senders) {
+			try {
+				if (!sender.awaitTermination(CLOSE_TIMEOUT, TimeUnit.MILLISECONDS))
+					sender.shutdownNow();
+			} catch (InterruptedException e) {
+				sender.shutdownNow();
+				Thread.currentThread().interrupt();
+			}
+		}
+		this.senders.clear();
+
+		for (Producer<K, V> producer : this.producers) {
+			producer.close();
+		}
+		this.producers.clear();
+	}
+
+	/**
+	 * Get the index of the producer in charge of sending the provided record
+	 *
+	 * @param record	Kafka record to send
+	 * @return			index of the producer
+	 */
+	private int shard(ProducerRecord<K, V> record) {
+
+		int size = this.producers.size();
+		if (size == 1)
+			return 0;
+
+		int hash;
+		if (record.key() != null) {
+			// same key, same producer : ordering per key is preserved
+			hash = (record.key() instanceof byte[]) ?
+					Arrays.hashCode((byte[]) record.key()) :
+					record.key().hashCode();
+		} else if (record.partition() != null) {
+			// same partition, same producer : ordering per partition is preserved
+			hash = 31 * record.topic().hashCode() + record.partition();
+		} else {
+			// no ordering to preserve
+			hash = this.roundRobin.getAndIncrement();
+		}
+
+		return (hash & 0x7fffffff) % size;
+	}
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright 2016 Red Hat Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package enmasse.kafka.bridge;
+
+import enmasse.kafka.bridge.tracker.OffsetTracker;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Commits the offsets of the settled records for an AT_LEAST_ONCE sender link.
+ * Commits are asynchronous and coalesced : the offsets are committed when enough records
+ * are settled (or enough time is elapsed) since the last commit, with one commit in flight at most.
+ * A synchronous commit is done only when partitions are revoked and on shutdown.
+ * It MUST be used by the Kafka consumer thread only (commit callbacks are executed by the poll)
+ *
+ * @param <K>		Key type for Kafka consumer and record
+ * @param <V>		Value type for Kafka consumer and record
+ */
+public class OffsetCommitter<K, V> {
+
+	private static final Logger LOG = LoggerFactory.getLogger(OffsetCommitter.class);
+
+	private Consumer<K, V> consumer;
+	private OffsetTracker<K, V> offsetTracker;
+
+	// settled records (and max time, in ns) after which committing
+	private int commitCount;
+	private long commitInterval;
+
+	// last committed offsets (as tracked, so the offsets of the last settled records)
+	private Map<TopicPartition, Long> committed;
+
+	private boolean inFlight;
+	private long lastCommit;
+
+	// bumped on each synchronous commit (partitions revoked), so that the results of the
+	// asynchronous commits sent before are ignored for the partitions not assigned anymore
+	private int generation;
+
+	// latency (in ms) of the last commit
+	private volatile long latency;
+	private volatile long commits;
+	private volatile long failures;
+
+	/**
+	 * Constructor
+	 *
+	 * @param consumer			Kafka consumer
+	 * @param offsetTracker		tracker of the settled records offsets
+	 * @param commitCount		number of settled records after which committing
+	 * @param commitInterval	max time (in ms) between two commits
+	 */
+	public OffsetCommitter(Consumer<K, V> consumer, OffsetTracker<K, V> offsetTracker, int commitCount, long commitInterval) {
+
+		this.consumer = consumer;
+		this.offsetTracker = offsetTracker;
+		this.commitCount = Math.max(1, commitCount);
+		this.commitInterval = TimeUnit.MILLISECONDS.toNanos(commitInterval);
+		this.committed = new HashMap<>();
+		this.lastCommit = System.nanoTime();
+	}
+
+	/**
+	 * Commit asynchronously the offsets of the settled records, if there is no other commit
+	 * in flight and enough records are settled (or enough time is elapsed) since the last commit
+	 */
+	public void commit() {
+
+		if (this.inFlight)
+			return;
+
+		Map<TopicPartition, OffsetAndMetadata> offsets = this.offsetTracker.getOffsets();
+		if (offsets.isEmpty())
+			return;
+
+		long now = System.nanoTime();
+		if (this.settled(offsets) < this.commitCount && now - this.lastCommit < this.commitInterval)
+			return;
+
+		this.inFlight = true;
+		this.lastCommit = now;
+		int generation = this.generation;
+
+		this.consumer.commitAsync(this.kafkaOffsets(offsets), (kafkaOffsets, exception) -> {
+
+			this.inFlight = false;
+			this.latency = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - now);
+
+			if (generation != this.generation) {
+				// partitions revoked meantime, the tracker and the committed offsets were already reset
+				LOG.debug("Ignoring the result of a commit sent before the partitions revocation");
+			} else if (exception == null) {
+				this.committed(offsets);
+			} else {
+				// the offsets are still changed for the tracker, so they will be committed next time
+				this.failures++;
+				LOG.error("Error committing ... {}", exception.getMessage());
+			}
+		});
+	}
+
+	/**
+	 * Commit synchronously the offsets of the settled records (i.e. partitions revoked or shutdown)
+	 */
+	public void commitSync() {
+
+		Map<TopicPartition, OffsetAndMetadata> offsets = this.offsetTracker.getOffsets();
+
+		if (!offsets.isEmpty()) {
+
+			long start = System.nanoTime();
+			try {
+				this.consumer.commitSync(this.kafkaOffsets(offsets));
+				this.latency = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+				this.committed(offsets);
+			} catch (Exception e) {
+				this.failures++;
+				LOG.error("Error committing ... {}", e.getMessage());
+			}
+		}
+		this.committed.clear();
+		this.generation++;
+	}
+
+	/**
+	 * Latency (in ms) of the last commit
+	 *
+	 * @return
+	 */
+	public long latency() {
+		return this.latency;
+	}
+
+	/**
+	 * Number of commits done
+	 *
+	 * @return
+	 */
+	public long commits() {
+		return this.commits;
+	}
+
+	/**
+	 * Number of failed commits
+	 *
+	 * @return
+	 */
+	public long failures() {
+		return this.failures;
+	}
+
+	/**
+	 * Mark the provided offsets as committed
+	 *
+	 * @param offsets	tracked offsets committed
+	 */
+	private void committed(Map<TopicPartition, OffsetAndMetadata> offsets) {
+
+		this.offsetTracker.commit(offsets);
+		this.commits++;
+
+		for (Entry<TopicPartition, OffsetAndMetadata> entry : offsets.entrySet()) {
+			this.committed.put(entry.getKey(), entry.getValue().offset());
+			LOG.debug("Committed {} - {} [{}]", entry.getKey().topic(), entry.getKey().partition(), entry.getValue().offset());
+		}
+	}
+
+	/**
+	 * Number of records settled since the last commit
+	 *
+	 * @param offsets	tracked offsets to commit
+	 * @return			number of settled records (the commit count for a partition never committed)
+	 */
+	private long settled(Map<TopicPartition, OffsetAndMetadata> offsets) {
+
+		long settled = 0;
+		for (Entry<TopicPartition, OffsetAndMetadata> entry : offsets.entrySet()) {
+			Long committed = this.committed.get(entry.getKey());
+			settled += (committed != null) ? entry.getValue().offset() - committed : this.commitCount;
+		}
+		return settled;
+	}
+
+	/**
+	 * Get the offsets to commit to Kafka from the tracked ones
+	 *
+	 * @param offsets	tracked offsets
+	 * @return			offsets to commit
+	 */
+	private Map<TopicPartition, OffsetAndMetadata> kafkaOffsets(Map<TopicPartition, OffsetAndMetadata> offsets) {
+
+		// as Kafka documentation says, the committed offset should always be the offset of the next message
+		// that your application will read. Thus, when calling commitSync(offsets) you should
+		// add one to the offset of the last message processed.
+		Map<TopicPartition, OffsetAndMetadata> kafkaOffsets = new HashMap<>(offsets.size());
+		offsets.forEach((topicPartition, offsetAndMetadata) -> {
+			kafkaOffsets.put(topicPartition, new OffsetAndMetadata(offsetAndMetadata.offset() + 1, offsetAndMetadata.metadata()));
+		});
+		return kafkaOffsets;
+	}
+}
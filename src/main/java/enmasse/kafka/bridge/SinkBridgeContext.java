@@ -19,7 +19,10 @@ package enmasse.kafka.bridge;
 import enmasse.kafka.bridge.tracker.OffsetTracker;
 import io.vertx.proton.ProtonQoS;
 
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Context class shared between sink endpoint and Kafka consumer worker
@@ -38,12 +41,19 @@ public class SinkBridgeContext<K, V> {
 	
 	private AtomicBoolean sendQueueFull;
 	
+	// records handed over by the Kafka consumer worker, waiting to be sent on the AMQP link
+	private Queue<KafkaMessage<K, V>> records;
+	// the concurrent queue size isn't constant time
+	private AtomicInteger queued;
+	
 	/**
 	 * Constructor
 	 */
 	public SinkBridgeContext() {
 		
 		this.sendQueueFull = new AtomicBoolean(false);
+		this.records = new ConcurrentLinkedQueue<>();
+		this.queued = new AtomicInteger();
 	}
 
 	/**
@@ -98,7 +108,7 @@ public class SinkBridgeContext<K, V> {
 	}
 
 	/**
-	 * Get Vert.x EventBus unique name queue for sharing Kafka records
+	 * Get Vert.x EventBus unique name for the notifications to the sink endpoint
 	 * @return
 	 */
 	public String getEbName() {
@@ -106,7 +116,7 @@ public class SinkBridgeContext<K, V> {
 	}
 
 	/**
-	 * Set Vert.x EventBus unique name queue for sharing Kafka records
+	 * Set Vert.x EventBus unique name for the notifications to the sink endpoint
 	 * @param ebName
 	 */
 	public SinkBridgeContext<K, V> setEbName(String ebName) {
@@ -164,4 +174,39 @@ public class SinkBridgeContext<K, V> {
 		this.sendQueueFull.set(sendQueueFull);
 		return this;
 	}
+
+	/**
+	 * Hand over a record to the sink endpoint (from the Kafka consumer worker)
+	 * @param record
+	 */
+	public void enqueue(KafkaMessage<K, V> record) {
+		this.records.add(record);
+		this.queued.incrementAndGet();
+	}
+
+	/**
+	 * Get the next record to send (on the sink endpoint)
+	 * @return		the next record, null if none
+	 */
+	public KafkaMessage<K, V> dequeue() {
+		KafkaMessage<K, V> record = this.records.poll();
+		if (record != null)
+			this.queued.decrementAndGet();
+		return record;
+	}
+
+	/**
+	 * Get the number of records waiting to be sent
+	 * @return
+	 */
+	public int queued() {
+		return this.queued.get();
+	}
+
+	/**
+	 * Drop the records waiting to be sent
+	 */
+	public void clearQueue() {
+		while (this.dequeue() != null);
+	}
 }
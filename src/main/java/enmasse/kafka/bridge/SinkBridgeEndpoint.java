@@ -17,21 +17,23 @@
 package enmasse.kafka.bridge;
 
 import enmasse.kafka.bridge.config.BridgeConfigProperties;
-import enmasse.kafka.bridge.converter.DefaultMessageConverter;
+import enmasse.kafka.bridge.converter.ConverterRegistry;
 import enmasse.kafka.bridge.converter.MessageConverter;
+import enmasse.kafka.bridge.tracker.DeliveryTag;
+import enmasse.kafka.bridge.tracker.FullOffsetTracker;
 import enmasse.kafka.bridge.tracker.OffsetTracker;
+import enmasse.kafka.bridge.tracker.OffsetTrackerFactory;
 import enmasse.kafka.bridge.tracker.SimpleOffsetTracker;
 import io.vertx.core.AsyncResult;
 import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
-import io.vertx.core.eventbus.DeliveryOptions;
 import io.vertx.core.eventbus.MessageConsumer;
-import io.vertx.proton.ProtonHelper;
 import io.vertx.proton.ProtonLink;
 import io.vertx.proton.ProtonQoS;
 import io.vertx.proton.ProtonSender;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.qpid.proton.Proton;
 import org.apache.qpid.proton.amqp.Symbol;
 import org.apache.qpid.proton.amqp.messaging.Source;
 import org.apache.qpid.proton.amqp.transport.ErrorCondition;
@@ -39,20 +41,25 @@ import org.apache.qpid.proton.message.Message;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.LinkedList;
 import java.util.Map;
 import java.util.Properties;
-import java.util.Queue;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Class in charge for reading from Apache Kafka
  * and bridging into AMQP traffic to receivers
+ *
+ * @param <K>		Key type for Kafka consumer and record
+ * @param <V>		Value type for Kafka consumer and record
  */
-public class SinkBridgeEndpoint implements BridgeEndpoint {
+public class SinkBridgeEndpoint<K, V> implements BridgeEndpoint {
 
 	private static final Logger LOG = LoggerFactory.getLogger(SinkBridgeEndpoint.class);
 	
+	// ids for making the metrics names unique across the connections (link names are unique only inside a connection)
+	private static final AtomicLong ENDPOINT_IDS = new AtomicLong();
+	
 	private static final String GROUP_ID_MATCH = "/group.id/";
 	
 	public static final String EVENT_BUS_SEND = "send";
@@ -65,52 +72,65 @@ public class SinkBridgeEndpoint implements BridgeEndpoint {
 	public static final int QUEUE_THRESHOLD = 1024;
 	
 	// Kafka consumer related stuff
-	private KafkaConsumerWorker<String, byte[]> kafkaConsumerWorker;
+	private KafkaConsumerWorker<K, V> kafkaConsumerWorker;
 	private Thread kafkaConsumerThread;
 	
 	// Event Bus communication stuff between Kafka consumer thread
 	// and main Vert.x event loop
 	private Vertx vertx;
-	private MessageConsumer<String> ebConsumer;
+	private MessageConsumer<Object> ebConsumer;
 	
 	// converter from ConsumerRecord to AMQP message
-	private MessageConverter<String, byte[]> converter;
+	private MessageConverter<K, V> converter;
+	
+	private ConverterRegistry converterRegistry;
+	
+	// AMQP message reused for all the records, it's encoded by the sender on each send
+	private Message message;
 	
 	// used for tracking partitions and related offset for AT_LEAST_ONCE QoS delivery 
-	private OffsetTracker<String, byte[]> offsetTracker;
+	private OffsetTracker<K, V> offsetTracker;
 	
 	private Handler<BridgeEndpoint> closeHandler;
 	
-	private Queue<String> deliveryNotSent;
-	
-	private SinkBridgeContext<String, byte[]> context;
+	private SinkBridgeContext<K, V> context;
 
 	// sender link for handling outgoing message
 	private ProtonSender sender;
 
 	private BridgeConfigProperties bridgeConfigProperties;
 	
+	private TopicMetadataCache topicMetadataCache;
+	
+	private OffsetTrackerFactory offsetTrackerFactory;
+	
+	private BridgeMetrics metrics;
+	private final long endpointId = ENDPOINT_IDS.incrementAndGet();
+	
+	private boolean closed;
+	
 	/**
 	 * Constructor
 	 *
 	 * @param vertx		Vert.x instance
 	 * @param bridgeConfigProperties	Bridge configuration
+	 * @param topicMetadataCache	Topic metadata cache
+	 * @param converterRegistry	Message converters registry
+	 * @param offsetTrackerFactory	Factory for the configured offset tracker
+	 * @param metrics	Bridge metrics
 	 */
-	public SinkBridgeEndpoint(Vertx vertx, BridgeConfigProperties bridgeConfigProperties) {
+	public SinkBridgeEndpoint(Vertx vertx, BridgeConfigProperties bridgeConfigProperties,
+			TopicMetadataCache topicMetadataCache, ConverterRegistry converterRegistry,
+			OffsetTrackerFactory offsetTrackerFactory, BridgeMetrics metrics) {
 
 		this.vertx = vertx;
 		this.bridgeConfigProperties = bridgeConfigProperties;
+		this.topicMetadataCache = topicMetadataCache;
+		this.converterRegistry = converterRegistry;
+		this.offsetTrackerFactory = offsetTrackerFactory;
+		this.metrics = metrics;
 
-		try {
-			this.converter = (MessageConverter<String, byte[]>)Class.forName(this.bridgeConfigProperties.getAmqpConfigProperties().getMessageConverter()).newInstance();
-		} catch (Exception e) {
-			this.converter = null;
-		}
-		
-		if (this.converter == null)
-			this.converter = new DefaultMessageConverter();
-		
-		this.deliveryNotSent = new LinkedList<>();
+		this.message = Proton.message();
 		this.context = new SinkBridgeContext<>();
 	}
 	
@@ -122,19 +142,19 @@ public class SinkBridgeEndpoint implements BridgeEndpoint {
 	@Override
 	public void close() {
 
-		if (this.kafkaConsumerWorker != null)
+		this.closed = true;
+
+		if (this.kafkaConsumerWorker != null) {
 			this.kafkaConsumerWorker.shutdown();
+			this.metrics.remove(this.metricsPrefix());
+		}
 		
 		if (this.ebConsumer != null)
 			this.ebConsumer.unregister();
 		
-		if (this.context.getEbName() != null)
-			this.vertx.sharedData().getLocalMap(this.context.getEbName()).clear();
-		
-		if (this.offsetTracker != null)
-			this.offsetTracker.clear();
+		this.context.clearQueue();
 		
-		this.deliveryNotSent.clear();
+		// the offset tracker is cleared by the Kafka consumer worker, after its last commit
 
 		this.sender.close();
 	}
@@ -185,19 +205,23 @@ public class SinkBridgeEndpoint implements BridgeEndpoint {
 			
 			LOG.debug("topic {} group.id {}", topic, groupId);
 			
+			// the converter is selected by the topic address, as for the receiver links
+			this.converter = this.converterRegistry.converter(topic);
+			
 			// get filters on partition and offset
 			Source source = (Source) this.sender.getRemoteSource();
 			Map<Symbol, Object> filters = source.getFilter();
 			
-			Object partition = null, offset = null;
+			Object partition = null, offset = null, offsetTracker = null;
 			
 			if (filters != null) {
 				ErrorCondition condition = null;
 				
 				partition = filters.get(Symbol.getSymbol(Bridge.AMQP_PARTITION_FILTER));
 				offset = filters.get(Symbol.getSymbol(Bridge.AMQP_OFFSET_FILTER));
+				offsetTracker = filters.get(Symbol.getSymbol(Bridge.AMQP_OFFSET_TRACKER_FILTER));
 				
-				condition = this.checkFilters(partition, offset);
+				condition = this.checkFilters(partition, offset, offsetTracker);
 				
 				if (condition != null) {
 					this.sender
@@ -222,17 +246,18 @@ public class SinkBridgeEndpoint implements BridgeEndpoint {
 			props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, this.bridgeConfigProperties.getKafkaConfigProperties().getConsumerConfig().isEnableAutoCommit());
 			props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, this.bridgeConfigProperties.getKafkaConfigProperties().getConsumerConfig().getAutoOffsetReset());
 			
-			// generate an UUID as name for the Vert.x EventBus internal queue and shared local map
+			// generate an UUID as name for the Vert.x EventBus internal queue
 			String ebName = String.format("%s.%s.%s", 
 					Bridge.class.getSimpleName().toLowerCase(), 
 					SinkBridgeEndpoint.class.getSimpleName().toLowerCase(), 
 					UUID.randomUUID().toString());
-			LOG.debug("Event Bus queue and shared local map : {}", ebName);
+			LOG.debug("Event Bus queue : {}", ebName);
 
 			// replace unsupported "/" (in a topic name in Kafka) with "."
 			String kafkaTopic = topic.replace('/', '.');
 
-			this.offsetTracker = new SimpleOffsetTracker<>(kafkaTopic);
+			// the offset tracker can be selected by the receiver, otherwise the configured one is used
+			this.offsetTracker = this.createOffsetTracker((String) offsetTracker, kafkaTopic);
 			
 			// create context shared between sink endpoint and Kafka worker
 			this.context
@@ -246,84 +271,59 @@ public class SinkBridgeEndpoint implements BridgeEndpoint {
 			if (offset != null)
 				this.context.setOffset((Long)offset);
 			
-			// create and start new thread for reading from Kafka
-			this.kafkaConsumerWorker = new KafkaConsumerWorker<>(props, this.vertx, this.context);
-			
-			this.kafkaConsumerThread = new Thread(kafkaConsumerWorker);
-			this.kafkaConsumerThread.start();
-			
-			// message sending on AMQP link MUST happen on Vert.x event loop due to
-			// the access to the sender object provided by Vert.x handler
-			// (we MUST avoid to access it from other threads; i.e. Kafka consumer thread)
-			this.ebConsumer = this.vertx.eventBus().consumer(this.context.getEbName(), ebMessage -> {
+			if (this.context.getPartition() == null) {
+				this.startConsumerWorker(props);
+			} else {
 				
-				switch (ebMessage.headers().get(SinkBridgeEndpoint.EVENT_BUS_REQUEST_HEADER)) {
+				// check if partition exists (from the topic metadata cache), otherwise error condition and detach link
+				this.topicMetadataCache.partitionsFor(kafkaTopic, ar -> {
 					
-					case SinkBridgeEndpoint.EVENT_BUS_SEND:
-						
-						if (!this.sender.sendQueueFull()) {
-							
-							// the remote receiver has credits, we can send the message
+					// the link was detached in the meantime
+					if (this.closed)
+						return;
+					
+					if (ar.succeeded() && ar.result().stream().anyMatch(p -> p.partition() == this.context.getPartition())) {
+						this.startConsumerWorker(props);
+					} else {
 						
-							ConsumerRecord<String, byte[]> record = null;
+						ErrorCondition condition;
+						if (ar.failed()) {
 							
-							if (this.sender.getQoS() == ProtonQoS.AT_MOST_ONCE) {
-								
-								// Sender QoS settled (AT_MOST_ONCE)
-								
-								String deliveryTag = ebMessage.body();
-								
-								Object obj = this.vertx.sharedData().getLocalMap(this.context.getEbName()).remove(deliveryTag);
-								
-								if (obj instanceof KafkaMessage<?, ?>) {
-									
-									KafkaMessage<String, byte[]> kafkaMessage = (KafkaMessage<String, byte[]>) obj;
-									record = kafkaMessage.getRecord();
-									
-									Message message = converter.toAmqpMessage(this.sender.getSource().getAddress(), record);
-									this.sender.send(ProtonHelper.tag(String.valueOf(deliveryTag)), message);
-								}
-								
-							} else {
-								
-								// Sender QoS unsettled (AT_LEAST_ONCE)
-									
-								String deliveryTag = ebMessage.body();
-								
-								Object obj = this.vertx.sharedData().getLocalMap(this.context.getEbName()).remove(deliveryTag);
-								
-								if (obj instanceof KafkaMessage<?, ?>) {
-	
-									KafkaMessage<String, byte[]> kafkaMessage = (KafkaMessage<String, byte[]>) obj;
-									record = kafkaMessage.getRecord();
-									
-									Message message = converter.toAmqpMessage(this.sender.getSource().getAddress(), record);
-									
-									// record (converted in AMQP message) is on the way ... ask to tracker to track its delivery
-									this.offsetTracker.track(deliveryTag, record);
-									
-									LOG.debug("Tracked {} - {} [{}]", record.topic(), record.partition(), record.offset());
-
-									this.sender.send(ProtonHelper.tag(deliveryTag), message, delivery -> {
-										
-										// a record (converted in AMQP message) is delivered ... communicate it to the tracker
-										String tag = new String(delivery.getTag());
-										this.offsetTracker.delivered(tag);
-										
-										LOG.debug("Message tag {} delivered {} to {}", tag, delivery.getRemoteState(), this.sender.getSource().getAddress());
-									});
-								}
-								
-							}
+							LOG.warn("Error getting metadata for topic {}", kafkaTopic, ar.cause());
 							
+							// the partition existence can't be checked, the AMQP link will be closed
+							condition = new ErrorCondition(Symbol.getSymbol(Bridge.AMQP_ERROR_TOPIC_METADATA), "Error getting the topic metadata");
 						} else {
 							
-							// no credits available on receiver side, save the current deliveryTag and pause the Kafka consumer
-							this.deliveryNotSent.add(ebMessage.body());
+							LOG.warn("Requested partition {} doesn't exist", this.context.getPartition());
+							
+							// requested partition doesn't exist, the AMQP link will be closed
+							condition = new ErrorCondition(Symbol.getSymbol(Bridge.AMQP_ERROR_PARTITION_NOT_EXISTS), "Specified partition doesn't exist");
 						}
 						
-						this.context.setSendQueueFull(sender.sendQueueFull());
+						this.sender
+								.setSource(null)
+								.open()
+								.setCondition(condition)
+								.close();
+						
+						this.close();
+						this.handleClose();
+					}
+				});
+			}
+			
+			// message sending on AMQP link MUST happen on Vert.x event loop due to
+			// the access to the sender object provided by Vert.x handler
+			// (we MUST avoid to access it from other threads; i.e. Kafka consumer thread)
+			this.ebConsumer = this.vertx.eventBus().consumer(this.context.getEbName(), ebMessage -> {
+				
+				switch (ebMessage.headers().get(SinkBridgeEndpoint.EVENT_BUS_REQUEST_HEADER)) {
+					
+					case SinkBridgeEndpoint.EVENT_BUS_SEND:
 						
+						// records handed over by the Kafka consumer worker, as many as the receiver credits allow
+						this.sendRecords();
 						break;
 
 					case SinkBridgeEndpoint.EVENT_BUS_ASSIGNED:
@@ -361,6 +361,61 @@ public class SinkBridgeEndpoint implements BridgeEndpoint {
 		}
 	}
 	
+	/**
+	 * Create and start the thread for reading from Kafka
+	 *
+	 * @param props		Properties for the Kafka consumer
+	 */
+	private void startConsumerWorker(Properties props) {
+		
+		this.kafkaConsumerWorker = new KafkaConsumerWorker<>(props, this.vertx, this.context,
+				this.bridgeConfigProperties.getKafkaConfigProperties().getConsumerConfig());
+		
+		if (this.context.getQos() == ProtonQoS.AT_LEAST_ONCE) {
+			OffsetCommitter<K, V> offsetCommitter = this.kafkaConsumerWorker.getOffsetCommitter();
+			String prefix = this.metricsPrefix();
+			this.metrics.gauge(prefix + "commit.latency", offsetCommitter::latency);
+			this.metrics.gauge(prefix + "commit.commits", offsetCommitter::commits);
+			this.metrics.gauge(prefix + "commit.failures", offsetCommitter::failures);
+		} else {
+			AtMostOnceCommitter<K, V> atMostOnceCommitter = this.kafkaConsumerWorker.getAtMostOnceCommitter();
+			String prefix = this.metricsPrefix();
+			this.metrics.gauge(prefix + "commit.latency", atMostOnceCommitter::latency);
+			this.metrics.gauge(prefix + "commit.waiting", atMostOnceCommitter::waiting);
+		}
+		
+		this.kafkaConsumerThread = new Thread(kafkaConsumerWorker);
+		this.kafkaConsumerThread.start();
+	}
+	
+	/**
+	 * Prefix for the metrics names related to the sender link
+	 *
+	 * @return				metrics name prefix
+	 */
+	private String metricsPrefix() {
+		return "sink." + this.endpointId + "." + this.sender.getName() + ".";
+	}
+	
+	/**
+	 * Create the offset tracker for the link
+	 *
+	 * @param offsetTracker		offset tracker name requested by the receiver (already checked), null for the configured one
+	 * @param topic				topic to track offset
+	 * @return					offset tracker
+	 */
+	private OffsetTracker<K, V> createOffsetTracker(String offsetTracker, String topic) {
+		
+		// the receiver can only choose among the built-in trackers
+		if (Bridge.AMQP_OFFSET_TRACKER_SIMPLE.equals(offsetTracker)) {
+			return new SimpleOffsetTracker<>(topic);
+		} else if (Bridge.AMQP_OFFSET_TRACKER_FULL.equals(offsetTracker)) {
+			return new FullOffsetTracker<>(topic);
+		}
+		
+		return this.offsetTrackerFactory.create(topic);
+	}
+	
 	/**
 	 * Handle for detached link by the remote receiver
 	 * @param sender		Proton sender instance
@@ -383,30 +438,48 @@ public class SinkBridgeEndpoint implements BridgeEndpoint {
 		
 		LOG.debug("Remote receiver link credits available");
 		
-		String deliveryTag;
-		
-		DeliveryOptions options = new DeliveryOptions();
-		options.addHeader(SinkBridgeEndpoint.EVENT_BUS_REQUEST_HEADER, SinkBridgeEndpoint.EVENT_BUS_SEND);
+		// before resuming Kafka consumer, we need to send the records left waiting for credits
+		this.sendRecords();
+	}
+	
+	/**
+	 * Send the records handed over by the Kafka consumer worker, as long as the remote receiver has credits;
+	 * the other ones stay in the queue until the next credits
+	 */
+	private void sendRecords() {
 		
-		if (this.deliveryNotSent.isEmpty()) {
-			// nothing to recovering, just update context sender queue status
-			this.context.setSendQueueFull(sender.sendQueueFull());
-		} else {
-			// before resuming Kafka consumer, we need to send cached delivery
-			while ((deliveryTag = this.deliveryNotSent.peek()) != null) {
+		KafkaMessage<K, V> kafkaMessage;
+		while (!this.sender.sendQueueFull() && (kafkaMessage = this.context.dequeue()) != null) {
+			
+			ConsumerRecord<K, V> record = kafkaMessage.getRecord();
+			Message message = this.converter.toAmqpMessage(this.sender.getSource().getAddress(), record, this.message);
+			
+			if (this.sender.getQoS() == ProtonQoS.AT_MOST_ONCE) {
 				
-				if (!sender.sendQueueFull()) {
-					
-					LOG.debug("Recovering not sent delivery ... {}", deliveryTag);
-					this.deliveryNotSent.remove();
-					this.vertx.eventBus().send(this.context.getEbName(), deliveryTag, options);
+				// Sender QoS settled (AT_MOST_ONCE)
+				this.sender.send(kafkaMessage.getDeliveryTag(), message);
+				
+			} else {
+				
+				// Sender QoS unsettled (AT_LEAST_ONCE)
+				
+				// record (converted in AMQP message) is on the way ... ask to tracker to track its delivery
+				this.offsetTracker.track(record.partition(), record.offset());
+				
+				LOG.debug("Tracked {} - {} [{}]", record.topic(), record.partition(), record.offset());
+				
+				this.sender.send(kafkaMessage.getDeliveryTag(), message, delivery -> {
 					
-				} else {
+					// a record (converted in AMQP message) is delivered ... communicate it to the tracker
+					byte[] tag = delivery.getTag();
+					this.offsetTracker.delivered(DeliveryTag.partition(tag), DeliveryTag.offset(tag));
 					
-					return;
-				}
+					LOG.debug("Message {} [{}] delivered {} to {}", DeliveryTag.partition(tag), DeliveryTag.offset(tag), delivery.getRemoteState(), this.sender.getSource().getAddress());
+				});
 			}
 		}
+		
+		this.context.setSendQueueFull(this.sender.sendQueueFull());
 	}
 	
 	@Override
@@ -431,9 +504,10 @@ public class SinkBridgeEndpoint implements BridgeEndpoint {
 	 * 
 	 * @param partition		Partition
 	 * @param offset		Offset
+	 * @param offsetTracker	Offset tracker name
 	 * @return				ErrorCondition related to a wrong filter
 	 */
-	private ErrorCondition checkFilters(Object partition, Object offset) {
+	private ErrorCondition checkFilters(Object partition, Object offset, Object offsetTracker) {
 		
 		ErrorCondition condition = null;
 		
@@ -467,6 +541,13 @@ public class SinkBridgeEndpoint implements BridgeEndpoint {
 			return condition;
 		}
 		
+		if (offsetTracker != null && !Bridge.AMQP_OFFSET_TRACKER_SIMPLE.equals(offsetTracker) &&
+				!Bridge.AMQP_OFFSET_TRACKER_FULL.equals(offsetTracker)) {
+			// not a built-in offset tracker name
+			condition = new ErrorCondition(Symbol.getSymbol(Bridge.AMQP_ERROR_WRONG_FILTER), "Wrong filter");
+			return condition;
+		}
+		
 		return condition;
 	}
 }
@@ -17,21 +17,21 @@
 package enmasse.kafka.bridge;
 
 import enmasse.kafka.bridge.config.BridgeConfigProperties;
-import enmasse.kafka.bridge.converter.DefaultMessageConverter;
-import enmasse.kafka.bridge.converter.MessageConverter;
-import io.vertx.core.AsyncResult;
+import enmasse.kafka.bridge.credit.CreditController;
+import enmasse.kafka.bridge.credit.CreditControllerFactory;
+import enmasse.kafka.bridge.routing.Route;
+import enmasse.kafka.bridge.routing.RoutingTable;
+import io.netty.util.collection.LongObjectHashMap;
+import io.netty.util.collection.LongObjectMap;
+import io.vertx.core.Context;
 import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
-import io.vertx.core.eventbus.DeliveryOptions;
-import io.vertx.core.eventbus.MessageConsumer;
 import io.vertx.proton.ProtonDelivery;
 import io.vertx.proton.ProtonLink;
 import io.vertx.proton.ProtonQoS;
 import io.vertx.proton.ProtonReceiver;
-import org.apache.kafka.clients.producer.KafkaProducer;
-import org.apache.kafka.clients.producer.Producer;
-import org.apache.kafka.clients.producer.ProducerConfig;
 import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
 import org.apache.qpid.proton.amqp.Symbol;
 import org.apache.qpid.proton.amqp.messaging.Accepted;
 import org.apache.qpid.proton.amqp.messaging.Rejected;
@@ -40,41 +40,69 @@ import org.apache.qpid.proton.message.Message;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.Properties;
-import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Class in charge for handling incoming AMQP traffic
  * from senders and bridging into Apache Kafka
+ *
+ * @param <K>		Key type for Kafka producer and record
+ * @param <V>		Value type for Kafka producer and record
  */
-public class SourceBridgeEndpoint implements BridgeEndpoint {
+public class SourceBridgeEndpoint<K, V> implements BridgeEndpoint {
 	
 	private static final Logger LOG = LoggerFactory.getLogger(SourceBridgeEndpoint.class);
 	
-	private static final String EVENT_BUS_ACCEPTED_DELIVERY = "accepted";
-	private static final String EVENT_BUS_REJECTED_DELIVERY = "rejected";
-	private static final String EVENT_BUS_DELIVERY_STATE_HEADER = "delivery-state";
-	private static final String EVENT_BUS_DELIVERY_ERROR_HEADER = "delivery-error";
+	// ids for making the metrics names unique across the connections (link names are unique only inside a connection)
+	private static final AtomicLong ENDPOINT_IDS = new AtomicLong();
+	
+	// interval (in ms) for retrying to hand the parked records to the Kafka producers
+	private static final long SEND_RETRY_INTERVAL = 10;
+	
+	// routes (topic and converter) for the receiver links, resolved on attach
+	private Map<String, Route> routes;
 	
-	// converter from AMQP message to ConsumerRecord
-	private MessageConverter<String, byte[]> converter;
+	private RoutingTable routingTable;
 	
-	private Producer<String, byte[]> producerUnsettledMode;
-	private Producer<String, byte[]> producerSettledMode;
+	// Kafka producers shared by all the source endpoints
+	private KafkaProducerPool<K, V> producerUnsettledMode;
+	private KafkaProducerPool<K, V> producerSettledMode;
 	
-	// Event Bus communication stuff between Kafka producer
-	// callback thread and main Vert.x event loop
 	private Vertx vertx;
-	private String ebName;
-	private MessageConsumer<String> ebConsumer;
+	
+	// Vert.x context (event loop) on which this endpoint and its links are handled,
+	// Kafka producer callbacks are marshalled back on it
+	private Context context;
+	
+	// unsettled deliveries waiting for an ack from Kafka, keyed by an internal delivery ID
+	private LongObjectMap<AmqpDeliveryData> deliveries;
+	private long nextDeliveryId;
+	
+	// records parked (in order) because the Kafka producers sender queue was full
+	private Deque<ParkedRecord<K, V>> parked;
+	private long sendRetryTimerId;
 	
 	private Handler<BridgeEndpoint> closeHandler;
 
 	// receiver link for handling incoming message
 	private Map<String, ProtonReceiver> receivers;
-
+	
+	// dispositions batchers for AT_LEAST_ONCE receiver links (if batching is enabled)
+	private Map<String, DispositionBatcher> batchers;
+	
+	// credit controllers for AT_LEAST_ONCE receiver links
+	private Map<String, CreditController> creditControllers;
+	
+	private CreditControllerFactory creditControllerFactory;
+	
+	private BridgeMetrics metrics;
+	private final long endpointId = ENDPOINT_IDS.incrementAndGet();
+	
 	private BridgeConfigProperties bridgeConfigProperties;
 	
 	/**
@@ -82,64 +110,60 @@ public class SourceBridgeEndpoint implements BridgeEndpoint {
 	 * 
 	 * @param vertx		Vert.x instance
 	 * @param bridgeConfigProperties	Bridge configuration
+	 * @param producerUnsettledMode	Kafka producers pool for unsettled messages (AT_LEAST_ONCE)
+	 * @param producerSettledMode	Kafka producers pool for settled messages (AT_MOST_ONCE)
+	 * @param routingTable	Routing table from AMQP addresses to Kafka topics
+	 * @param creditControllerFactory	Factory for the receiver links credit controllers
+	 * @param metrics	Bridge metrics
 	 */
-	public SourceBridgeEndpoint(Vertx vertx, BridgeConfigProperties bridgeConfigProperties) {
+	public SourceBridgeEndpoint(Vertx vertx, BridgeConfigProperties bridgeConfigProperties,
+			KafkaProducerPool<K, V> producerUnsettledMode, KafkaProducerPool<K, V> producerSettledMode,
+			RoutingTable routingTable,
+			CreditControllerFactory creditControllerFactory, BridgeMetrics metrics) {
 		
 		this.vertx = vertx;
+		this.producerUnsettledMode = producerUnsettledMode;
+		this.producerSettledMode = producerSettledMode;
+		this.context = vertx.getOrCreateContext();
 		this.bridgeConfigProperties = bridgeConfigProperties;
 		this.receivers = new HashMap<>();
-
-		try {
-			this.converter = (MessageConverter<String, byte[]>)Class.forName(this.bridgeConfigProperties.getAmqpConfigProperties().getMessageConverter()).newInstance();
-		} catch (Exception e) {
-			this.converter = null;
-		}
-		
-		if (this.converter == null)
-			this.converter = new DefaultMessageConverter();
+		this.batchers = new HashMap<>();
+		this.creditControllers = new HashMap<>();
+		this.creditControllerFactory = creditControllerFactory;
+		this.routes = new HashMap<>();
+		this.routingTable = routingTable;
+		this.metrics = metrics;
+		this.deliveries = new LongObjectHashMap<>();
+		this.parked = new ArrayDeque<>();
+		this.sendRetryTimerId = -1;
 	}
 	
 	@Override
 	public void open() {
 		
-		this.ebName = String.format("%s.%s", 
-				Bridge.class.getSimpleName().toLowerCase(), 
-				SourceBridgeEndpoint.class.getSimpleName().toLowerCase());
-		LOG.debug("Event Bus queue and shared local map : {}", this.ebName);
-	
-		Properties props = new Properties();
-		props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, this.bridgeConfigProperties.getKafkaConfigProperties().getBootstrapServers());
-		props.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, this.bridgeConfigProperties.getKafkaConfigProperties().getProducerConfig().getKeySerializer());
-		props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, this.bridgeConfigProperties.getKafkaConfigProperties().getProducerConfig().getValueSerializer());
-		props.put(ProducerConfig.ACKS_CONFIG, this.bridgeConfigProperties.getKafkaConfigProperties().getProducerConfig().getAcks());
-		
-		this.producerUnsettledMode = new KafkaProducer<>(props);
-		
-		props.clear();
-		props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, this.bridgeConfigProperties.getKafkaConfigProperties().getBootstrapServers());
-		props.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, this.bridgeConfigProperties.getKafkaConfigProperties().getProducerConfig().getKeySerializer());
-		props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, this.bridgeConfigProperties.getKafkaConfigProperties().getProducerConfig().getValueSerializer());
-		props.put(ProducerConfig.ACKS_CONFIG, "0");
-		
-		this.producerSettledMode = new KafkaProducer<>(props);
 	}
 
 	@Override
 	public void close() {
 
-		if (this.producerSettledMode != null)
-			this.producerSettledMode.close();
-		
-		if (this.producerUnsettledMode != null)
-			this.producerUnsettledMode.close();
-		
-		if (this.ebConsumer != null)
-			this.ebConsumer.unregister();
-		
-		if (this.ebName != null)
-			this.vertx.sharedData().getLocalMap(this.ebName).clear();
+		this.deliveries.clear();
+
+		this.parked.clear();
+		if (this.sendRetryTimerId != -1) {
+			this.vertx.cancelTimer(this.sendRetryTimerId);
+			this.sendRetryTimerId = -1;
+		}
+
+		this.batchers.forEach((name, batcher) -> {
+			batcher.close();
+		});
+		this.batchers.clear();
+
+		this.creditControllers.clear();
+		this.routes.clear();
 
 		this.receivers.forEach((name, receiver) -> {
+			this.metrics.remove(this.metricsPrefix(name));
 			receiver.close();
 		});
 		this.receivers.clear();
@@ -154,6 +178,21 @@ public class SourceBridgeEndpoint implements BridgeEndpoint {
 		
 		ProtonReceiver receiver = (ProtonReceiver)link;
 		
+		// the route is resolved once for the link, unroutable addresses are rejected
+		// NOTE : without a target address (i.e. anonymous relay), the route is resolved by each message address
+		String address = receiver.getRemoteTarget().getAddress();
+		Route route = this.routingTable.route(address);
+		if (address != null && route == null) {
+			
+			LOG.warn("No route for address {}", address);
+			
+			receiver.setTarget(null)
+					.open()
+					.setCondition(new ErrorCondition(Symbol.getSymbol(Bridge.AMQP_ERROR_NO_ROUTE), "No route for the address"))
+					.close();
+			return;
+		}
+		
 		// the delivery state is related to the acknowledgement from Apache Kafka
 		receiver.setTarget(receiver.getRemoteTarget())
 				.setAutoAccept(false)
@@ -168,57 +207,48 @@ public class SourceBridgeEndpoint implements BridgeEndpoint {
 				.handler((delivery, message) -> {
 					this.processMessage(receiver, delivery, message);
 				});
+		
+		this.routes.put(receiver.getName(), route);
+		
+		// getting topic metadata in advance on the producers, so the first send doesn't block waiting for them
+		if (route != null) {
+			KafkaProducerPool<K, V> producers = (receiver.getRemoteQoS() == ProtonQoS.AT_MOST_ONCE) ?
+					this.producerSettledMode : this.producerUnsettledMode;
+			producers.warm(route.topic());
+		}
 				
 		if (receiver.getRemoteQoS() == ProtonQoS.AT_MOST_ONCE) {
-			// sender settle mode is SETTLED (so AT_MOST_ONCE QoS), we assume Apache Kafka
-			// no problem in throughput terms so use prefetch due to no ack from Kafka server
-			receiver.setPrefetch(this.bridgeConfigProperties.getAmqpConfigProperties().getFlowCredit());
+			// sender settle mode is SETTLED (so AT_MOST_ONCE QoS), there is no ack from Kafka server
+			// so a credit is granted again when a message is handed to the Kafka producers
+			// (not with prefetch, which would keep the sender going while the messages are parked)
+			receiver.setPrefetch(0)
+					.flow(this.bridgeConfigProperties.getAmqpConfigProperties().getFlowCredit());
 		} else {
 			// sender settle mode is UNSETTLED (or MIXED) (so AT_LEAST_ONCE QoS).
 			// Thanks to the ack from Kafka server we can modulate flow control
+			CreditController creditController = this.creditControllerFactory.create();
+			this.creditControllers.put(receiver.getName(), creditController);
+			
 			receiver.setPrefetch(0)
-					.flow(this.bridgeConfigProperties.getAmqpConfigProperties().getFlowCredit());
+					.flow(creditController.initialCredits());
+			
+			String prefix = this.metricsPrefix(receiver.getName());
+			this.metrics.gauge(prefix + "credit.window", creditController::window);
+			if (creditController.outstanding() >= 0) {
+				this.metrics.gauge(prefix + "credit.outstanding", creditController::outstanding);
+			}
+			this.metrics.gauge(prefix + "credit.latency", creditController::latency);
+			
+			// dispositions and credits can be coalesced instead of being sent for each ack
+			if (this.bridgeConfigProperties.getAmqpConfigProperties().isDispositionBatching()) {
+				this.batchers.put(receiver.getName(), 
+						new DispositionBatcher(this.vertx, receiver, this.bridgeConfigProperties.getAmqpConfigProperties().getDispositionBatchTime()));
+			}
 		}
 
 		receiver.open();
 
 		this.receivers.put(receiver.getName(), receiver);
-		
-		// message sending on AMQP link MUST happen on Vert.x event loop due to
-		// the access to the delivery object provided by Vert.x handler
-		// (we MUST avoid to access it from other threads; i.e. Kafka producer callback thread)
-		this.ebConsumer = this.vertx.eventBus().consumer(this.ebName, ebMessage -> {
-			
-			String deliveryId = ebMessage.body();
-			
-			Object obj = this.vertx.sharedData().getLocalMap(this.ebName).remove(deliveryId);
-			
-			if (obj instanceof AmqpDeliveryData) {
-				
-				AmqpDeliveryData amqpDeliveryData = (AmqpDeliveryData) obj;
-				ProtonDelivery delivery = amqpDeliveryData.getDelivery();
-				
-				switch (ebMessage.headers().get(SourceBridgeEndpoint.EVENT_BUS_DELIVERY_STATE_HEADER)) {
-				
-					case SourceBridgeEndpoint.EVENT_BUS_ACCEPTED_DELIVERY:
-						delivery.disposition(Accepted.getInstance(), true);
-						LOG.debug("Delivery sent [{}]", SourceBridgeEndpoint.EVENT_BUS_ACCEPTED_DELIVERY);
-						break;
-						
-					case SourceBridgeEndpoint.EVENT_BUS_REJECTED_DELIVERY:
-						Rejected rejected = new Rejected();
-						rejected.setError(new ErrorCondition(Symbol.valueOf(Bridge.AMQP_ERROR_SEND_TO_KAFKA), 
-								ebMessage.headers().get(SourceBridgeEndpoint.EVENT_BUS_DELIVERY_ERROR_HEADER)));
-						delivery.disposition(rejected, true);
-						LOG.debug("Delivery sent [{}]", SourceBridgeEndpoint.EVENT_BUS_REJECTED_DELIVERY);
-						break;
-				}
-				
-				// ack received from Kafka server, delivery sent to AMQP client, updating link credits
-				this.receivers.get(amqpDeliveryData.getLinkName()).flow(1);
-			}
-			
-		});
 	}
 
 	/**
@@ -230,53 +260,222 @@ public class SourceBridgeEndpoint implements BridgeEndpoint {
 	 */
 	private void processMessage(ProtonReceiver receiver, ProtonDelivery delivery, Message message) {
 
-		// replace unsupported "/" (in a topic name in Kafka) with "."
-		String kafkaTopic = (receiver.getTarget().getAddress() != null) ?
-				receiver.getTarget().getAddress().replace('/', '.') :
-				null;
+		Route route = this.routes.get(receiver.getName());
+		
+		// the message address wins over the link one, its route is resolved once for each distinct address
+		String address = message.getAddress();
+		if (address != null && (route == null || !address.equals(receiver.getTarget().getAddress())))
+			route = this.routingTable.route(address);
+		
+		if (route == null) {
+			this.processUnroutable(receiver, delivery, address);
+			return;
+		}
 
-		ProducerRecord<String, byte[]> record = this.converter.toKafkaRecord(kafkaTopic, message);
+		ProducerRecord<K, V> record = route.<K, V>converter().toKafkaRecord(route.topic(), message);
+		
+		// fixed partition from the route, if not provided by the message
+		if (route.partition() != null && record.partition() == null)
+			record = new ProducerRecord<>(record.topic(), route.partition(), record.timestamp(), record.key(), record.value(), record.headers());
 		
 		LOG.debug("Sending to Kafka on topic {} at partition {} and key {}", record.topic(), record.partition(), record.key());
 				
 		if (delivery.remotelySettled()) {
 			
 			// message settled (by sender), no feedback need by Apache Kafka, no disposition to be sent
-			this.producerSettledMode.send(record);
+			this.send(new ParkedRecord<>(record, -1, receiver));
 			
 		} else {
 
-			// put delivery data in the shared map, will be read from the event bus consumer when the Kafka producer
-			// will receive ack and send the related deliveryId on the event bus address
-			String deliveryId = UUID.randomUUID().toString();
-			this.vertx.sharedData().getLocalMap(this.ebName).put(deliveryId, new AmqpDeliveryData(receiver.getName(), deliveryId, delivery));
+			// track the delivery, it will be settled when the Kafka producer callback reports the ack
+			long deliveryId = this.nextDeliveryId++;
+			this.deliveries.put(deliveryId, new AmqpDeliveryData(receiver.getName(), deliveryId, delivery, System.nanoTime()));
 		
 			// message unsettled (by sender), feedback needed by Apache Kafka, disposition to be sent accordingly
-			this.producerUnsettledMode.send(record, (metadata, exception) -> {
-				
-				DeliveryOptions options = new DeliveryOptions();
-				String deliveryState = null;
-				
-				if (exception != null) {
-					
-					// record not delivered, send REJECTED disposition to the AMQP sender
-					LOG.error("Error on delivery to Kafka {}", exception.getMessage());
-					deliveryState = SourceBridgeEndpoint.EVENT_BUS_REJECTED_DELIVERY;
-					options.addHeader(SourceBridgeEndpoint.EVENT_BUS_DELIVERY_ERROR_HEADER, exception.getMessage());
-					
+			this.send(new ParkedRecord<>(record, deliveryId, null));
+		}
+	}
+
+	/**
+	 * Hand a record to the Kafka producers without blocking the event loop.
+	 * If the producers sender queue is full, the record is parked (keeping the ordering) and
+	 * retried later; meantime no credits are granted (for the settled deliveries a credit
+	 * is granted when the record is handed to the producers)
+	 *
+	 * @param parkedRecord	record to send with the related delivery
+	 */
+	private void send(ParkedRecord<K, V> parkedRecord) {
+
+		if (!this.parked.isEmpty() || !this.trySend(parkedRecord)) {
+			this.parked.add(parkedRecord);
+			this.scheduleSendRetry();
+		}
+	}
+
+	/**
+	 * Try to hand a record to the Kafka producers
+	 *
+	 * @param parkedRecord	record to send with the related delivery
+	 * @return				false if the producers sender queue is full
+	 */
+	private boolean trySend(ParkedRecord<K, V> parkedRecord) {
+
+		if (parkedRecord.deliveryId == -1) {
+
+			if (!this.producerSettledMode.trySend(parkedRecord.record, null))
+				return false;
+
+			// at most once : the credit used by the message is granted again, if the link is still attached
+			ProtonReceiver receiver = parkedRecord.receiver;
+			if (this.receivers.get(receiver.getName()) == receiver) {
+				receiver.flow(1);
+			}
+			return true;
+		}
+
+		long deliveryId = parkedRecord.deliveryId;
+		return this.producerUnsettledMode.trySend(parkedRecord.record, (metadata, exception) -> {
+			
+			// message sending on AMQP link MUST happen on Vert.x event loop due to
+			// the access to the delivery object provided by Vert.x handler
+			// (we MUST avoid to access it from the Kafka producer callback thread)
+			this.context.runOnContext(v -> {
+				this.processDeliveryResult(deliveryId, metadata, exception);
+			});
+		});
+	}
+
+	/**
+	 * Schedule the retry for sending the parked records (if not already scheduled)
+	 */
+	private void scheduleSendRetry() {
+
+		if (this.sendRetryTimerId != -1)
+			return;
+
+		this.sendRetryTimerId = this.vertx.setTimer(SEND_RETRY_INTERVAL, id -> {
+
+			this.sendRetryTimerId = -1;
+			while (!this.parked.isEmpty()) {
+
+				ParkedRecord<K, V> parkedRecord = this.parked.peek();
+				if (parkedRecord.deliveryId != -1 && this.isDetached(parkedRecord.deliveryId)) {
+					// the link was detached in the meantime, no need to send
+					this.deliveries.remove(parkedRecord.deliveryId);
+					this.parked.poll();
+				} else if (this.trySend(parkedRecord)) {
+					this.parked.poll();
 				} else {
-				
-					// record delivered, send ACCEPTED disposition to the AMQP sender
-					LOG.debug("Delivered to Kafka on topic {} at partition {} [{}]", metadata.topic(), metadata.partition(), metadata.offset());
-					deliveryState = SourceBridgeEndpoint.EVENT_BUS_ACCEPTED_DELIVERY;
-					
+					this.scheduleSendRetry();
+					return;
 				}
-				
-				options.addHeader(SourceBridgeEndpoint.EVENT_BUS_DELIVERY_STATE_HEADER, deliveryState);
-				
-				this.vertx.eventBus().send(this.ebName, deliveryId, options);
-			});
+			}
+		});
+	}
+
+	/**
+	 * Check if the receiver link of an unsettled delivery was detached
+	 *
+	 * @param deliveryId	internal delivery ID
+	 * @return
+	 */
+	private boolean isDetached(long deliveryId) {
+
+		AmqpDeliveryData amqpDeliveryData = this.deliveries.get(deliveryId);
+		return (amqpDeliveryData == null) || !this.receivers.containsKey(amqpDeliveryData.getLinkName());
+	}
+
+	/**
+	 * Reject a message without a route to a Kafka topic
+	 *
+	 * @param receiver		Proton receiver instance
+	 * @param delivery		Proton delivery instance
+	 * @param address		message address (it can be null)
+	 */
+	private void processUnroutable(ProtonReceiver receiver, ProtonDelivery delivery, String address) {
+
+		if (delivery.remotelySettled()) {
+			LOG.warn("No route for address {}, settled message dropped", address);
+			receiver.flow(1);
+			return;
+		}
+
+		// rejected as a failed send, so that the link credits are handled in the same way
+		long deliveryId = this.nextDeliveryId++;
+		this.deliveries.put(deliveryId, new AmqpDeliveryData(receiver.getName(), deliveryId, delivery, System.nanoTime()));
+		this.processDeliveryResult(deliveryId, null,
+				new IllegalArgumentException("No route for address " + address), Bridge.AMQP_ERROR_NO_ROUTE);
+	}
+
+	/**
+	 * Send the disposition for a delivery acknowledged (or not) by Apache Kafka
+	 *
+	 * @param deliveryId	internal delivery ID
+	 * @param metadata		metadata about the record sent to Kafka
+	 * @param exception		error on sending the record to Kafka (null if delivered)
+	 */
+	private void processDeliveryResult(long deliveryId, RecordMetadata metadata, Exception exception) {
+		this.processDeliveryResult(deliveryId, metadata, exception, Bridge.AMQP_ERROR_SEND_TO_KAFKA);
+	}
+
+	/**
+	 * Send the disposition for a delivery acknowledged (or not) by Apache Kafka
+	 *
+	 * @param deliveryId	internal delivery ID
+	 * @param metadata		metadata about the record sent to Kafka
+	 * @param exception		error on sending the record to Kafka (null if delivered)
+	 * @param error			AMQP error condition for the REJECTED disposition
+	 */
+	private void processDeliveryResult(long deliveryId, RecordMetadata metadata, Exception exception, String error) {
+
+		AmqpDeliveryData amqpDeliveryData = this.deliveries.remove(deliveryId);
+
+		// the endpoint was closed in the meantime
+		if (amqpDeliveryData == null)
+			return;
+
+		// the link was detached in the meantime, no disposition to send
+		ProtonReceiver receiver = this.receivers.get(amqpDeliveryData.getLinkName());
+		if (receiver == null)
+			return;
+
+		ProtonDelivery delivery = amqpDeliveryData.getDelivery();
+		DispositionBatcher batcher = this.batchers.get(amqpDeliveryData.getLinkName());
+		
+		// ack received from Kafka server, the credit controller provides the link credits to grant
+		long latency = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - amqpDeliveryData.getSendTime());
+		int credits = this.creditControllers.get(amqpDeliveryData.getLinkName())
+				.acked(latency, this.producerUnsettledMode.bufferUtilization());
+
+		if (exception != null) {
+
+			// record not delivered, send REJECTED disposition to the AMQP sender
+			LOG.error("Error on delivery to Kafka {}", exception.getMessage());
+
+			Rejected rejected = new Rejected();
+			rejected.setError(new ErrorCondition(Symbol.valueOf(error), exception.getMessage()));
+			
+			if (batcher != null) {
+				batcher.rejected(delivery, rejected, credits);
+				return;
+			}
+			delivery.disposition(rejected, true);
+
+		} else {
+
+			// record delivered, send ACCEPTED disposition to the AMQP sender
+			LOG.debug("Delivered to Kafka on topic {} at partition {} [{}]", metadata.topic(), metadata.partition(), metadata.offset());
+			
+			if (batcher != null) {
+				batcher.accepted(delivery, credits);
+				return;
+			}
+			delivery.disposition(Accepted.getInstance(), true);
 		}
+
+		// delivery sent to AMQP client, updating link credits
+		if (credits > 0)
+			receiver.flow(credits);
 	}
 
 	@Override
@@ -297,6 +496,14 @@ public class SourceBridgeEndpoint implements BridgeEndpoint {
 		// close and remove the receiver link
 		receiver.close();
 		this.receivers.remove(receiver.getName());
+		
+		DispositionBatcher batcher = this.batchers.remove(receiver.getName());
+		if (batcher != null)
+			batcher.close();
+		
+		this.creditControllers.remove(receiver.getName());
+		this.routes.remove(receiver.getName());
+		this.metrics.remove(this.metricsPrefix(receiver.getName()));
 
 		// if the source endpoint has no receiver links, it can be closed
 		if (this.receivers.isEmpty()) {
@@ -305,6 +512,16 @@ public class SourceBridgeEndpoint implements BridgeEndpoint {
 		}
 	}
 	
+	/**
+	 * Prefix for the metrics names related to a receiver link
+	 *
+	 * @param linkName		receiver link name
+	 * @return				metrics name prefix
+	 */
+	private String metricsPrefix(String linkName) {
+		return "source." + this.endpointId + "." + linkName + ".";
+	}
+	
 	/**
 	 * Raise close event
 	 */
@@ -314,4 +531,22 @@ public class SourceBridgeEndpoint implements BridgeEndpoint {
 			this.closeHandler.handle(this);
 		}
 	}
+	
+	/**
+	 * Record waiting to be handed to the Kafka producers
+	 */
+	private static class ParkedRecord<K, V> {
+		
+		private final ProducerRecord<K, V> record;
+		// internal delivery ID, -1 for settled messages
+		private final long deliveryId;
+		// receiver link to grant the credit to, only for settled messages
+		private final ProtonReceiver receiver;
+		
+		ParkedRecord(ProducerRecord<K, V> record, long deliveryId, ProtonReceiver receiver) {
+			this.record = record;
+			this.deliveryId = deliveryId;
+			this.receiver = receiver;
+		}
+	}
 }
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2016 Red Hat Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package enmasse.kafka.bridge;
+
+import org.apache.kafka.clients.producer.Partitioner;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.utils.Utils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Partitioner which sticks the records without key to the same partition (for each topic)
+ * until a producer batch is filled (batch.size bytes) or the linger time is elapsed, then it rotates
+ * to another partition. The records without key fill fewer and bigger batches instead of being spread
+ * across all the partitions, so there are fewer produce requests.
+ * The records with a key are partitioned as by the default Kafka partitioner (murmur2 hash of the key)
+ */
+public class StickyPartitioner implements Partitioner {
+
+	// producer defaults
+	private static final int DEFAULT_BATCH_SIZE = 16384;
+	private static final long DEFAULT_LINGER_MS = 0;
+
+	private int batchSize = DEFAULT_BATCH_SIZE;
+	private long lingerMs = DEFAULT_LINGER_MS;
+
+	// current sticky partition for each topic
+	private ConcurrentMap<String, Sticky> sticky = new ConcurrentHashMap<>();
+
+	@Override
+	public void configure(Map<String, ?> configs) {
+
+		Object batchSize = configs.get(ProducerConfig.BATCH_SIZE_CONFIG);
+		if (batchSize != null)
+			this.batchSize = Integer.parseInt(batchSize.toString());
+
+		Object lingerMs = configs.get(ProducerConfig.LINGER_MS_CONFIG);
+		if (lingerMs != null)
+			this.lingerMs = Long.parseLong(lingerMs.toString());
+	}
+
+	@Override
+	public int partition(String topic, Object key, byte[] keyBytes, Object value, byte[] valueBytes, Cluster cluster) {
+
+		List<PartitionInfo> partitions = cluster.partitionsForTopic(topic);
+		int numPartitions = partitions.size();
+
+		if (keyBytes != null) {
+			// same as the default partitioner
+			return Utils.toPositive(Utils.murmur2(keyBytes)) % numPartitions;
+		}
+
+		int size = (valueBytes == null) ? 0 : valueBytes.length;
+
+		Sticky sticky = this.sticky.computeIfAbsent(topic, t -> new Sticky());
+		synchronized (sticky) {
+
+			long now = System.currentTimeMillis();
+			if (sticky.partition == -1 || sticky.bytes + size > this.batchSize ||
+					(now - sticky.timestamp > this.lingerMs && sticky.bytes > 0)) {
+
+				sticky.partition = this.nextPartition(topic, sticky.partition, numPartitions, cluster);
+				sticky.bytes = 0;
+				sticky.timestamp = now;
+			}
+			sticky.bytes += size;
+			return sticky.partition;
+		}
+	}
+
+	/**
+	 * Get a new sticky partition, different from the current one (if possible) and available
+	 *
+	 * @param topic				topic name
+	 * @param current			current sticky partition (-1 if none)
+	 * @param numPartitions		number of partitions for the topic
+	 * @param cluster			cluster metadata
+	 * @return					new sticky partition
+	 */
+	private int nextPartition(String topic, int current, int numPartitions, Cluster cluster) {
+
+		List<PartitionInfo> available = cluster.availablePartitionsForTopic(topic);
+
+		if (available.isEmpty()) {
+			// no leaders known, any partition
+			return (numPartitions == 1) ? 0 :
+					(current + 1 + ThreadLocalRandom.current().nextInt(numPartitions - 1)) % numPartitions;
+		} else if (available.size() == 1) {
+			return available.get(0).partition();
+		}
+
+		int partition;
+		do {
+			partition = available.get(ThreadLocalRandom.current().nextInt(available.size())).partition();
+		} while (partition == current);
+		return partition;
+	}
+
+	@Override
+	public void close() {
+		this.sticky.clear();
+	}
+
+	/**
+	 * Sticky partition state for a topic
+	 */
+	private static class Sticky {
+
+		private int partition = -1;
+		// bytes sent to the partition (an estimation of the current batch size)
+		private int bytes;
+		// time of the last rotation
+		private long timestamp;
+	}
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright 2016 Red Hat Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package enmasse.kafka.bridge;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Topic metadata (partitions) cache shared by all the endpoints.
+ * Metadata are requested to the Kafka server by a dedicated thread and cached for a TTL;
+ * concurrent requests for the same topic are coalesced in a single metadata request.
+ * Metadata used when close to the expiration are refreshed in background (refresh-ahead),
+ * serving the cached ones meantime
+ */
+public class TopicMetadataCache {
+
+	private static final Logger LOG = LoggerFactory.getLogger(TopicMetadataCache.class);
+
+	// fraction of the TTL after which the cached metadata are refreshed in background when used
+	private static final double REFRESH_AHEAD_FACTOR = 0.75;
+
+	private Vertx vertx;
+
+	// consumer used only for getting metadata, accessed only by the metadata thread
+	private Consumer<byte[], byte[]> consumer;
+	private ExecutorService executor;
+
+	// time to live (in ms) for the cached topic metadata
+	private long ttl;
+
+	private Map<String, CachedPartitions> cache;
+	// handlers waiting for a metadata request in progress, for each topic
+	private Map<String, List<Waiter>> pending;
+
+	private LongAdder requests;
+
+	private volatile boolean closed;
+
+	/**
+	 * Constructor
+	 *
+	 * @param vertx				Vert.x instance
+	 * @param bootstrapServers	Kafka bootstrap servers
+	 * @param ttl				time to live (in ms) for the cached topic metadata
+	 */
+	public TopicMetadataCache(Vertx vertx, String bootstrapServers, long ttl) {
+
+		this.vertx = vertx;
+		this.ttl = ttl;
+
+		Properties props = new Properties();
+		props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+		props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class);
+		props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class);
+		this.consumer = new KafkaConsumer<>(props);
+
+		this.executor = Executors.newSingleThreadExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "kafka-topic-metadata");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		this.cache = new ConcurrentHashMap<>();
+		this.pending = new HashMap<>();
+		this.requests = new LongAdder();
+	}
+
+	/**
+	 * Get the partitions of a topic, from the cache if not expired or from the Kafka server.
+	 * The handler is called on the caller Vert.x context
+	 *
+	 * @param topic		topic name
+	 * @param handler	handler called with the topic partitions (empty if the topic doesn't exist)
+	 */
+	public void partitionsFor(String topic, Handler<AsyncResult<List<PartitionInfo>>> handler) {
+
+		CachedPartitions cached = this.cache.get(topic);
+		if (cached != null && !cached.isExpired()) {
+			if (cached.isRefreshable())
+				this.request(topic, null);
+			handler.handle(Future.succeededFuture(cached.partitions));
+			return;
+		}
+
+		this.request(topic, new Waiter(this.vertx.getOrCreateContext(), handler));
+	}
+
+	/**
+	 * Number of metadata requests sent to the Kafka server
+	 *
+	 * @return
+	 */
+	public long requests() {
+		return this.requests.sum();
+	}
+
+	/**
+	 * Close the cache and the related Kafka consumer
+	 */
+	public void close() {
+
+		synchronized (this.pending) {
+			this.closed = true;
+		}
+		this.executor.execute(() -> this.consumer.close());
+		this.executor.shutdown();
+		this.cache.clear();
+	}
+
+	/**
+	 * Request the topic metadata to the Kafka server, coalescing with an in progress request
+	 *
+	 * @param topic		topic name
+	 * @param waiter	waiter for the result (null if no one is waiting)
+	 */
+	private void request(String topic, Waiter waiter) {
+
+		synchronized (this.pending) {
+
+			if (this.closed) {
+				// no more requests to the executor, already shut down
+				if (waiter != null)
+					waiter.context.runOnContext(v -> waiter.handler.handle(Future.failedFuture("Topic metadata cache closed")));
+				return;
+			}
+
+			List<Waiter> waiters = this.pending.get(topic);
+			if (waiters != null) {
+				// a request is already in progress
+				if (waiter != null)
+					waiters.add(waiter);
+				return;
+			}
+
+			waiters = new ArrayList<>();
+			if (waiter != null)
+				waiters.add(waiter);
+			this.pending.put(topic, waiters);
+
+			// submitted while holding the lock, so that it can't race with the close
+			this.submit(topic);
+		}
+	}
+
+	/**
+	 * Submit the metadata request for a topic to the metadata thread
+	 *
+	 * @param topic		topic name
+	 */
+	private void submit(String topic) {
+
+		this.executor.execute(() -> {
+
+			List<PartitionInfo> partitions = null;
+			Throwable error = null;
+			try {
+				this.requests.increment();
+				partitions = this.consumer.partitionsFor(topic);
+				// the topic doesn't exist (and it's not auto-created)
+				if (partitions == null)
+					partitions = Collections.emptyList();
+				// not cached if empty, the topic could be created meantime
+				if (!partitions.isEmpty()) {
+					long now = System.currentTimeMillis();
+					this.cache.put(topic, new CachedPartitions(partitions, now + (long)(this.ttl * REFRESH_AHEAD_FACTOR), now + this.ttl));
+				} else {
+					this.cache.remove(topic);
+				}
+			} catch (Exception e) {
+				LOG.error("Error getting metadata for topic {}", topic, e);
+				error = e;
+				// a failed refresh ahead leaves the cached metadata until their expiration, without refreshing them again
+				CachedPartitions cached = this.cache.get(topic);
+				if (cached != null && cached.isRefreshable())
+					this.cache.put(topic, new CachedPartitions(cached.partitions, cached.expiration, cached.expiration));
+			}
+
+			List<Waiter> waiters;
+			synchronized (this.pending) {
+				waiters = this.pending.remove(topic);
+			}
+
+			AsyncResult<List<PartitionInfo>> result = (error == null) ?
+					Future.succeededFuture(partitions) :
+					Future.failedFuture(error);
+			for (Waiter w : waiters) {
+				w.context.runOnContext(v -> w.handler.handle(result));
+			}
+		});
+	}
+
+	/**
+	 * Topic partitions cached until an expiration time, to be refreshed in background from a refresh time
+	 */
+	private static class CachedPartitions {
+
+		private final List<PartitionInfo> partitions;
+		private final long refresh;
+		private final long expiration;
+
+		CachedPartitions(List<PartitionInfo> partitions, long refresh, long expiration) {
+			this.partitions = partitions;
+			this.refresh = refresh;
+			this.expiration = expiration;
+		}
+
+		boolean isExpired() {
+			return System.currentTimeMillis() >= this.expiration;
+		}
+
+		boolean isRefreshable() {
+			long now = System.currentTimeMillis();
+			return now >= this.refresh && now < this.expiration;
+		}
+	}
+
+	/**
+	 * Handler waiting for topic metadata with the Vert.x context on which calling it
+	 */
+	private static class Waiter {
+
+		private final Context context;
+		private final Handler<AsyncResult<List<PartitionInfo>>> handler;
+
+		Waiter(Context context, Handler<AsyncResult<List<PartitionInfo>>> handler) {
+			this.context = context;
+			this.handler = handler;
+		}
+	}
+}
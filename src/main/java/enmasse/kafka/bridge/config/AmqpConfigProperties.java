@@ -30,13 +30,31 @@ public class AmqpConfigProperties {
     private static final String DEFAULT_HOST = "0.0.0.0";
     private static final int DEFAULT_PORT = 5672;
     private static final int DEFAULT_FLOW_CREDIT = 1024;
-    private static final String DEFAULT_MESSAGE_CONVERTER = "enmasse.kafka.bridge.DefaultMessageConverter";
+    private static final String DEFAULT_MESSAGE_CONVERTER = "enmasse.kafka.bridge.converter.DefaultMessageConverter";
+    private static final String DEFAULT_MESSAGE_CONVERTER_RULES = "";
+    private static final String DEFAULT_ROUTES = "";
+    private static final boolean DEFAULT_DISPOSITION_BATCHING = false;
+    private static final int DEFAULT_DISPOSITION_BATCH_TIME = 0;
+    private static final String DEFAULT_CREDIT_CONTROLLER = "enmasse.kafka.bridge.credit.FixedCreditController";
+    private static final int DEFAULT_CREDIT_TARGET_LATENCY = 100;
+    private static final int DEFAULT_CREDIT_MIN = 10;
+    private static final int DEFAULT_CREDIT_MAX = 10000;
+    private static final String DEFAULT_OFFSET_TRACKER = "enmasse.kafka.bridge.tracker.FullOffsetTracker";
 
     private AmqpMode mode = DEFAULT_AMQP_MODE;
     private int flowCredit = DEFAULT_FLOW_CREDIT;
     private String host = DEFAULT_HOST;
     private int port = DEFAULT_PORT;
     private String messageConverter = DEFAULT_MESSAGE_CONVERTER;
+    private String messageConverterRules = DEFAULT_MESSAGE_CONVERTER_RULES;
+    private String routes = DEFAULT_ROUTES;
+    private boolean dispositionBatching = DEFAULT_DISPOSITION_BATCHING;
+    private int dispositionBatchTime = DEFAULT_DISPOSITION_BATCH_TIME;
+    private String creditController = DEFAULT_CREDIT_CONTROLLER;
+    private int creditTargetLatency = DEFAULT_CREDIT_TARGET_LATENCY;
+    private int creditMin = DEFAULT_CREDIT_MIN;
+    private int creditMax = DEFAULT_CREDIT_MAX;
+    private String offsetTracker = DEFAULT_OFFSET_TRACKER;
 
     /**
      * Get the AMQP receiver flow credit
@@ -136,4 +154,186 @@ public class AmqpConfigProperties {
         this.messageConverter = messageConverter;
         return this;
     }
+
+    /**
+     * Get the rules for selecting the AMQP message converter by address
+     *
+     * @return
+     */
+    public String getMessageConverterRules() {
+        return this.messageConverterRules;
+    }
+
+    /**
+     * Set the rules for selecting the AMQP message converter by address
+     * (comma separated [address pattern]=[converter class], the pattern supports the * wildcard)
+     *
+     * @param messageConverterRules AMQP message converter rules
+     * @return  this instance for setter chaining
+     */
+    public AmqpConfigProperties setMessageConverterRules(String messageConverterRules) {
+        this.messageConverterRules = messageConverterRules;
+        return this;
+    }
+
+    /**
+     * Get the routes from AMQP addresses to Kafka topics
+     *
+     * @return
+     */
+    public String getRoutes() {
+        return this.routes;
+    }
+
+    /**
+     * Set the routes from AMQP addresses to Kafka topics
+     * (comma separated [address pattern]=[topic](@[partition]), the pattern supports the * wildcard)
+     *
+     * @param routes    routes from AMQP addresses to Kafka topics
+     * @return  this instance for setter chaining
+     */
+    public AmqpConfigProperties setRoutes(String routes) {
+        this.routes = routes;
+        return this;
+    }
+
+    /**
+     * Get if dispositions (and credits) on AT_LEAST_ONCE receiver links are batched
+     *
+     * @return
+     */
+    public boolean isDispositionBatching() {
+        return this.dispositionBatching;
+    }
+
+    /**
+     * Set if dispositions (and credits) on AT_LEAST_ONCE receiver links are batched
+     *
+     * @param dispositionBatching   if dispositions are batched
+     * @return  this instance for setter chaining
+     */
+    public AmqpConfigProperties setDispositionBatching(boolean dispositionBatching) {
+        this.dispositionBatching = dispositionBatching;
+        return this;
+    }
+
+    /**
+     * Get the time window (in ms) for batching dispositions (0 means the current event loop iteration)
+     *
+     * @return
+     */
+    public int getDispositionBatchTime() {
+        return this.dispositionBatchTime;
+    }
+
+    /**
+     * Set the time window (in ms) for batching dispositions (0 means the current event loop iteration)
+     *
+     * @param dispositionBatchTime  time window for batching dispositions
+     * @return  this instance for setter chaining
+     */
+    public AmqpConfigProperties setDispositionBatchTime(int dispositionBatchTime) {
+        this.dispositionBatchTime = dispositionBatchTime;
+        return this;
+    }
+
+    /**
+     * Get the credit controller for AT_LEAST_ONCE receiver links
+     *
+     * @return
+     */
+    public String getCreditController() {
+        return this.creditController;
+    }
+
+    /**
+     * Set the credit controller for AT_LEAST_ONCE receiver links
+     *
+     * @param creditController  credit controller class
+     * @return  this instance for setter chaining
+     */
+    public AmqpConfigProperties setCreditController(String creditController) {
+        this.creditController = creditController;
+        return this;
+    }
+
+    /**
+     * Get the Kafka acknowledgement latency (in ms) targeted by the adaptive credit controller
+     *
+     * @return
+     */
+    public int getCreditTargetLatency() {
+        return this.creditTargetLatency;
+    }
+
+    /**
+     * Set the Kafka acknowledgement latency (in ms) targeted by the adaptive credit controller
+     *
+     * @param creditTargetLatency   target latency
+     * @return  this instance for setter chaining
+     */
+    public AmqpConfigProperties setCreditTargetLatency(int creditTargetLatency) {
+        this.creditTargetLatency = creditTargetLatency;
+        return this;
+    }
+
+    /**
+     * Get the minimum window of credits for the adaptive credit controller
+     *
+     * @return
+     */
+    public int getCreditMin() {
+        return this.creditMin;
+    }
+
+    /**
+     * Set the minimum window of credits for the adaptive credit controller
+     *
+     * @param creditMin minimum window of credits
+     * @return  this instance for setter chaining
+     */
+    public AmqpConfigProperties setCreditMin(int creditMin) {
+        this.creditMin = creditMin;
+        return this;
+    }
+
+    /**
+     * Get the maximum window of credits for the adaptive credit controller
+     *
+     * @return
+     */
+    public int getCreditMax() {
+        return this.creditMax;
+    }
+
+    /**
+     * Set the maximum window of credits for the adaptive credit controller
+     *
+     * @param creditMax maximum window of credits
+     * @return  this instance for setter chaining
+     */
+    public AmqpConfigProperties setCreditMax(int creditMax) {
+        this.creditMax = creditMax;
+        return this;
+    }
+
+    /**
+     * Get the offset tracker for AT_LEAST_ONCE sender links
+     *
+     * @return
+     */
+    public String getOffsetTracker() {
+        return this.offsetTracker;
+    }
+
+    /**
+     * Set the offset tracker for AT_LEAST_ONCE sender links
+     *
+     * @param offsetTracker offset tracker class
+     * @return  this instance for setter chaining
+     */
+    public AmqpConfigProperties setOffsetTracker(String offsetTracker) {
+        this.offsetTracker = offsetTracker;
+        return this;
+    }
 }
@@ -28,8 +28,10 @@ import org.springframework.stereotype.Component;
 public class KafkaConfigProperties {
 
     private static final String DEFAULT_BOOTSTRAP_SERVERS = "localhost:9092";
+    private static final long DEFAULT_METADATA_CACHE_TTL = 30000;
 
     private String bootstrapServers = DEFAULT_BOOTSTRAP_SERVERS;
+    private long metadataCacheTtl = DEFAULT_METADATA_CACHE_TTL;
 
     private KafkaProducerConfigProperties producerConfig = new KafkaProducerConfigProperties();
     private KafkaConsumerConfigProperties consumerConfig = new KafkaConsumerConfigProperties();
@@ -54,6 +56,26 @@ public class KafkaConfigProperties {
         return this;
     }
 
+    /**
+     * Get the time to live (in ms) for the cached topic metadata
+     *
+     * @return
+     */
+    public long getMetadataCacheTtl() {
+        return this.metadataCacheTtl;
+    }
+
+    /**
+     * Set the time to live (in ms) for the cached topic metadata
+     *
+     * @param metadataCacheTtl  time to live (in ms) for the cached topic metadata
+     * @return  this instance for setter chaining
+     */
+    public KafkaConfigProperties setMetadataCacheTtl(long metadataCacheTtl) {
+        this.metadataCacheTtl = metadataCacheTtl;
+        return this;
+    }
+
     /**
      * Get the Kafka producer configuration
      *
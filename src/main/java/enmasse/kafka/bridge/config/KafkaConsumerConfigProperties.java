@@ -30,11 +30,17 @@ public class KafkaConsumerConfigProperties {
     private static final String DEFAULT_VALUE_DESERIALIZER = "org.apache.kafka.common.serialization.ByteArrayDeserializer";
     private static final String DEFAULT_AUTO_OFFSET_RESET = "earliest";
     private static final boolean DEFAULT_ENABLE_AUTO_COMMIT = false;
+    private static final int DEFAULT_COMMIT_COUNT = 1000;
+    private static final int DEFAULT_COMMIT_INTERVAL = 100;
+    private static final int DEFAULT_COMMIT_AHEAD_WINDOW = 1000;
 
     private String keyDeserializer = DEFAULT_KEY_DESERIALIZER;
     private String valueDeserializer = DEFAULT_VALUE_DESERIALIZER;
     private String autoOffsetReset = DEFAULT_AUTO_OFFSET_RESET;
     private boolean isEnableAutoCommit = DEFAULT_ENABLE_AUTO_COMMIT;
+    private int commitCount = DEFAULT_COMMIT_COUNT;
+    private int commitInterval = DEFAULT_COMMIT_INTERVAL;
+    private int commitAheadWindow = DEFAULT_COMMIT_AHEAD_WINDOW;
 
     /**
      * Get the Key Serializer class
@@ -105,4 +111,64 @@ public class KafkaConsumerConfigProperties {
         // enable.auto.commit isn't configurable
         return this.isEnableAutoCommit;
     }
+
+    /**
+     * Get the number of settled records after which the offsets are committed
+     *
+     * @return
+     */
+    public int getCommitCount() {
+        return this.commitCount;
+    }
+
+    /**
+     * Set the number of settled records after which the offsets are committed
+     *
+     * @param commitCount   number of settled records
+     * @return  this instance for setter chaining
+     */
+    public KafkaConsumerConfigProperties setCommitCount(int commitCount) {
+        this.commitCount = commitCount;
+        return this;
+    }
+
+    /**
+     * Get the max time (in ms) between two commits of the settled records offsets
+     *
+     * @return
+     */
+    public int getCommitInterval() {
+        return this.commitInterval;
+    }
+
+    /**
+     * Set the max time (in ms) between two commits of the settled records offsets
+     *
+     * @param commitInterval    max time (in ms) between two commits
+     * @return  this instance for setter chaining
+     */
+    public KafkaConsumerConfigProperties setCommitInterval(int commitInterval) {
+        this.commitInterval = commitInterval;
+        return this;
+    }
+
+    /**
+     * Get the max number of fetched records waiting for their commit before being sent (AT_MOST_ONCE)
+     *
+     * @return
+     */
+    public int getCommitAheadWindow() {
+        return this.commitAheadWindow;
+    }
+
+    /**
+     * Set the max number of fetched records waiting for their commit before being sent (AT_MOST_ONCE)
+     *
+     * @param commitAheadWindow max number of records, 0 for a synchronous commit of each batch
+     * @return  this instance for setter chaining
+     */
+    public KafkaConsumerConfigProperties setCommitAheadWindow(int commitAheadWindow) {
+        this.commitAheadWindow = commitAheadWindow;
+        return this;
+    }
 }
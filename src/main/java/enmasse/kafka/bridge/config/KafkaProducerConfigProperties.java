@@ -29,10 +29,16 @@ public class KafkaProducerConfigProperties {
     private static final String DEFAULT_KEY_SERIALIZER = "org.apache.kafka.common.serialization.StringSerializer";
     private static final String DEFAULT_VALUE_SERIALIZER = "org.apache.kafka.common.serialization.ByteArraySerializer";
     private static final String DEFAULT_ACKS = "1";
+    private static final int DEFAULT_POOL_SIZE = 1;
+    private static final int DEFAULT_SEND_QUEUE_SIZE = 1024;
+    private static final String DEFAULT_PARTITIONER = "org.apache.kafka.clients.producer.internals.DefaultPartitioner";
 
     private String keySerializer = DEFAULT_KEY_SERIALIZER;
     private String valueSerializer = DEFAULT_VALUE_SERIALIZER;
     private String acks = DEFAULT_ACKS;
+    private int poolSize = DEFAULT_POOL_SIZE;
+    private int sendQueueSize = DEFAULT_SEND_QUEUE_SIZE;
+    private String partitioner = DEFAULT_PARTITIONER;
 
     /**
      * Get the Key Serializer class
@@ -93,4 +99,64 @@ public class KafkaProducerConfigProperties {
         this.acks = acks;
         return this;
     }
+
+    /**
+     * Get the number of Kafka producers shared by all the AMQP connections
+     *
+     * @return
+     */
+    public int getPoolSize() {
+        return this.poolSize;
+    }
+
+    /**
+     * Set the number of Kafka producers shared by all the AMQP connections
+     *
+     * @param poolSize  number of Kafka producers
+     * @return  this instance for setter chaining
+     */
+    public KafkaProducerConfigProperties setPoolSize(int poolSize) {
+        this.poolSize = poolSize;
+        return this;
+    }
+
+    /**
+     * Get the max number of records queued for each Kafka producer sender thread
+     *
+     * @return
+     */
+    public int getSendQueueSize() {
+        return this.sendQueueSize;
+    }
+
+    /**
+     * Set the max number of records queued for each Kafka producer sender thread
+     *
+     * @param sendQueueSize max number of queued records
+     * @return  this instance for setter chaining
+     */
+    public KafkaProducerConfigProperties setSendQueueSize(int sendQueueSize) {
+        this.sendQueueSize = sendQueueSize;
+        return this;
+    }
+
+    /**
+     * Get the partitioner class for the Kafka producers
+     *
+     * @return
+     */
+    public String getPartitioner() {
+        return this.partitioner;
+    }
+
+    /**
+     * Set the partitioner class for the Kafka producers
+     *
+     * @param partitioner   partitioner class
+     * @return  this instance for setter chaining
+     */
+    public KafkaProducerConfigProperties setPartitioner(String partitioner) {
+        this.partitioner = partitioner;
+        return this;
+    }
 }
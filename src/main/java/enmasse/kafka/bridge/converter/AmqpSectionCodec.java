@@ -0,0 +1,168 @@
+/*
+ * Copyright 2016 Red Hat Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package enmasse.kafka.bridge.converter;
+
+import org.apache.qpid.proton.amqp.messaging.AmqpValue;
+import org.apache.qpid.proton.amqp.messaging.Section;
+import org.apache.qpid.proton.codec.AMQPDefinedTypes;
+import org.apache.qpid.proton.codec.DecoderImpl;
+import org.apache.qpid.proton.codec.EncoderImpl;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Encoder/decoder for single AMQP message sections (or values) using the AMQP type system
+ * (so that the types are preserved)
+ */
+public final class AmqpSectionCodec {
+
+	private static final ThreadLocal<Codec> CODEC = ThreadLocal.withInitial(Codec::new);
+
+	private AmqpSectionCodec() {
+	}
+
+	/**
+	 * Encode an AMQP message section
+	 *
+	 * @param section	section to encode
+	 * @return			encoded section
+	 */
+	public static byte[] encode(Section section) {
+
+		return EncodeBuffer.encode(buffer -> {
+			ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+			encode(section, byteBuffer);
+			return byteBuffer.position();
+		});
+	}
+
+	/**
+	 * Encode an AMQP message section into the provided buffer
+	 *
+	 * @param section	section to encode
+	 * @param buffer	buffer to encode into (from its current position)
+	 * @throws java.nio.BufferOverflowException	if the buffer is too small
+	 */
+	public static void encode(Section section, ByteBuffer buffer) {
+		write(section, buffer);
+	}
+
+	/**
+	 * Encode an AMQP value section, writing the common value types straight into the buffer
+	 * (the bytes are the same as encoding the section through the Proton encoder)
+	 *
+	 * @param value		value of the section
+	 * @return			encoded section
+	 */
+	public static byte[] encodeAmqpValue(Object value) {
+
+		return EncodeBuffer.encode(buffer -> {
+			ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+			if (!AmqpValueWriter.writeSection(value, byteBuffer)) {
+				// a type not handled by the writer, the Proton encoder starts again from scratch
+				byteBuffer.clear();
+				write(new AmqpValue(value), byteBuffer);
+			}
+			return byteBuffer.position();
+		});
+	}
+
+	/**
+	 * Decode an AMQP message section
+	 *
+	 * @param bytes		encoded section
+	 * @param offset	offset of the encoded section
+	 * @param length	length of the encoded section
+	 * @return			decoded section
+	 */
+	public static Section decode(byte[] bytes, int offset, int length) {
+
+		DecoderImpl decoder = CODEC.get().decoder;
+		decoder.setByteBuffer(ByteBuffer.wrap(bytes, offset, length));
+		try {
+			Object section = decoder.readObject();
+			if (!(section instanceof Section))
+				throw new IllegalArgumentException("The encoded bytes aren't an AMQP message section");
+			return (Section) section;
+		} finally {
+			decoder.setByteBuffer(null);
+		}
+	}
+
+	/**
+	 * Encode an AMQP typed value
+	 *
+	 * @param value		value to encode (it can be null)
+	 * @return			encoded value
+	 */
+	public static byte[] encodeValue(Object value) {
+
+		return EncodeBuffer.encode(buffer -> {
+			ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+			write(value, byteBuffer);
+			return byteBuffer.position();
+		});
+	}
+
+	/**
+	 * Decode an AMQP typed value
+	 *
+	 * @param bytes		encoded value
+	 * @return			decoded value
+	 */
+	public static Object decodeValue(byte[] bytes) {
+
+		DecoderImpl decoder = CODEC.get().decoder;
+		decoder.setByteBuffer(ByteBuffer.wrap(bytes));
+		try {
+			return decoder.readObject();
+		} finally {
+			decoder.setByteBuffer(null);
+		}
+	}
+
+	/**
+	 * Write an AMQP typed object into the provided buffer
+	 *
+	 * @param object	object to write
+	 * @param buffer	buffer to write into (from its current position)
+	 */
+	private static void write(Object object, ByteBuffer buffer) {
+
+		EncoderImpl encoder = CODEC.get().encoder;
+		encoder.setByteBuffer(buffer);
+		try {
+			encoder.writeObject(object);
+		} finally {
+			encoder.setByteBuffer((ByteBuffer) null);
+		}
+	}
+
+	/**
+	 * Proton encoder and decoder sharing the AMQP types registry
+	 */
+	private static class Codec {
+
+		private final DecoderImpl decoder = new DecoderImpl();
+		private final EncoderImpl encoder = new EncoderImpl(this.decoder);
+
+		Codec() {
+			AMQPDefinedTypes.registerAllTypes(this.decoder, this.encoder);
+		}
+	}
+}
@@ -0,0 +1,322 @@
+/*
+ * Copyright 2016 Red Hat Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package enmasse.kafka.bridge.converter;
+
+import org.apache.qpid.proton.amqp.Binary;
+import org.apache.qpid.proton.amqp.Symbol;
+import org.apache.qpid.proton.amqp.UnsignedInteger;
+import org.apache.qpid.proton.amqp.UnsignedLong;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writer of an AMQP value section straight into a buffer, for the value types an AMQP value body
+ * usually carries (null, boolean, numbers, strings, symbols, binaries, lists and maps).
+ * It produces the same bytes the Proton encoder does (so they are decoded by it as usual) but without
+ * the per value type lookups and the size pre-computation of the Proton encoder.
+ * NOTE : the buffer has to be backed by an array
+ */
+final class AmqpValueWriter {
+
+	// AMQP value section descriptor (small ulong 0x77)
+	private static final byte DESCRIBED = 0x00;
+	private static final byte SMALL_ULONG = 0x53;
+	private static final byte AMQP_VALUE_DESCRIPTOR = 0x77;
+
+	// AMQP type system format codes
+	private static final byte NULL = 0x40;
+	private static final byte TRUE = 0x41;
+	private static final byte FALSE = 0x42;
+	private static final byte UINT0 = 0x43;
+	private static final byte ULONG0 = 0x44;
+	private static final byte LIST0 = 0x45;
+	private static final byte BYTE = 0x51;
+	private static final byte SMALL_UINT = 0x52;
+	private static final byte SMALL_INT = 0x54;
+	private static final byte SMALL_LONG = 0x55;
+	private static final byte SHORT = 0x61;
+	private static final byte UINT = 0x70;
+	private static final byte INT = 0x71;
+	private static final byte FLOAT = 0x72;
+	private static final byte ULONG = (byte) 0x80;
+	private static final byte LONG = (byte) 0x81;
+	private static final byte DOUBLE = (byte) 0x82;
+	private static final byte VBIN8 = (byte) 0xa0;
+	private static final byte STR8 = (byte) 0xa1;
+	private static final byte SYM8 = (byte) 0xa3;
+	private static final byte VBIN32 = (byte) 0xb0;
+	private static final byte STR32 = (byte) 0xb1;
+	private static final byte SYM32 = (byte) 0xb3;
+	private static final byte LIST8 = (byte) 0xc0;
+	private static final byte MAP8 = (byte) 0xc1;
+	private static final byte LIST32 = (byte) 0xd0;
+	private static final byte MAP32 = (byte) 0xd1;
+
+	private AmqpValueWriter() {
+	}
+
+	/**
+	 * Write an AMQP value section into the provided buffer
+	 *
+	 * @param value		value of the section
+	 * @param buffer	buffer to write into (from its current position)
+	 * @return			if the value was written, false if it has (or contains) a type this writer doesn't handle
+	 * 					(the buffer content from the starting position is meaningless then)
+	 * @throws java.nio.BufferOverflowException	if the buffer is too small
+	 */
+	static boolean writeSection(Object value, ByteBuffer buffer) {
+
+		buffer.put(DESCRIBED);
+		buffer.put(SMALL_ULONG);
+		buffer.put(AMQP_VALUE_DESCRIPTOR);
+		return write(value, buffer);
+	}
+
+	/**
+	 * Write an AMQP typed value into the provided buffer
+	 *
+	 * @param value		value to write
+	 * @param buffer	buffer to write into
+	 * @return			if the value was written
+	 */
+	private static boolean write(Object value, ByteBuffer buffer) {
+
+		if (value == null) {
+			buffer.put(NULL);
+		} else if (value instanceof String) {
+			writeString((String) value, buffer);
+		} else if (value instanceof Long) {
+			long l = (Long) value;
+			if (l >= Byte.MIN_VALUE && l <= Byte.MAX_VALUE) {
+				buffer.put(SMALL_LONG).put((byte) l);
+			} else {
+				buffer.put(LONG).putLong(l);
+			}
+		} else if (value instanceof Integer) {
+			int i = (Integer) value;
+			if (i >= Byte.MIN_VALUE && i <= Byte.MAX_VALUE) {
+				buffer.put(SMALL_INT).put((byte) i);
+			} else {
+				buffer.put(INT).putInt(i);
+			}
+		} else if (value instanceof Boolean) {
+			buffer.put((Boolean) value ? TRUE : FALSE);
+		} else if (value instanceof Double) {
+			buffer.put(DOUBLE).putDouble((Double) value);
+		} else if (value instanceof Float) {
+			buffer.put(FLOAT).putFloat((Float) value);
+		} else if (value instanceof Short) {
+			buffer.put(SHORT).putShort((Short) value);
+		} else if (value instanceof Byte) {
+			buffer.put(BYTE).put((Byte) value);
+		} else if (value instanceof UnsignedInteger) {
+			int i = ((UnsignedInteger) value).intValue();
+			if (i == 0) {
+				buffer.put(UINT0);
+			} else if (i > 0 && i <= 0xff) {
+				buffer.put(SMALL_UINT).put((byte) i);
+			} else {
+				buffer.put(UINT).putInt(i);
+			}
+		} else if (value instanceof UnsignedLong) {
+			long l = ((UnsignedLong) value).longValue();
+			if (l == 0) {
+				buffer.put(ULONG0);
+			} else if (l > 0 && l <= 0xff) {
+				buffer.put(SMALL_ULONG).put((byte) l);
+			} else {
+				buffer.put(ULONG).putLong(l);
+			}
+		} else if (value instanceof Symbol) {
+			writeSymbol((Symbol) value, buffer);
+		} else if (value instanceof Binary) {
+			Binary binary = (Binary) value;
+			if (binary.getLength() <= 0xff) {
+				buffer.put(VBIN8).put((byte) binary.getLength());
+			} else {
+				buffer.put(VBIN32).putInt(binary.getLength());
+			}
+			buffer.put(binary.getArray(), binary.getArrayOffset(), binary.getLength());
+		} else if (value instanceof List) {
+			return writeList((List<?>) value, buffer);
+		} else if (value instanceof Map) {
+			return writeMap((Map<?, ?>) value, buffer);
+		} else {
+			// arrays, described types, timestamps, UUIDs, decimals ... are left to the Proton encoder
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Write an AMQP list into the provided buffer
+	 *
+	 * @param list		list to write
+	 * @param buffer	buffer to write into
+	 * @return			if all the list elements were written
+	 */
+	private static boolean writeList(List<?> list, ByteBuffer buffer) {
+
+		if (list.isEmpty()) {
+			buffer.put(LIST0);
+			return true;
+		}
+
+		// the size is known only after the encoding
+		int start = buffer.position();
+		buffer.put(LIST32).putInt(0).putInt(list.size());
+		for (Object element : list) {
+			if (!write(element, buffer))
+				return false;
+		}
+		writeCompound(buffer, start, LIST8, list.size());
+		return true;
+	}
+
+	/**
+	 * Write an AMQP map into the provided buffer
+	 *
+	 * @param map		map to write
+	 * @param buffer	buffer to write into
+	 * @return			if all the map keys and values were written
+	 */
+	private static boolean writeMap(Map<?, ?> map, ByteBuffer buffer) {
+
+		// the size is known only after the encoding, the count is of keys and values
+		int start = buffer.position();
+		buffer.put(MAP32).putInt(0).putInt(map.size() * 2);
+		for (Map.Entry<?, ?> entry : map.entrySet()) {
+			if (!write(entry.getKey(), buffer) || !write(entry.getValue(), buffer))
+				return false;
+		}
+		writeCompound(buffer, start, MAP8, map.size() * 2);
+		return true;
+	}
+
+	/**
+	 * Complete a list or map written with the 32 bits format, filling its size or moving it
+	 * to the 8 bits format (as the Proton encoder does) when it's small enough
+	 *
+	 * @param buffer	buffer the list or map was written into
+	 * @param start		position of the list or map format code
+	 * @param code8		8 bits format code
+	 * @param count		number of elements
+	 */
+	private static void writeCompound(ByteBuffer buffer, int start, byte code8, int count) {
+
+		// format code, size and count
+		int elements = start + 9;
+		int length = buffer.position() - elements;
+
+		if (count <= 0xff && length < 0xff) {
+			// the elements are moved back over the bigger size and count
+			byte[] array = buffer.array();
+			System.arraycopy(array, buffer.arrayOffset() + elements, array, buffer.arrayOffset() + start + 3, length);
+			buffer.put(start, code8).put(start + 1, (byte) (length + 1)).put(start + 2, (byte) count);
+			buffer.position(start + 3 + length);
+		} else {
+			buffer.putInt(start + 1, length + 4);
+		}
+	}
+
+	/**
+	 * Write an AMQP string (UTF-8) into the provided buffer, without any intermediate byte array
+	 *
+	 * @param s			string to write
+	 * @param buffer	buffer to write into
+	 */
+	private static void writeString(String s, ByteBuffer buffer) {
+
+		int length = utf8Length(s);
+		if (length <= 0xff) {
+			buffer.put(STR8).put((byte) length);
+		} else {
+			buffer.put(STR32).putInt(length);
+		}
+
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c < 0x80) {
+				buffer.put((byte) c);
+			} else if (c < 0x800) {
+				buffer.put((byte) (0xc0 | (c >> 6)));
+				buffer.put((byte) (0x80 | (c & 0x3f)));
+			} else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+				int codePoint = Character.toCodePoint(c, s.charAt(++i));
+				buffer.put((byte) (0xf0 | (codePoint >> 18)));
+				buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3f)));
+				buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3f)));
+				buffer.put((byte) (0x80 | (codePoint & 0x3f)));
+			} else if (Character.isSurrogate(c)) {
+				// unpaired surrogate, replaced as String.getBytes does
+				buffer.put((byte) '?');
+			} else {
+				buffer.put((byte) (0xe0 | (c >> 12)));
+				buffer.put((byte) (0x80 | ((c >> 6) & 0x3f)));
+				buffer.put((byte) (0x80 | (c & 0x3f)));
+			}
+		}
+	}
+
+	/**
+	 * Get the UTF-8 encoded length of a string
+	 *
+	 * @param s		string
+	 * @return		UTF-8 encoded length
+	 */
+	private static int utf8Length(String s) {
+
+		int length = 0;
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c < 0x80) {
+				length++;
+			} else if (c < 0x800) {
+				length += 2;
+			} else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+				length += 4;
+				i++;
+			} else if (Character.isSurrogate(c)) {
+				length++;
+			} else {
+				length += 3;
+			}
+		}
+		return length;
+	}
+
+	/**
+	 * Write an AMQP symbol (ASCII) into the provided buffer
+	 *
+	 * @param symbol	symbol to write
+	 * @param buffer	buffer to write into
+	 */
+	private static void writeSymbol(Symbol symbol, ByteBuffer buffer) {
+
+		String s = symbol.toString();
+		if (s.length() <= 0xff) {
+			buffer.put(SYM8).put((byte) s.length());
+		} else {
+			buffer.put(SYM32).putInt(s.length());
+		}
+		for (int i = 0; i < s.length(); i++) {
+			buffer.put((byte) s.charAt(i));
+		}
+	}
+}
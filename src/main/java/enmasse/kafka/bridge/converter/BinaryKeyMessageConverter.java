@@ -0,0 +1,61 @@
+/*
+ * Copyright 2016 Red Hat Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package enmasse.kafka.bridge.converter;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.qpid.proton.Proton;
+import org.apache.qpid.proton.message.Message;
+
+/**
+ * Implementation class for the message conversion between Kafka record and AMQP message
+ * which works as the default one but carries the key as raw bytes, without any String encoding/decoding :
+ * a Binary key annotation is the Kafka record key and vice versa.
+ * It needs the ByteArraySerializer/ByteArrayDeserializer for the Kafka record key.
+ */
+public class BinaryKeyMessageConverter implements MessageConverter<byte[], byte[]> {
+
+	// used for the body
+	private DefaultMessageConverter converter = new DefaultMessageConverter();
+
+	@Override
+	public ProducerRecord<byte[], byte[]> toKafkaRecord(String kafkaTopic, Message message) {
+
+		// get body from AMQP message
+		byte[] value = this.converter.value(message);
+
+		// get partition and key from AMQP message annotations
+		// NOTE : they are not mandatory
+		Integer partition = BridgeAnnotations.partition(message);
+		byte[] key = BridgeAnnotations.binaryKey(message);
+
+		// build the record for the KafkaProducer and then send it
+		return new ProducerRecord<>(kafkaTopic, partition, key, value);
+	}
+
+	@Override
+	public Message toAmqpMessage(String amqpAddress, ConsumerRecord<byte[], byte[]> record) {
+		return this.toAmqpMessage(amqpAddress, record, Proton.message());
+	}
+
+	@Override
+	public Message toAmqpMessage(String amqpAddress, ConsumerRecord<byte[], byte[]> record, Message message) {
+		// the key annotation is a Binary wrapping the record key
+		return this.converter.fill(amqpAddress, record, message);
+	}
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2016 Red Hat Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package enmasse.kafka.bridge.converter;
+
+import enmasse.kafka.bridge.Bridge;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.qpid.proton.amqp.Binary;
+import org.apache.qpid.proton.amqp.Symbol;
+import org.apache.qpid.proton.amqp.messaging.MessageAnnotations;
+import org.apache.qpid.proton.message.Message;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Access to the bridge related message annotations (partition and key) of an AMQP message,
+ * so that the converters read only what they need from the message annotations section.
+ * It also fills the annotations (partition, offset, key and topic) of the AMQP messages built from
+ * Kafka records, reusing the message annotations of a message which is going to be reused
+ */
+public final class BridgeAnnotations {
+
+	public static final Symbol PARTITION = Symbol.valueOf(Bridge.AMQP_PARTITION_ANNOTATION);
+	public static final Symbol KEY = Symbol.valueOf(Bridge.AMQP_KEY_ANNOTATION);
+	public static final Symbol OFFSET = Symbol.valueOf(Bridge.AMQP_OFFSET_ANNOTATION);
+	public static final Symbol TOPIC = Symbol.valueOf(Bridge.AMQP_TOPIC_ANNOTATION);
+
+	// room for the bridge annotations without rehashing (and a few more, i.e. JSON converter)
+	private static final int ANNOTATIONS_CAPACITY = 8;
+
+	private BridgeAnnotations() {
+	}
+
+	/**
+	 * Get the partition from the AMQP message annotations
+	 * NOTE : it's not mandatory
+	 *
+	 * @param message	AMQP message
+	 * @return			partition (null if not specified)
+	 */
+	public static Integer partition(Message message) {
+
+		Object partition = annotation(message, PARTITION);
+
+		if (partition != null && !(partition instanceof Integer))
+			throw new IllegalArgumentException("The partition annotation must be an Integer");
+
+		return (Integer) partition;
+	}
+
+	/**
+	 * Get the key from the AMQP message annotations
+	 * NOTE : it's not mandatory
+	 *
+	 * @param message	AMQP message
+	 * @return			key (null if not specified)
+	 */
+	public static String key(Message message) {
+
+		Object key = annotation(message, KEY);
+
+		if (key != null && !(key instanceof String))
+			throw new IllegalArgumentException("The key annotation must be a String");
+
+		return (String) key;
+	}
+
+	/**
+	 * Get the key as raw bytes from the AMQP message annotations
+	 * NOTE : it's not mandatory
+	 *
+	 * @param message	AMQP message
+	 * @return			key bytes (null if not specified)
+	 */
+	public static byte[] binaryKey(Message message) {
+
+		Object key = annotation(message, KEY);
+
+		if (key == null) {
+			return null;
+		} else if (key instanceof Binary) {
+			Binary binary = (Binary) key;
+			// the backing array could be bigger than the binary (a slice)
+			return (binary.getArrayOffset() == 0 && binary.getLength() == binary.getArray().length) ?
+					binary.getArray() :
+					Arrays.copyOfRange(binary.getArray(), binary.getArrayOffset(), binary.getArrayOffset() + binary.getLength());
+		} else if (key instanceof String) {
+			return ((String) key).getBytes(StandardCharsets.UTF_8);
+		}
+
+		throw new IllegalArgumentException("The key annotation must be a Binary or a String");
+	}
+
+	/**
+	 * Clear an AMQP message in order to reuse it for a new record
+	 *
+	 * @param message	AMQP message to clear
+	 * @return			the (empty) message annotations of the message if they can be reused, null otherwise
+	 */
+	public static MessageAnnotations clear(Message message) {
+
+		MessageAnnotations messageAnnotations = message.getMessageAnnotations();
+
+		// Message.clear() resets only the body
+		message.setHeader(null);
+		message.setDeliveryAnnotations(null);
+		message.setMessageAnnotations(null);
+		message.setProperties(null);
+		message.setApplicationProperties(null);
+		message.setBody(null);
+		message.setFooter(null);
+
+		// only the (mutable) maps built by the bridge are reused
+		if (messageAnnotations != null && messageAnnotations.getValue() instanceof HashMap) {
+			messageAnnotations.getValue().clear();
+			return messageAnnotations;
+		}
+		return null;
+	}
+
+	/**
+	 * Set the message annotations about partition, offset, key (if not null) and topic of the Kafka record
+	 *
+	 * @param message				AMQP message to annotate
+	 * @param messageAnnotations	(empty) message annotations to reuse, null for new ones
+	 * @param record				Kafka record
+	 * @return						message annotations map, for adding other annotations
+	 */
+	public static Map<Symbol, Object> annotate(Message message, MessageAnnotations messageAnnotations, ConsumerRecord<?, ?> record) {
+
+		if (messageAnnotations == null)
+			messageAnnotations = new MessageAnnotations(new HashMap<>(ANNOTATIONS_CAPACITY));
+
+		Map<Symbol, Object> map = messageAnnotations.getValue();
+		map.put(PARTITION, record.partition());
+		map.put(OFFSET, record.offset());
+		if (record.key() instanceof byte[])
+			// raw bytes key, without any decoding
+			map.put(KEY, new Binary((byte[]) record.key()));
+		else if (record.key() != null)
+			map.put(KEY, record.key());
+		map.put(TOPIC, record.topic());
+
+		message.setMessageAnnotations(messageAnnotations);
+		return map;
+	}
+
+	/**
+	 * Get a message annotation value
+	 *
+	 * @param message	AMQP message
+	 * @param name		annotation name
+	 * @return			annotation value (null if not specified)
+	 */
+	private static Object annotation(Message message, Symbol name) {
+
+		MessageAnnotations messageAnnotations = message.getMessageAnnotations();
+		if (messageAnnotations == null)
+			return null;
+
+		Map<Symbol, Object> map = messageAnnotations.getValue();
+		return (map == null) ? null : map.get(name);
+	}
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2016 Red Hat Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package enmasse.kafka.bridge.converter;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.qpid.proton.Proton;
+import org.apache.qpid.proton.amqp.Binary;
+import org.apache.qpid.proton.amqp.messaging.Data;
+import org.apache.qpid.proton.amqp.messaging.MessageAnnotations;
+import org.apache.qpid.proton.message.Message;
+
+import java.nio.ByteBuffer;
+/**
+ * ByteBuffer implementation class for the message conversion
+ * between Kafka record and AMQP message.
+ * A binary (Data) body is passed as a ByteBuffer wrapping the Proton bytes and vice versa, so the
+ * ByteBufferSerializer copies the payload only when it's a slice of a bigger buffer (i.e. the transfer frame).
+ * It needs the ByteBufferSerializer/ByteBufferDeserializer for the Kafka record value.
+ */
+public class ByteBufferMessageConverter implements MessageConverter<String, ByteBuffer> {
+
+	// used for the not binary bodies
+	private DefaultMessageConverter converter = new DefaultMessageConverter();
+	
+	@Override
+	public ProducerRecord<String, ByteBuffer> toKafkaRecord(String kafkaTopic, Message message) {
+		
+		// get partition and key from AMQP message annotations
+		// NOTE : they are not mandatory
+		Integer partition = BridgeAnnotations.partition(message);
+		String key = BridgeAnnotations.key(message);
+		
+		ByteBuffer value = null;
+		if (message.getBody() instanceof Data) {
+			// the Data payload slice, as is : sliced so that the buffer starts at the payload,
+			// because the ByteBufferSerializer rewinds it before getting the bytes
+			Binary binary = ((Data) message.getBody()).getValue();
+			value = ByteBuffer.wrap(binary.getArray(), binary.getArrayOffset(), binary.getLength()).slice();
+		} else {
+			byte[] bytes = this.converter.value(message);
+			if (bytes != null)
+				value = ByteBuffer.wrap(bytes);
+		}
+		
+		return new ProducerRecord<>(kafkaTopic, partition, key, value);
+	}
+
+	@Override
+	public Message toAmqpMessage(String amqpAddress, ConsumerRecord<String, ByteBuffer> record) {
+		return this.toAmqpMessage(amqpAddress, record, Proton.message());
+	}
+
+	@Override
+	public Message toAmqpMessage(String amqpAddress, ConsumerRecord<String, ByteBuffer> record, Message message) {
+		
+		MessageAnnotations messageAnnotations = BridgeAnnotations.clear(message);
+		message.setAddress(amqpAddress);
+		
+		// put message annotations about partition, offset and key (if not null)
+		BridgeAnnotations.annotate(message, messageAnnotations, record);
+		
+		ByteBuffer value = record.value();
+		if (value != null) {
+			
+			Binary binary;
+			if (value.hasArray()) {
+				// the fetched bytes, as is
+				binary = new Binary(value.array(), value.arrayOffset() + value.position(), value.remaining());
+			} else {
+				byte[] bytes = new byte[value.remaining()];
+				value.duplicate().get(bytes);
+				binary = new Binary(bytes);
+			}
+			message.setBody(new Data(binary));
+		}
+		
+		return message;
+	}
+}
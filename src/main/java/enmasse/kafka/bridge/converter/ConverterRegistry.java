@@ -0,0 +1,285 @@
+/*
+ * Copyright 2016 Red Hat Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package enmasse.kafka.bridge.converter;
+
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.Serializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Registry of the message converters, initialized once and shared by all the endpoints.
+ * The converters are stateless so that the same instance can be used by all the links (and threads).
+ * A converter is selected for an address through rules like [address pattern]=[converter class]
+ * (comma separated, the first matching one wins) where the pattern supports the * wildcard;
+ * the default converter is used when no rule matches.
+ * All the converters have to use the same key and value types, because the Kafka serializers
+ * and deserializers are configured once for all the addresses
+ */
+public class ConverterRegistry {
+
+	private static final Logger LOG = LoggerFactory.getLogger(ConverterRegistry.class);
+
+	private static final String RULES_SEPARATOR = ",";
+	private static final String RULE_SEPARATOR = "=";
+	private static final String WILDCARD = "*";
+
+	private final MessageConverter<?, ?> defaultConverter;
+	private final List<Rule> rules;
+	private final Collection<MessageConverter<?, ?>> converters;
+
+	/**
+	 * Constructor
+	 *
+	 * @param defaultConverter	class name of the converter used when no rule matches
+	 * @param rules				comma separated [address pattern]=[converter class] rules (it can be null)
+	 * @throws IllegalArgumentException	if a converter can't be instantiated, a rule isn't valid or
+	 * 									the converters don't use the same key and value types
+	 */
+	public ConverterRegistry(String defaultConverter, String rules) {
+
+		// one instance for each converter class
+		Map<String, MessageConverter<?, ?>> converters = new HashMap<>();
+
+		this.defaultConverter = this.converter(converters, defaultConverter);
+		this.rules = new ArrayList<>();
+
+		if (rules != null && !rules.trim().isEmpty()) {
+
+			for (String rule : rules.split(RULES_SEPARATOR)) {
+
+				int index = rule.indexOf(RULE_SEPARATOR);
+				if (index <= 0)
+					throw new IllegalArgumentException("Message converter rule [" + rule.trim() + "] isn't [address pattern]=[converter class]");
+
+				String pattern = rule.substring(0, index).trim();
+				String className = rule.substring(index + RULE_SEPARATOR.length()).trim();
+				this.rules.add(new Rule(pattern, this.converter(converters, className)));
+			}
+		}
+
+		this.converters = converters.values();
+
+		// mixed key (or value) types would fail on the single serializer/deserializer
+		for (MessageConverter<?, ?> converter : this.converters) {
+			if (!this.sameType(converter, this.defaultConverter, 0) || !this.sameType(converter, this.defaultConverter, 1))
+				throw new IllegalArgumentException("Message converters " + converter.getClass().getName() + " and " +
+						this.defaultConverter.getClass().getName() + " don't use the same key and value types");
+		}
+
+		LOG.info("Message converter registry with default {} and {} rules", defaultConverter, this.rules.size());
+	}
+
+	/**
+	 * Get the converter for the provided address
+	 *
+	 * @param address	AMQP address (it can be null)
+	 * @return			converter of the first rule matching the address, the default one otherwise
+	 */
+	@SuppressWarnings("unchecked")
+	public <K, V> MessageConverter<K, V> converter(String address) {
+
+		if (address != null) {
+			for (Rule rule : this.rules) {
+				if (rule.pattern.matcher(address).matches())
+					return (MessageConverter<K, V>) rule.converter;
+			}
+		}
+		return (MessageConverter<K, V>) this.defaultConverter;
+	}
+
+	/**
+	 * Check that the Kafka serializers and deserializers handle the key and value types of the converters
+	 *
+	 * @param keySerializer		key serializer class name
+	 * @param valueSerializer	value serializer class name
+	 * @param keyDeserializer	key deserializer class name
+	 * @param valueDeserializer	value deserializer class name
+	 * @throws IllegalArgumentException	if a serializer/deserializer can't be loaded or doesn't handle the converters types
+	 */
+	public void checkSerializers(String keySerializer, String valueSerializer, String keyDeserializer, String valueDeserializer) {
+
+		Class<?> keyType = typeArgument(this.defaultConverter.getClass(), MessageConverter.class, 0);
+		Class<?> valueType = typeArgument(this.defaultConverter.getClass(), MessageConverter.class, 1);
+
+		// the converter type has to be serialized and the deserialized type has to be the converter one
+		this.checkType(keySerializer, Serializer.class, keyType, true);
+		this.checkType(valueSerializer, Serializer.class, valueType, true);
+		this.checkType(keyDeserializer, Deserializer.class, keyType, false);
+		this.checkType(valueDeserializer, Deserializer.class, valueType, false);
+	}
+
+	/**
+	 * Check the type handled by a Kafka serializer/deserializer against a converter type
+	 *
+	 * @param className		serializer/deserializer class name
+	 * @param generic		Serializer or Deserializer interface
+	 * @param type			converter key or value type (null if unknown)
+	 * @param serializer	if the converter type is serialized (otherwise it's deserialized)
+	 */
+	private void checkType(String className, Class<?> generic, Class<?> type, boolean serializer) {
+
+		Class<?> clazz;
+		try {
+			clazz = Class.forName(className);
+		} catch (ClassNotFoundException e) {
+			throw new IllegalArgumentException("Kafka serializer/deserializer " + className + " can't be loaded", e);
+		}
+
+		Class<?> handled = typeArgument(clazz, generic, 0);
+		if (type == null || handled == null)
+			return;
+
+		if (serializer ? !handled.isAssignableFrom(type) : !type.isAssignableFrom(handled))
+			throw new IllegalArgumentException("Kafka serializer/deserializer " + className + " doesn't handle the " +
+					type.getName() + " type of the message converters");
+	}
+
+	/**
+	 * Check if two converters use the same key (or value) type
+	 *
+	 * @param first		first converter
+	 * @param second	second converter
+	 * @param index		0 for the key type, 1 for the value type
+	 * @return
+	 */
+	private boolean sameType(MessageConverter<?, ?> first, MessageConverter<?, ?> second, int index) {
+
+		Class<?> firstType = typeArgument(first.getClass(), MessageConverter.class, index);
+		Class<?> secondType = typeArgument(second.getClass(), MessageConverter.class, index);
+		// not known types (i.e. still generic) can't be checked
+		return firstType == null || secondType == null || firstType.equals(secondType);
+	}
+
+	/**
+	 * Resolve a type argument of a generic interface (or class) implemented by a class
+	 *
+	 * @param clazz		class implementing the generic type
+	 * @param generic	generic interface (or class)
+	 * @param index		index of the type argument
+	 * @return			type argument class, null if it can't be resolved
+	 */
+	private static Class<?> typeArgument(Class<?> clazz, Class<?> generic, int index) {
+		return typeArgument(clazz, generic, index, new HashMap<>());
+	}
+
+	private static Class<?> typeArgument(Class<?> clazz, Class<?> generic, int index, Map<TypeVariable<?>, Type> bindings) {
+
+		List<Type> supertypes = new ArrayList<>();
+		if (clazz.getGenericSuperclass() != null)
+			supertypes.add(clazz.getGenericSuperclass());
+		for (Type type : clazz.getGenericInterfaces())
+			supertypes.add(type);
+
+		for (Type supertype : supertypes) {
+
+			Class<?> raw;
+			Map<TypeVariable<?>, Type> superBindings = new HashMap<>();
+			if (supertype instanceof ParameterizedType) {
+				ParameterizedType parameterized = (ParameterizedType) supertype;
+				raw = (Class<?>) parameterized.getRawType();
+				TypeVariable<?>[] variables = raw.getTypeParameters();
+				Type[] arguments = parameterized.getActualTypeArguments();
+				for (int i = 0; i < variables.length; i++) {
+					Type argument = arguments[i];
+					superBindings.put(variables[i], bindings.containsKey(argument) ? bindings.get(argument) : argument);
+				}
+			} else {
+				raw = (Class<?>) supertype;
+			}
+
+			if (raw == generic) {
+				Type argument = superBindings.get(raw.getTypeParameters()[index]);
+				if (argument instanceof Class)
+					return (Class<?>) argument;
+				if (argument instanceof ParameterizedType)
+					return (Class<?>) ((ParameterizedType) argument).getRawType();
+				return null;
+			}
+
+			if (generic.isAssignableFrom(raw)) {
+				Class<?> resolved = typeArgument(raw, generic, index, superBindings);
+				if (resolved != null)
+					return resolved;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Get the converter instance for the provided class name, creating it the first time
+	 *
+	 * @param converters	converters already created
+	 * @param className		converter class name
+	 * @return				converter instance
+	 */
+	private MessageConverter<?, ?> converter(Map<String, MessageConverter<?, ?>> converters, String className) {
+
+		MessageConverter<?, ?> converter = converters.get(className);
+		if (converter == null) {
+
+			try {
+				converter = (MessageConverter<?, ?>) Class.forName(className).newInstance();
+			} catch (Exception e) {
+				throw new IllegalArgumentException("Message converter " + className + " can't be instantiated", e);
+			}
+			converters.put(className, converter);
+		}
+		return converter;
+	}
+
+	/**
+	 * Rule which selects a converter for the addresses matching a pattern
+	 */
+	private static class Rule {
+
+		private final Pattern pattern;
+		private final MessageConverter<?, ?> converter;
+
+		/**
+		 * Constructor
+		 *
+		 * @param pattern		address pattern (with * wildcards)
+		 * @param converter		converter for the matching addresses
+		 */
+		Rule(String pattern, MessageConverter<?, ?> converter) {
+
+			StringBuilder regex = new StringBuilder();
+			int start = 0;
+			int index;
+			while ((index = pattern.indexOf(WILDCARD, start)) != -1) {
+				regex.append(Pattern.quote(pattern.substring(start, index))).append(".*");
+				start = index + WILDCARD.length();
+			}
+			regex.append(Pattern.quote(pattern.substring(start)));
+
+			this.pattern = Pattern.compile(regex.toString());
+			this.converter = converter;
+		}
+	}
+}
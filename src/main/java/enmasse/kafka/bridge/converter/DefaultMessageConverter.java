@@ -16,20 +16,21 @@
 
 package enmasse.kafka.bridge.converter;
 
-import enmasse.kafka.bridge.Bridge;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.internals.RecordHeaders;
 import org.apache.qpid.proton.Proton;
 import org.apache.qpid.proton.amqp.Binary;
-import org.apache.qpid.proton.amqp.Symbol;
 import org.apache.qpid.proton.amqp.messaging.AmqpValue;
 import org.apache.qpid.proton.amqp.messaging.Data;
 import org.apache.qpid.proton.amqp.messaging.MessageAnnotations;
 import org.apache.qpid.proton.amqp.messaging.Section;
 import org.apache.qpid.proton.message.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -39,17 +40,73 @@ import java.util.Map;
  */
 public class DefaultMessageConverter implements MessageConverter<String, byte[]> {
 
+	private static final Logger LOG = LoggerFactory.getLogger(DefaultMessageConverter.class);
+
+	// Kafka record header marking a value encoded as an AMQP value section
+	public static final String BODY_HEADER = "amqp.body";
+	private static final byte[] AMQP_VALUE_BODY = "amqp-value".getBytes();
+
+	// AMQP value bodies (not String) encoded with the AMQP type system instead of as strings
+	private final boolean typedValues;
+
+	/**
+	 * Constructor
+	 */
+	public DefaultMessageConverter() {
+		this(false);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param typedValues	if AMQP value bodies (not String) have to be encoded with the AMQP type system
+	 */
+	protected DefaultMessageConverter(boolean typedValues) {
+		this.typedValues = typedValues;
+	}
+
 	@Override
 	public ProducerRecord<String, byte[]> toKafkaRecord(String kafkaTopic, Message message) {
 		
-		Object partition = null, key = null;
-		byte[] value = null;
+		// get body from AMQP message
+		byte[] value = this.value(message);
+		
+		// get partition and key from AMQP message annotations
+		// NOTE : they are not mandatory
+		Integer partition = BridgeAnnotations.partition(message);
+		String key = BridgeAnnotations.key(message);
 		
-		// get topic and body from AMQP message
-		String topic = (message.getAddress() == null) ?
-				kafkaTopic :
-				message.getAddress().replace('/', '.');
+		// the typed values are marked, so that they are never guessed from the bytes
+		RecordHeaders headers = null;
+		if (this.isTypedValue(message.getBody())) {
+			headers = new RecordHeaders();
+			headers.add(BODY_HEADER, AMQP_VALUE_BODY);
+		}
+		
+		// build the record for the KafkaProducer and then send it
+		return new ProducerRecord<>(kafkaTopic, partition, null, key, value, headers);
+	}
+
+	@Override
+	public Message toAmqpMessage(String amqpAddress, ConsumerRecord<String, byte[]> record) {
+		return this.toAmqpMessage(amqpAddress, record, Proton.message());
+	}
 
+	@Override
+	public Message toAmqpMessage(String amqpAddress, ConsumerRecord<String, byte[]> record, Message message) {
+		return this.fill(amqpAddress, record, message);
+	}
+
+	/**
+	 * Get the Kafka record value from the AMQP message body
+	 *
+	 * @param message	AMQP message
+	 * @return			Kafka record value
+	 */
+	byte[] value(Message message) {
+		
+		byte[] value = null;
+		
 		Section body = message.getBody();
 		
 		// check body null
@@ -64,6 +121,9 @@ public class DefaultMessageConverter implements MessageConverter<String, byte[]>
 				if (amqpValue instanceof String) {
 					String content = (String)((AmqpValue) body).getValue();
 					value = content.getBytes();
+				// encoded as AMQP value section, the type is preserved
+				} else if (this.isTypedValue(body)) {
+					value = AmqpSectionCodec.encodeAmqpValue(amqpValue);
 				// encoded as a List
 				} else if (amqpValue instanceof List) {
 					List<?> list = (List<?>)((AmqpValue) body).getValue();
@@ -81,48 +141,56 @@ public class DefaultMessageConverter implements MessageConverter<String, byte[]>
 			// section is Data (binary)
 			} else if (body instanceof Data) {
 				Binary binary = (Binary)((Data)body).getValue();
-				value = binary.getArray();
+				// the backing array could be bigger than the binary (a slice)
+				value = (binary.getArrayOffset() == 0 && binary.getLength() == binary.getArray().length) ?
+						binary.getArray() :
+						Arrays.copyOfRange(binary.getArray(), binary.getArrayOffset(), binary.getArrayOffset() + binary.getLength());
 			}
 		}
 		
-		// get partition and key from AMQP message annotations
-		// NOTE : they are not mandatory
-		MessageAnnotations messageAnnotations = message.getMessageAnnotations();
-		
-		if (messageAnnotations != null) {
-			
-			partition = messageAnnotations.getValue().get(Symbol.getSymbol(Bridge.AMQP_PARTITION_ANNOTATION));
-			key = messageAnnotations.getValue().get(Symbol.getSymbol(Bridge.AMQP_KEY_ANNOTATION));
-			
-			if (partition != null && !(partition instanceof Integer))
-				throw new IllegalArgumentException("The partition annotation must be an Integer");
-			
-			if (key != null && !(key instanceof String))
-				throw new IllegalArgumentException("The key annotation must be a String");
-		}
-		
-		// build the record for the KafkaProducer and then send it
-		return new ProducerRecord<>(topic, (Integer)partition, (String)key, value);
+		return value;
 	}
 
-	@Override
-	public Message toAmqpMessage(String amqpAddress, ConsumerRecord<String, byte[]> record) {
+	/**
+	 * Check if an AMQP message body is encoded as an AMQP value section
+	 *
+	 * @param body	AMQP message body
+	 * @return
+	 */
+	private boolean isTypedValue(Section body) {
+		return this.typedValues && (body instanceof AmqpValue) && !(((AmqpValue) body).getValue() instanceof String);
+	}
+
+	/**
+	 * Fill the AMQP message from a Kafka record, whatever the key type is
+	 *
+	 * @param amqpAddress	AMQP address for sending message
+	 * @param record		Kafka record to convert
+	 * @param message		AMQP message to fill
+	 * @return				AMQP message
+	 */
+	Message fill(String amqpAddress, ConsumerRecord<?, byte[]> record, Message message) {
 		
-		Message message = Proton.message();
+		MessageAnnotations messageAnnotations = BridgeAnnotations.clear(message);
 		message.setAddress(amqpAddress);
 		
 		// put message annotations about partition, offset and key (if not null)
-		Map<Symbol, Object> map = new HashMap<>();
-		map.put(Symbol.valueOf(Bridge.AMQP_PARTITION_ANNOTATION), record.partition());
-		map.put(Symbol.valueOf(Bridge.AMQP_OFFSET_ANNOTATION), record.offset());
-		if (record.key() != null)
-			map.put(Symbol.valueOf(Bridge.AMQP_KEY_ANNOTATION), record.key());
-		map.put(Symbol.valueOf(Bridge.AMQP_TOPIC_ANNOTATION), record.topic());
+		BridgeAnnotations.annotate(message, messageAnnotations, record);
 		
-		MessageAnnotations messageAnnotations = new MessageAnnotations(map);
-		message.setMessageAnnotations(messageAnnotations);
+		Section body = null;
+		if (this.typedValues && record.value() != null) {
+			Header header = record.headers().lastHeader(BODY_HEADER);
+			if (header != null && Arrays.equals(AMQP_VALUE_BODY, header.value())) {
+				try {
+					body = AmqpSectionCodec.decode(record.value(), 0, record.value().length);
+				} catch (RuntimeException e) {
+					LOG.warn("Error decoding the AMQP value section at offset {} on topic {}, delivered as binary",
+							record.offset(), record.topic(), e);
+				}
+			}
+		}
 		
-		message.setBody(new Data(new Binary(record.value())));
+		message.setBody(body != null ? body : new Data(new Binary(record.value())));
 		
 		return message;
 	}
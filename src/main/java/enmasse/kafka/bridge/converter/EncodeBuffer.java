@@ -0,0 +1,84 @@
+/*
+ * Copyright 2016 Red Hat Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package enmasse.kafka.bridge.converter;
+
+import org.apache.qpid.proton.message.Message;
+
+import java.nio.BufferOverflowException;
+import java.util.Arrays;
+import java.util.function.ToIntFunction;
+
+/**
+ * Thread local buffer for encoding AMQP messages (or sections), reused across messages
+ * and grown on demand for messages bigger than the current buffer
+ */
+public final class EncodeBuffer {
+
+	private static final int INITIAL_SIZE = 4096;
+	// buffers grown over this size aren't kept after the encoding
+	private static final int MAX_RETAINED_SIZE = 1024 * 1024;
+
+	private static final ThreadLocal<byte[]> BUFFER = ThreadLocal.withInitial(() -> new byte[INITIAL_SIZE]);
+
+	private EncodeBuffer() {
+	}
+
+	/**
+	 * Encode an AMQP message
+	 *
+	 * @param message	AMQP message to encode
+	 * @return			encoded message (exactly sized)
+	 */
+	public static byte[] encode(Message message) {
+		return encode(buffer -> message.encode(buffer, 0, buffer.length));
+	}
+
+	/**
+	 * Encode through the provided encoding function
+	 *
+	 * @param encoding	function encoding into the provided buffer and returning the encoded bytes
+	 * 					(it has to throw BufferOverflowException if the buffer is too small)
+	 * @return			encoded bytes (exactly sized)
+	 */
+	public static byte[] encode(ToIntFunction<byte[]> encoding) {
+
+		byte[] buffer = BUFFER.get();
+
+		while (true) {
+			try {
+
+				int encoded = encoding.applyAsInt(buffer);
+				byte[] value = Arrays.copyOf(buffer, encoded);
+
+				// don't keep huge buffers for the next (usually small) messages
+				if (buffer.length > MAX_RETAINED_SIZE)
+					BUFFER.set(new byte[INITIAL_SIZE]);
+
+				return value;
+
+			} catch (BufferOverflowException e) {
+
+				if (buffer.length >= Integer.MAX_VALUE / 2)
+					throw e;
+
+				buffer = new byte[buffer.length * 2];
+				BUFFER.set(buffer);
+			}
+		}
+	}
+}
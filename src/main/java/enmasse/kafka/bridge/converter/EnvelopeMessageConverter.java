@@ -0,0 +1,206 @@
+/*
+ * Copyright 2016 Red Hat Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package enmasse.kafka.bridge.converter;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.qpid.proton.Proton;
+import org.apache.qpid.proton.amqp.Binary;
+import org.apache.qpid.proton.amqp.messaging.ApplicationProperties;
+import org.apache.qpid.proton.amqp.messaging.Data;
+import org.apache.qpid.proton.amqp.messaging.MessageAnnotations;
+import org.apache.qpid.proton.amqp.messaging.Properties;
+import org.apache.qpid.proton.amqp.messaging.Section;
+import org.apache.qpid.proton.message.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Envelope implementation class for the message conversion
+ * between Kafka record and AMQP message.
+ * The properties, application properties, message annotations and body of the AMQP message
+ * are put in a compact binary envelope as Kafka record value and vice versa :
+ *
+ * [magic][version] followed by [section type][section length][section bytes] for each section
+ *
+ * where the sections are encoded with the AMQP type system but a binary (Data) body, which is
+ * put as is. On the sink side such a body isn't copied (it's a slice of the record value) and
+ * sections of unknown type are skipped without decoding them.
+ */
+public class EnvelopeMessageConverter implements MessageConverter<String, byte[]> {
+
+	private static final Logger LOG = LoggerFactory.getLogger(EnvelopeMessageConverter.class);
+
+	public static final byte MAGIC = (byte) 0xAE;
+	public static final byte VERSION = 1;
+
+	// section types
+	public static final byte PROPERTIES = 1;
+	public static final byte APPLICATION_PROPERTIES = 2;
+	public static final byte MESSAGE_ANNOTATIONS = 3;
+	public static final byte BODY_DATA = 4;
+	public static final byte BODY_AMQP = 5;
+
+	// magic and version
+	private static final int ENVELOPE_HEADER_SIZE = 2;
+	// section type and length
+	private static final int SECTION_HEADER_SIZE = 5;
+
+	@Override
+	public ProducerRecord<String, byte[]> toKafkaRecord(String kafkaTopic, Message message) {
+
+		// the envelope is encoded directly into the reused buffer
+		byte[] value = EncodeBuffer.encode(buffer -> {
+
+			ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+			byteBuffer.put(MAGIC).put(VERSION);
+
+			this.writeSection(byteBuffer, PROPERTIES, message.getProperties());
+			this.writeSection(byteBuffer, APPLICATION_PROPERTIES, message.getApplicationProperties());
+			this.writeSection(byteBuffer, MESSAGE_ANNOTATIONS, message.getMessageAnnotations());
+
+			Section body = message.getBody();
+			if (body instanceof Data) {
+				Binary binary = ((Data) body).getValue();
+				byteBuffer.put(BODY_DATA).putInt(binary.getLength())
+						.put(binary.getArray(), binary.getArrayOffset(), binary.getLength());
+			} else {
+				this.writeSection(byteBuffer, BODY_AMQP, body);
+			}
+
+			return byteBuffer.position();
+		});
+
+		// get partition and key from AMQP message annotations
+		// NOTE : they are not mandatory
+		Integer partition = BridgeAnnotations.partition(message);
+		String key = BridgeAnnotations.key(message);
+
+		// build the record for the KafkaProducer and then send it
+		return new ProducerRecord<>(kafkaTopic, partition, key, value);
+	}
+
+	/**
+	 * Write an AMQP section, encoded with the AMQP type system, with its type and length (if any)
+	 *
+	 * @param buffer	buffer to write into
+	 * @param type		section type
+	 * @param section	AMQP section
+	 */
+	private void writeSection(ByteBuffer buffer, byte type, Section section) {
+
+		if (section == null)
+			return;
+
+		buffer.put(type);
+		// the length is known only after the encoding
+		int lengthPosition = buffer.position();
+		buffer.position(lengthPosition + 4);
+		AmqpSectionCodec.encode(section, buffer);
+		buffer.putInt(lengthPosition, buffer.position() - lengthPosition - 4);
+	}
+
+	@Override
+	public Message toAmqpMessage(String amqpAddress, ConsumerRecord<String, byte[]> record) {
+		return this.toAmqpMessage(amqpAddress, record, Proton.message());
+	}
+
+	@Override
+	public Message toAmqpMessage(String amqpAddress, ConsumerRecord<String, byte[]> record, Message message) {
+
+		MessageAnnotations messageAnnotations = BridgeAnnotations.clear(message);
+		message.setAddress(amqpAddress);
+
+		byte[] value = record.value();
+		if (value == null || value.length < ENVELOPE_HEADER_SIZE || value[0] != MAGIC || value[1] != VERSION) {
+			// the record is still delivered, with its value as body
+			LOG.warn("The record value at offset {} on topic {} isn't a supported AMQP message envelope, delivered as binary",
+					record.offset(), record.topic());
+			if (value != null)
+				message.setBody(new Data(new Binary(value)));
+			BridgeAnnotations.annotate(message, messageAnnotations, record);
+			return message;
+		}
+
+		int position = ENVELOPE_HEADER_SIZE;
+		while (position < value.length) {
+
+			if (value.length - position < SECTION_HEADER_SIZE) {
+				LOG.warn("Truncated AMQP message envelope at offset {} on topic {}", record.offset(), record.topic());
+				break;
+			}
+
+			byte type = value[position];
+			int length = ((value[position + 1] & 0xff) << 24) | ((value[position + 2] & 0xff) << 16) |
+					((value[position + 3] & 0xff) << 8) | (value[position + 4] & 0xff);
+			position += SECTION_HEADER_SIZE;
+
+			if (length < 0 || length > value.length - position) {
+				LOG.warn("Truncated AMQP message envelope at offset {} on topic {}", record.offset(), record.topic());
+				break;
+			}
+
+			// a section which can't be decoded is skipped, the record is still delivered
+			try {
+				switch (type) {
+
+					case PROPERTIES:
+						Properties properties = (Properties) AmqpSectionCodec.decode(value, position, length);
+						// the original address wins, as for the JSON converter
+						if (properties.getTo() == null)
+							properties.setTo(amqpAddress);
+						message.setProperties(properties);
+						break;
+
+					case APPLICATION_PROPERTIES:
+						message.setApplicationProperties((ApplicationProperties) AmqpSectionCodec.decode(value, position, length));
+						break;
+
+					case MESSAGE_ANNOTATIONS:
+						messageAnnotations = (MessageAnnotations) AmqpSectionCodec.decode(value, position, length);
+						break;
+
+					case BODY_DATA:
+						// the body bytes, as is
+						message.setBody(new Data(new Binary(value, position, length)));
+						break;
+
+					case BODY_AMQP:
+						message.setBody(AmqpSectionCodec.decode(value, position, length));
+						break;
+
+					default:
+						// section added by a newer version, not needed
+						break;
+				}
+			} catch (RuntimeException e) {
+				LOG.warn("Error decoding the AMQP section of type {} at offset {} on topic {}, skipped",
+						type, record.offset(), record.topic(), e);
+			}
+
+			position += length;
+		}
+
+		// put message annotations about partition, offset and key (if not null)
+		BridgeAnnotations.annotate(message, messageAnnotations, record);
+
+		return message;
+	}
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2016 Red Hat Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package enmasse.kafka.bridge.converter;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.qpid.proton.Proton;
+import org.apache.qpid.proton.amqp.Binary;
+import org.apache.qpid.proton.amqp.Symbol;
+import org.apache.qpid.proton.amqp.messaging.ApplicationProperties;
+import org.apache.qpid.proton.amqp.messaging.Data;
+import org.apache.qpid.proton.amqp.messaging.MessageAnnotations;
+import org.apache.qpid.proton.amqp.messaging.Properties;
+import org.apache.qpid.proton.message.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Headers implementation class for the message conversion
+ * between Kafka record and AMQP message.
+ * The properties, application properties and message annotations of the AMQP message are mapped
+ * to Kafka record headers (encoded with the AMQP type system) while the body is put as Kafka record value
+ * as for the default converter, and vice versa. So Kafka consumers can get the body without any envelope
+ * and the AMQP metadata can be rebuilt without touching the Kafka record value.
+ */
+public class HeadersMessageConverter implements MessageConverter<String, byte[]> {
+
+	private static final Logger LOG = LoggerFactory.getLogger(HeadersMessageConverter.class);
+
+	// Kafka record headers for the AMQP message sections
+	public static final String PROPERTIES_HEADER = "amqp.properties";
+	public static final String APPLICATION_PROPERTY_HEADER_PREFIX = "amqp.ap.";
+	public static final String MESSAGE_ANNOTATION_HEADER_PREFIX = "amqp.ma.";
+
+	// used for topic, partition, key and body
+	private DefaultMessageConverter converter = new DefaultMessageConverter();
+
+	@Override
+	public ProducerRecord<String, byte[]> toKafkaRecord(String kafkaTopic, Message message) {
+
+		ProducerRecord<String, byte[]> record = this.converter.toKafkaRecord(kafkaTopic, message);
+
+		RecordHeaders headers = new RecordHeaders();
+
+		if (message.getProperties() != null)
+			headers.add(PROPERTIES_HEADER, AmqpSectionCodec.encode(message.getProperties()));
+
+		ApplicationProperties applicationProperties = message.getApplicationProperties();
+		if (applicationProperties != null && applicationProperties.getValue() != null) {
+			for (Map.Entry<?, ?> entry : ((Map<?, ?>) applicationProperties.getValue()).entrySet()) {
+				headers.add(APPLICATION_PROPERTY_HEADER_PREFIX + entry.getKey(), AmqpSectionCodec.encodeValue(entry.getValue()));
+			}
+		}
+
+		MessageAnnotations messageAnnotations = message.getMessageAnnotations();
+		if (messageAnnotations != null && messageAnnotations.getValue() != null) {
+			for (Map.Entry<Symbol, Object> entry : messageAnnotations.getValue().entrySet()) {
+				// partition and key are already in the Kafka record
+				if (!entry.getKey().equals(BridgeAnnotations.PARTITION) && !entry.getKey().equals(BridgeAnnotations.KEY))
+					headers.add(MESSAGE_ANNOTATION_HEADER_PREFIX + entry.getKey(), AmqpSectionCodec.encodeValue(entry.getValue()));
+			}
+		}
+
+		return new ProducerRecord<>(record.topic(), record.partition(), record.key(), record.value(), headers);
+	}
+
+	@Override
+	public Message toAmqpMessage(String amqpAddress, ConsumerRecord<String, byte[]> record) {
+		return this.toAmqpMessage(amqpAddress, record, Proton.message());
+	}
+
+	@Override
+	public Message toAmqpMessage(String amqpAddress, ConsumerRecord<String, byte[]> record, Message message) {
+
+		MessageAnnotations messageAnnotations = BridgeAnnotations.clear(message);
+		message.setAddress(amqpAddress);
+
+		// put message annotations about partition, offset and key (if not null)
+		Map<Symbol, Object> messageAnnotationsMap = BridgeAnnotations.annotate(message, messageAnnotations, record);
+
+		Map<String, Object> applicationPropertiesMap = null;
+
+		for (Header header : record.headers()) {
+
+			String name = header.key();
+			if (header.value() == null)
+				continue;
+
+			// a header which can't be decoded is skipped, the record is still delivered
+			try {
+				if (name.equals(PROPERTIES_HEADER)) {
+					Properties properties = (Properties) AmqpSectionCodec.decode(header.value(), 0, header.value().length);
+					// the original address wins, as for the JSON converter
+					if (properties.getTo() == null)
+						properties.setTo(amqpAddress);
+					message.setProperties(properties);
+				} else if (name.startsWith(APPLICATION_PROPERTY_HEADER_PREFIX)) {
+					Object value = AmqpSectionCodec.decodeValue(header.value());
+					if (applicationPropertiesMap == null)
+						applicationPropertiesMap = new HashMap<>();
+					applicationPropertiesMap.put(name.substring(APPLICATION_PROPERTY_HEADER_PREFIX.length()), value);
+				} else if (name.startsWith(MESSAGE_ANNOTATION_HEADER_PREFIX)) {
+					Symbol annotation = Symbol.valueOf(name.substring(MESSAGE_ANNOTATION_HEADER_PREFIX.length()));
+					// the annotations from the Kafka record win
+					if (!messageAnnotationsMap.containsKey(annotation))
+						messageAnnotationsMap.put(annotation, AmqpSectionCodec.decodeValue(header.value()));
+				}
+			} catch (RuntimeException e) {
+				LOG.warn("Error decoding the {} header at offset {} on topic {}, skipped",
+						name, record.offset(), record.topic(), e);
+			}
+		}
+
+		if (applicationPropertiesMap != null)
+			message.setApplicationProperties(new ApplicationProperties(applicationPropertiesMap));
+
+		if (record.value() != null)
+			message.setBody(new Data(new Binary(record.value())));
+
+		return message;
+	}
+}
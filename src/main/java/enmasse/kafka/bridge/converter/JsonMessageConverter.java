@@ -16,9 +16,12 @@
 
 package enmasse.kafka.bridge.converter;
 
-import enmasse.kafka.bridge.Bridge;
-import io.vertx.core.json.JsonArray;
-import io.vertx.core.json.JsonObject;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import io.vertx.core.json.Json;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.clients.producer.ProducerRecord;
 import org.apache.qpid.proton.Proton;
@@ -31,12 +34,15 @@ import org.apache.qpid.proton.amqp.messaging.MessageAnnotations;
 import org.apache.qpid.proton.amqp.messaging.Section;
 import org.apache.qpid.proton.message.Message;
 
-import java.util.Arrays;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Base64;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.function.BiConsumer;
 
 /**
  * JSON implementation class for the message conversion
@@ -53,7 +59,10 @@ public class JsonMessageConverter implements MessageConverter<String, byte[]> {
 	public static final String SECTION_TYPE = "type";
 	public static final String SECTION = "section";
 	public static final String SECTION_AMQP_VALUE_TYPE = "amqpValue";
+	// raw data Base64 encoded twice, as by the previous versions (only decoded)
 	public static final String SECTION_DATA_TYPE = "data";
+	// raw data Base64 encoded once
+	public static final String SECTION_BINARY_TYPE = "binary";
 	
 	// main AMQP properties
 	public static final String MESSAGE_ID = "messageId";
@@ -62,234 +71,420 @@ public class JsonMessageConverter implements MessageConverter<String, byte[]> {
 	public static final String REPLY_TO = "replyTo";
 	public static final String CORRELATION_ID = "correlationId";
 	
+	// buffers grown over this size aren't kept after the encoding
+	private static final int MAX_RETAINED_SIZE = 1024 * 1024;
+	
+	// buffer for the JSON encoding, reused by all the messages handled on the same thread (event loop)
+	private static final ThreadLocal<ByteArrayBuilder> ENCODE_BUFFER = ThreadLocal.withInitial(ByteArrayBuilder::new);
+	
+	private static final JsonFactory JSON_FACTORY = Json.mapper.getFactory();
+	
 	@Override
 	public ProducerRecord<String, byte[]> toKafkaRecord(String kafkaTopic, Message message) {
 		
-		Object partition = null, key = null;
+		// get partition and key from AMQP message annotations
+		// NOTE : they are not mandatory
+		Integer partition = BridgeAnnotations.partition(message);
+		String key = BridgeAnnotations.key(message);
+		
+		// the JSON is streamed directly into the reused buffer, no intermediate tree or String
+		ByteArrayBuilder buffer = ENCODE_BUFFER.get();
 		byte[] value = null;
+		try (JsonGenerator generator = JSON_FACTORY.createGenerator(buffer)) {
+			
+			generator.writeStartObject();
+			this.writeProperties(generator, message);
+			this.writeApplicationProperties(generator, message.getApplicationProperties());
+			this.writeMessageAnnotations(generator, message.getMessageAnnotations());
+			this.writeBody(generator, message.getBody());
+			generator.writeEndObject();
+			generator.flush();
+			
+			value = buffer.toByteArray();
+			
+		} catch (IOException e) {
+			throw new IllegalArgumentException("Error encoding the AMQP message as JSON", e);
+		} finally {
+			buffer.reset();
+			// don't keep huge buffers for the next (usually small) messages
+			if (value == null || value.length > MAX_RETAINED_SIZE)
+				ENCODE_BUFFER.remove();
+		}
 		
-		// root JSON
-		JsonObject json = new JsonObject();
+		// build the record for the KafkaProducer and then send it
+		return new ProducerRecord<>(kafkaTopic, partition, key, value);
+	}
+	
+	/**
+	 * Write the AMQP properties as JSON (if any)
+	 * 
+	 * @param generator		JSON generator
+	 * @param message		AMQP message
+	 * @throws IOException
+	 */
+	private void writeProperties(JsonGenerator generator, Message message) throws IOException {
 		
-		// make JSON with AMQP properties
-		JsonObject jsonProperties = new JsonObject();
-		if (message.getMessageId() != null)
-			jsonProperties.put(JsonMessageConverter.MESSAGE_ID, message.getMessageId());
+		if (message.getMessageId() == null && message.getAddress() == null && message.getSubject() == null &&
+				message.getReplyTo() == null && message.getCorrelationId() == null)
+			return;
+		
+		generator.writeObjectFieldStart(JsonMessageConverter.PROPERTIES);
+		if (message.getMessageId() != null) {
+			generator.writeFieldName(JsonMessageConverter.MESSAGE_ID);
+			this.writeValue(generator, message.getMessageId());
+		}
 		if (message.getAddress() != null)
-			jsonProperties.put(JsonMessageConverter.TO, message.getAddress());
+			generator.writeStringField(JsonMessageConverter.TO, message.getAddress());
 		if (message.getSubject() != null)
-			jsonProperties.put(JsonMessageConverter.SUBJECT, message.getSubject());
+			generator.writeStringField(JsonMessageConverter.SUBJECT, message.getSubject());
 		if (message.getReplyTo() != null)
-			jsonProperties.put(JsonMessageConverter.REPLY_TO, message.getReplyTo());
-		if (message.getCorrelationId() != null)
-			jsonProperties.put(JsonMessageConverter.CORRELATION_ID, message.getCorrelationId());
-		if (!jsonProperties.isEmpty())
-			json.put(JsonMessageConverter.PROPERTIES, jsonProperties);
+			generator.writeStringField(JsonMessageConverter.REPLY_TO, message.getReplyTo());
+		if (message.getCorrelationId() != null) {
+			generator.writeFieldName(JsonMessageConverter.CORRELATION_ID);
+			this.writeValue(generator, message.getCorrelationId());
+		}
+		generator.writeEndObject();
+	}
+	
+	/**
+	 * Write the AMQP application properties as JSON (if any)
+	 * 
+	 * @param generator					JSON generator
+	 * @param applicationProperties		AMQP application properties
+	 * @throws IOException
+	 */
+	private void writeApplicationProperties(JsonGenerator generator, ApplicationProperties applicationProperties) throws IOException {
 		
-		// make JSON with AMQP application properties 
-		ApplicationProperties applicationProperties = message.getApplicationProperties();
+		if (applicationProperties == null)
+			return;
 		
-		if (applicationProperties != null) {
-			
-			JsonObject jsonApplicationProperties = new JsonObject();
-			Map<String, Object> applicationPropertiesMap = (Map<String, Object>)applicationProperties.getValue();
-			for (Entry<String, Object> entry : applicationPropertiesMap.entrySet()) {
-				
-				jsonApplicationProperties.put(entry.getKey(), entry.getValue());
-			}
-			json.put(JsonMessageConverter.APPLICATION_PROPERTIES, jsonApplicationProperties);
-		}
+		generator.writeFieldName(JsonMessageConverter.APPLICATION_PROPERTIES);
+		this.writeValue(generator, applicationProperties.getValue());
+	}
+	
+	/**
+	 * Write the AMQP message annotations as JSON (if any)
+	 * 
+	 * @param generator				JSON generator
+	 * @param messageAnnotations	AMQP message annotations
+	 * @throws IOException
+	 */
+	private void writeMessageAnnotations(JsonGenerator generator, MessageAnnotations messageAnnotations) throws IOException {
 		
-		// get partition and key from AMQP message annotations
-		// NOTE : they are not mandatory
-		MessageAnnotations messageAnnotations = message.getMessageAnnotations();
+		if (messageAnnotations == null)
+			return;
 		
-		if (messageAnnotations != null) {
-			
-			partition = messageAnnotations.getValue().get(Symbol.getSymbol(Bridge.AMQP_PARTITION_ANNOTATION));
-			key = messageAnnotations.getValue().get(Symbol.getSymbol(Bridge.AMQP_KEY_ANNOTATION));
+		generator.writeFieldName(JsonMessageConverter.MESSAGE_ANNOTATIONS);
+		this.writeValue(generator, messageAnnotations.getValue());
+	}
+	
+	/**
+	 * Write the AMQP body as JSON (if any)
+	 * 
+	 * @param generator		JSON generator
+	 * @param body			AMQP body
+	 * @throws IOException
+	 */
+	private void writeBody(JsonGenerator generator, Section body) throws IOException {
+		
+		// check body null
+		if (body == null)
+			return;
+		
+		generator.writeObjectFieldStart(JsonMessageConverter.BODY);
+		
+		// section is AMQP value
+		if (body instanceof AmqpValue) {
 			
-			if (partition != null && !(partition instanceof Integer))
-				throw new IllegalArgumentException("The partition annotation must be an Integer");
+			generator.writeStringField(JsonMessageConverter.SECTION_TYPE, JsonMessageConverter.SECTION_AMQP_VALUE_TYPE);
 			
-			if (key != null && !(key instanceof String))
-				throw new IllegalArgumentException("The key annotation must be a String");
+			Object amqpValue = ((AmqpValue) body).getValue();
 			
-			// make JSON with AMQP message annotations
-			JsonObject jsonMessageAnnotations = new JsonObject();
-			Map<Symbol, Object> messageAnnotationsMap = (Map<Symbol, Object>)messageAnnotations.getValue();
-			for (Entry<Symbol, Object> entry : messageAnnotationsMap.entrySet()) {
-				
-				jsonMessageAnnotations.put(entry.getKey().toString(), entry.getValue());
+			// encoded as String, List, array or Map
+			if (amqpValue instanceof String || amqpValue instanceof List ||
+					amqpValue instanceof Object[] || amqpValue instanceof Map) {
+				generator.writeFieldName(JsonMessageConverter.SECTION);
+				this.writeValue(generator, amqpValue);
 			}
-			json.put(JsonMessageConverter.MESSAGE_ANNOTATIONS, jsonMessageAnnotations);
-		}
 		
-		// get topic and body from AMQP message
-		String topic = (message.getAddress() == null) ?
-				kafkaTopic :
-				message.getAddress().replace('/', '.');
-
-		Section body = message.getBody();
-		
-		// check body null
-		if (body != null) {
+		// section is Data (binary)
+		} else if (body instanceof Data) {
 			
-			JsonObject jsonBody = new JsonObject();
+			Binary binary = (Binary)((Data)body).getValue();
 			
-			// section is AMQP value
-			if (body instanceof AmqpValue) {	
-				
-				jsonBody.put(JsonMessageConverter.SECTION_TYPE, JsonMessageConverter.SECTION_AMQP_VALUE_TYPE);
-				
-				Object amqpValue = ((AmqpValue) body).getValue();
-				
-				// encoded as String
-				if (amqpValue instanceof String) {
-					String content = (String)((AmqpValue) body).getValue();
-					jsonBody.put(JsonMessageConverter.SECTION, content);
-				// encoded as a List
-				} else if (amqpValue instanceof List) {
-					List<?> list = (List<?>)((AmqpValue) body).getValue();
-					JsonArray jsonArray = new JsonArray(list);
-					jsonBody.put(JsonMessageConverter.SECTION, jsonArray);
-				// encoded as an array
-				} else if (amqpValue instanceof Object[]) {
-					Object[] array = (Object[])((AmqpValue)body).getValue();
-					JsonArray jsonArray = new JsonArray(Arrays.asList(array));
-					jsonBody.put(JsonMessageConverter.SECTION, jsonArray);
-				// encoded as a Map
-				} else if (amqpValue instanceof Map) {
-					Map<?,?> map = (Map<?,?>)((AmqpValue)body).getValue();
-					value = map.toString().getBytes();
-					JsonObject jsonMap = new JsonObject((Map<String,Object>)map);
-					jsonBody.put(JsonMessageConverter.SECTION, jsonMap);
-				}
-			
-			// section is Data (binary)
-			} else if (body instanceof Data) {
-				Binary binary = (Binary)((Data)body).getValue();
-				value = binary.getArray();
-				
-				jsonBody.put(JsonMessageConverter.SECTION_TYPE, JsonMessageConverter.SECTION_DATA_TYPE);
-				
-				// put the section bytes as Base64 encoded string
-				jsonBody.put(JsonMessageConverter.SECTION, Base64.getEncoder().encode(value));
-			}
+			generator.writeStringField(JsonMessageConverter.SECTION_TYPE, JsonMessageConverter.SECTION_BINARY_TYPE);
 			
-			// put the body into the JSON root
-			json.put(JsonMessageConverter.BODY, jsonBody);
+			// put the section bytes as Base64 encoded string (directly from the binary)
+			generator.writeFieldName(JsonMessageConverter.SECTION);
+			generator.writeBinary(binary.getArray(), binary.getArrayOffset(), binary.getLength());
 		}
 		
-		// build the record for the KafkaProducer and then send it
-		return new ProducerRecord<>(topic, (Integer)partition, (String)key, json.toString().getBytes());
+		generator.writeEndObject();
+	}
+	
+	/**
+	 * Write an AMQP typed value as JSON
+	 * 
+	 * @param generator		JSON generator
+	 * @param value			value to write
+	 * @throws IOException
+	 */
+	private void writeValue(JsonGenerator generator, Object value) throws IOException {
+		
+		if (value == null) {
+			generator.writeNull();
+		} else if (value instanceof String) {
+			generator.writeString((String) value);
+		} else if (value instanceof Boolean) {
+			generator.writeBoolean((Boolean) value);
+		} else if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+			generator.writeNumber(((Number) value).longValue());
+		} else if (value instanceof Double || value instanceof Float) {
+			generator.writeNumber(((Number) value).doubleValue());
+		} else if (value instanceof Number) {
+			// i.e. AMQP unsigned types
+			generator.writeNumber(value.toString());
+		} else if (value instanceof Map) {
+			generator.writeStartObject();
+			for (Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+				generator.writeFieldName(String.valueOf(entry.getKey()));
+				this.writeValue(generator, entry.getValue());
+			}
+			generator.writeEndObject();
+		} else if (value instanceof List) {
+			generator.writeStartArray();
+			for (Object item : (List<?>) value) {
+				this.writeValue(generator, item);
+			}
+			generator.writeEndArray();
+		} else if (value instanceof Object[]) {
+			generator.writeStartArray();
+			for (Object item : (Object[]) value) {
+				this.writeValue(generator, item);
+			}
+			generator.writeEndArray();
+		} else if (value instanceof byte[]) {
+			generator.writeBinary((byte[]) value);
+		} else if (value instanceof Binary) {
+			Binary binary = (Binary) value;
+			generator.writeBinary(binary.getArray(), binary.getArrayOffset(), binary.getLength());
+		} else {
+			// i.e. Symbol, UUID, Date, Character
+			generator.writeString(value.toString());
+		}
 	}
 
 	@Override
 	public Message toAmqpMessage(String amqpAddress, ConsumerRecord<String, byte[]> record) {
+		return this.toAmqpMessage(amqpAddress, record, Proton.message());
+	}
+
+	@Override
+	public Message toAmqpMessage(String amqpAddress, ConsumerRecord<String, byte[]> record, Message message) {
 		
-		Message message = Proton.message();
+		MessageAnnotations messageAnnotations = BridgeAnnotations.clear(message);
 		message.setAddress(amqpAddress);
 		
-		// get the root JSON
-		JsonObject json = new JsonObject(new String(record.value()));
+		// put message annotations about partition, offset and key (if not null)
+		Map<Symbol, Object> messageAnnotationsMap = BridgeAnnotations.annotate(message, messageAnnotations, record);
 		
-		// get AMQP properties from the JSON
-		JsonObject jsonProperties = json.getJsonObject(JsonMessageConverter.PROPERTIES);
-		if (jsonProperties != null) {
+		// the JSON is parsed in a single pass directly from the record bytes, no intermediate tree or String
+		try (JsonParser parser = JSON_FACTORY.createParser(record.value())) {
+			
+			if (parser.nextToken() != JsonToken.START_OBJECT)
+				throw new IllegalArgumentException("The record value isn't a JSON object");
 			
-			for (Entry<String, Object> entry : jsonProperties) {
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
 				
-				if (entry.getValue() != null) {
+				String field = parser.getCurrentName();
+				parser.nextToken();
 				
-					if (entry.getKey().equals(JsonMessageConverter.MESSAGE_ID)) {
-						message.setMessageId(entry.getValue());
-					} else if (entry.getKey().equals(JsonMessageConverter.TO)) {
-						message.setAddress(entry.getValue().toString());
-					} else if (entry.getKey().equals(JsonMessageConverter.SUBJECT)) {
-						message.setSubject(entry.getValue().toString());
-					} else if (entry.getKey().equals(JsonMessageConverter.REPLY_TO)) {
-						message.setReplyTo(entry.getValue().toString());
-					} else if (entry.getKey().equals(JsonMessageConverter.CORRELATION_ID)) {
-						message.setCorrelationId(entry.getValue());
-					}
+				if (field.equals(JsonMessageConverter.PROPERTIES)) {
+					this.readProperties(parser, message);
+				} else if (field.equals(JsonMessageConverter.APPLICATION_PROPERTIES)) {
+					this.readApplicationProperties(parser, message);
+				} else if (field.equals(JsonMessageConverter.MESSAGE_ANNOTATIONS)) {
+					// get AMQP message annotations from the JSON
+					this.readObject(parser, (name, value) -> messageAnnotationsMap.put(Symbol.valueOf(name), value));
+				} else if (field.equals(JsonMessageConverter.BODY)) {
+					this.readBody(parser, message);
+				} else {
+					parser.skipChildren();
 				}
 			}
+			
+		} catch (IOException e) {
+			throw new IllegalArgumentException("Error decoding the AMQP message from JSON", e);
 		}
 		
-		// get AMQP application properties from the JSON
-		JsonObject jsonApplicationProperties = json.getJsonObject(JsonMessageConverter.APPLICATION_PROPERTIES);
-		if (jsonApplicationProperties != null) {
-			
-			Map<Symbol, Object> applicationPropertiesMap = new HashMap<>();
+		return message;
+	}
+	
+	/**
+	 * Read the AMQP properties from the JSON
+	 * 
+	 * @param parser		JSON parser (on the properties object start)
+	 * @param message		AMQP message to fill
+	 * @throws IOException
+	 */
+	private void readProperties(JsonParser parser, Message message) throws IOException {
+		
+		this.readObject(parser, (name, value) -> {
 			
-			for (Entry<String, Object> entry : jsonApplicationProperties) {
-				applicationPropertiesMap.put(Symbol.valueOf(entry.getKey()), entry.getValue());
+			if (value != null) {
+				
+				if (name.equals(JsonMessageConverter.MESSAGE_ID)) {
+					message.setMessageId(value);
+				} else if (name.equals(JsonMessageConverter.TO)) {
+					message.setAddress(value.toString());
+				} else if (name.equals(JsonMessageConverter.SUBJECT)) {
+					message.setSubject(value.toString());
+				} else if (name.equals(JsonMessageConverter.REPLY_TO)) {
+					message.setReplyTo(value.toString());
+				} else if (name.equals(JsonMessageConverter.CORRELATION_ID)) {
+					message.setCorrelationId(value);
+				}
 			}
-			
-			ApplicationProperties applicationProperties = new ApplicationProperties(applicationPropertiesMap); 
-			message.setApplicationProperties(applicationProperties);
+		});
+	}
+	
+	/**
+	 * Read the AMQP application properties from the JSON
+	 * 
+	 * @param parser		JSON parser (on the application properties object start)
+	 * @param message		AMQP message to fill
+	 * @throws IOException
+	 */
+	private void readApplicationProperties(JsonParser parser, Message message) throws IOException {
+		
+		Map<String, Object> applicationPropertiesMap = new HashMap<>();
+		this.readObject(parser, applicationPropertiesMap::put);
+		
+		ApplicationProperties applicationProperties = new ApplicationProperties(applicationPropertiesMap); 
+		message.setApplicationProperties(applicationProperties);
+	}
+	
+	/**
+	 * Read the AMQP body from the JSON
+	 * 
+	 * @param parser		JSON parser (on the body object start)
+	 * @param message		AMQP message to fill
+	 * @throws IOException
+	 */
+	private void readBody(JsonParser parser, Message message) throws IOException {
+		
+		if (parser.getCurrentToken() != JsonToken.START_OBJECT) {
+			parser.skipChildren();
+			return;
 		}
 		
-		// put message annotations about partition, offset and key (if not null)
-		Map<Symbol, Object> messageAnnotationsMap = new HashMap<>();
-		messageAnnotationsMap.put(Symbol.valueOf(Bridge.AMQP_PARTITION_ANNOTATION), record.partition());
-		messageAnnotationsMap.put(Symbol.valueOf(Bridge.AMQP_OFFSET_ANNOTATION), record.offset());
-		if (record.key() != null)
-			messageAnnotationsMap.put(Symbol.valueOf(Bridge.AMQP_KEY_ANNOTATION), record.key());
-		messageAnnotationsMap.put(Symbol.valueOf(Bridge.AMQP_TOPIC_ANNOTATION), record.topic());
+		// type attribute for following section : AMQP value or raw data/binary
+		String type = null;
+		Object section = null;
 		
-		// get AMQP message annotations from the JSON
-		JsonObject jsonMessageAnnotations = json.getJsonObject(JsonMessageConverter.MESSAGE_ANNOTATIONS);
-		if (jsonMessageAnnotations != null) {
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			
+			String field = parser.getCurrentName();
+			parser.nextToken();
 			
-			for (Entry<String, Object> entry : jsonMessageAnnotations) {
-				messageAnnotationsMap.put(Symbol.valueOf(entry.getKey()), entry.getValue());
+			if (field.equals(JsonMessageConverter.SECTION_TYPE)) {
+				type = parser.getValueAsString();
+			} else if (field.equals(JsonMessageConverter.SECTION)) {
+				if ((JsonMessageConverter.SECTION_BINARY_TYPE.equals(type) || JsonMessageConverter.SECTION_DATA_TYPE.equals(type)) &&
+						parser.getCurrentToken() == JsonToken.VALUE_STRING) {
+					// raw binary data, Base64 decoded directly from the JSON
+					section = parser.getBinaryValue();
+				} else {
+					section = this.readValue(parser);
+				}
+			} else {
+				parser.skipChildren();
 			}
 		}
 		
-		MessageAnnotations messageAnnotations = new MessageAnnotations(messageAnnotationsMap);
-		message.setMessageAnnotations(messageAnnotations);
+		if (JsonMessageConverter.SECTION_AMQP_VALUE_TYPE.equals(type)) {
+			
+			// section is an AMQP value : String, List or Map
+			if (section instanceof String || section instanceof List || section instanceof Map) {
+				message.setBody(new AmqpValue(section));
+			}
+			
+		} else if (JsonMessageConverter.SECTION_BINARY_TYPE.equals(type) || JsonMessageConverter.SECTION_DATA_TYPE.equals(type)) {
+			
+			// section is a raw binary data (Base64 decoded here if it came before the type)
+			if (section instanceof String) {
+				section = Base64.getDecoder().decode((String) section);
+			}
+			if (section instanceof byte[]) {
+				byte[] value = (byte[]) section;
+				// previous versions Base64 encoded the bytes before the JSON encoding
+				if (JsonMessageConverter.SECTION_DATA_TYPE.equals(type)) {
+					value = Base64.getDecoder().decode(value);
+				}
+				message.setBody(new Data(new Binary(value)));
+			}
+		}
+	}
+	
+	/**
+	 * Read a JSON object, providing each field to the consumer
+	 * 
+	 * @param parser		JSON parser (on the object start)
+	 * @param consumer		consumer for the field name/value pairs
+	 * @throws IOException
+	 */
+	private void readObject(JsonParser parser, BiConsumer<String, Object> consumer) throws IOException {
 		
-		// get the AMQP message body from the JSON
-		JsonObject jsonBody = json.getJsonObject(JsonMessageConverter.BODY);
+		if (parser.getCurrentToken() != JsonToken.START_OBJECT) {
+			parser.skipChildren();
+			return;
+		}
+		
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String name = parser.getCurrentName();
+			parser.nextToken();
+			consumer.accept(name, this.readValue(parser));
+		}
+	}
+	
+	/**
+	 * Read a JSON value (objects as Map and arrays as List)
+	 * 
+	 * @param parser		JSON parser (on the value start)
+	 * @return				value read
+	 * @throws IOException
+	 */
+	private Object readValue(JsonParser parser) throws IOException {
 		
-		if (jsonBody != null) {
+		switch (parser.getCurrentToken()) {
 			
-			// type attribtute for following sectin : AMQP value or raw data/binary
-			String type = jsonBody.getString(JsonMessageConverter.SECTION_TYPE);
-			 
-			if (type.equals(JsonMessageConverter.SECTION_AMQP_VALUE_TYPE)) {
-				
-				// section is an AMQP value
-				Object jsonSection = jsonBody.getValue(JsonMessageConverter.SECTION);
+			case START_OBJECT:
+				Map<String, Object> map = new LinkedHashMap<>();
+				this.readObject(parser, map::put);
+				return map;
 				
-				// encoded as String
-				if (jsonSection instanceof String) {
-					message.setBody(new AmqpValue(jsonSection));
-				// encoded as an array/List
-				} else if (jsonSection instanceof JsonArray) {
-					JsonArray jsonArray = (JsonArray)jsonSection;
-					message.setBody(new AmqpValue(jsonArray.getList()));
-				// encoded as a Map
-				} else if (jsonSection instanceof JsonObject) {
-					JsonObject jsonObject = (JsonObject)jsonSection;
-					message.setBody(new AmqpValue(jsonObject.getMap()));
+			case START_ARRAY:
+				List<Object> list = new ArrayList<>();
+				while (parser.nextToken() != JsonToken.END_ARRAY) {
+					list.add(this.readValue(parser));
 				}
+				return list;
 				
-			} else if (type.equals(JsonMessageConverter.SECTION_DATA_TYPE)) {
+			case VALUE_STRING:
+				return parser.getText();
 				
-				// section is a raw binary data
+			case VALUE_NUMBER_INT:
+			case VALUE_NUMBER_FLOAT:
+				return parser.getNumberValue();
 				
-				// get the section from the JSON (it's base64 encoded)
-				byte[] value = jsonBody.getBinary(JsonMessageConverter.SECTION);
+			case VALUE_TRUE:
+				return Boolean.TRUE;
 				
-				message.setBody(new Data(new Binary(Base64.getDecoder().decode(value))));
-			}
+			case VALUE_FALSE:
+				return Boolean.FALSE;
+				
+			default:
+				return null;
 		}
-		
-		return message;
 	}
-
-	
 }
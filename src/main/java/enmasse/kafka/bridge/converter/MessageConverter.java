@@ -21,14 +21,16 @@ import org.apache.kafka.clients.producer.ProducerRecord;
 import org.apache.qpid.proton.message.Message;
 
 /**
- * Interface for a message converter between Kafka record and AMQP message
+ * Interface for a message converter between Kafka record and AMQP message.
+ * Implementations can override the default method for converting into a reused AMQP message,
+ * avoiding the allocations they don't need
  */
 public interface MessageConverter<K, V> {
 
 	/**
 	 * Converts an AMQP message to a Kafka record
 	 *
-	 * @param kafkaTopic	Kafka topic for sending message
+	 * @param kafkaTopic	Kafka topic for sending message (already routed from the link or message address)
 	 * @param message		AMQP message to convert
 	 * @return				Kafka record
 	 */
@@ -42,4 +44,19 @@ public interface MessageConverter<K, V> {
 	 * @return				AMQP message
 	 */
 	Message toAmqpMessage(String amqpAddress, ConsumerRecord<K, V> record);
+
+	/**
+	 * Converts a Kafka record to an AMQP message, filling the provided one
+	 * NOTE : the provided message is reused by the caller for the next records so it has
+	 * to be cleared by the implementation; the default one ignores it and returns a new message
+	 *
+	 * @param amqpAddress	AMQP address for sending message
+	 * @param record		Kafka record to convert
+	 * @param message		AMQP message to fill (i.e. the one used for the previous record)
+	 * @return				AMQP message
+	 */
+	default Message toAmqpMessage(String amqpAddress, ConsumerRecord<K, V> record, Message message) {
+		return this.toAmqpMessage(amqpAddress, record);
+	}
+
 }
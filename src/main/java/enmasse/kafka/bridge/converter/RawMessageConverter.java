@@ -16,18 +16,12 @@
 
 package enmasse.kafka.bridge.converter;
 
-import enmasse.kafka.bridge.Bridge;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.clients.producer.ProducerRecord;
 import org.apache.qpid.proton.Proton;
-import org.apache.qpid.proton.amqp.Symbol;
 import org.apache.qpid.proton.amqp.messaging.MessageAnnotations;
 import org.apache.qpid.proton.message.Message;
 
-import java.util.Arrays;
-import java.util.HashMap;
-import java.util.Map;
-
 /**
  * Raw implementation class for the message conversion
  * between Kafka record and AMQP message.
@@ -35,62 +29,38 @@ import java.util.Map;
  */
 public class RawMessageConverter implements MessageConverter<String, byte[]> {
 
-	// TODO : should be it configurable or based on max frame size ?
-	private static final int BUFFER_SIZE = 32768;
-	
 	@Override
 	public ProducerRecord<String, byte[]> toKafkaRecord(String kafkaTopic, Message message) {
 		
-		Object partition = null, key = null;
 		byte[] value;
-		byte[] buffer = new byte[RawMessageConverter.BUFFER_SIZE];
-		
-		// get topic and body from AMQP message
-		String topic = (message.getAddress() == null) ?
-				kafkaTopic :
-				message.getAddress().replace('/', '.');
 		
-		int encoded = message.encode(buffer, 0, RawMessageConverter.BUFFER_SIZE);
-		value = Arrays.copyOfRange(buffer, 0, encoded);
+		// the only copy is from the reused encode buffer to the record value (exactly sized)
+		value = EncodeBuffer.encode(message);
 		
 		// get partition and key from AMQP message annotations
 		// NOTE : they are not mandatory
-		MessageAnnotations messageAnnotations = message.getMessageAnnotations();
-		
-		if (messageAnnotations != null) {
-			
-			partition = messageAnnotations.getValue().get(Symbol.getSymbol(Bridge.AMQP_PARTITION_ANNOTATION));
-			key = messageAnnotations.getValue().get(Symbol.getSymbol(Bridge.AMQP_KEY_ANNOTATION));
-			
-			if (partition != null && !(partition instanceof Integer))
-				throw new IllegalArgumentException("The partition annotation must be an Integer");
-			
-			if (key != null && !(key instanceof String))
-				throw new IllegalArgumentException("The key annotation must be a String");
-		}
+		Integer partition = BridgeAnnotations.partition(message);
+		String key = BridgeAnnotations.key(message);
 		
 		// build the record for the KafkaProducer and then send it
-		return new ProducerRecord<>(topic, (Integer)partition, (String)key, value);
+		return new ProducerRecord<>(kafkaTopic, partition, key, value);
 	}
 
 	@Override
 	public Message toAmqpMessage(String amqpAddress, ConsumerRecord<String, byte[]> record) {
+		return this.toAmqpMessage(amqpAddress, record, Proton.message());
+	}
+
+	@Override
+	public Message toAmqpMessage(String amqpAddress, ConsumerRecord<String, byte[]> record, Message message) {
 		
-		Message message = Proton.message();
-		message.setAddress(amqpAddress);
+		MessageAnnotations messageAnnotations = BridgeAnnotations.clear(message);
 		
 		message.decode(record.value(), 0, record.value().length);
+		message.setAddress(amqpAddress);
 		
 		// put message annotations about partition, offset and key (if not null)
-		Map<Symbol, Object> map = new HashMap<>();
-		map.put(Symbol.valueOf(Bridge.AMQP_PARTITION_ANNOTATION), record.partition());
-		map.put(Symbol.valueOf(Bridge.AMQP_OFFSET_ANNOTATION), record.offset());
-		if (record.key() != null)
-			map.put(Symbol.valueOf(Bridge.AMQP_KEY_ANNOTATION), record.key());
-		map.put(Symbol.valueOf(Bridge.AMQP_TOPIC_ANNOTATION), record.topic());
-		
-		MessageAnnotations messageAnnotations = new MessageAnnotations(map);
-		message.setMessageAnnotations(messageAnnotations);
+		BridgeAnnotations.annotate(message, messageAnnotations, record);
 		
 		return message;
 	}
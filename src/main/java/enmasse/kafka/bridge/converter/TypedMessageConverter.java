@@ -0,0 +1,33 @@
+/*
+ * Copyright 2016 Red Hat Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package enmasse.kafka.bridge.converter;
+
+/**
+ * Implementation class for the message conversion between Kafka record and AMQP message
+ * which works as the default one but encodes the AMQP value bodies (not String)
+ * with the AMQP type system, so that they can be decoded back with the same types
+ */
+public class TypedMessageConverter extends DefaultMessageConverter {
+
+	/**
+	 * Constructor
+	 */
+	public TypedMessageConverter() {
+		super(true);
+	}
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2016 Red Hat Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package enmasse.kafka.bridge.credit;
+
+import enmasse.kafka.bridge.config.AmqpConfigProperties;
+
+/**
+ * Additive Increase Multiplicative Decrease (AIMD) credit controller.
+ * The window of credits grows while the Kafka acknowledgement latency stays under
+ * the target and it's halved when the latency (or the Kafka producer buffer utilization)
+ * goes over, so that the producer doesn't accumulate records during broker slowdowns
+ */
+public class AimdCreditController implements CreditController {
+
+	// credits added to the window after a full window acknowledged under the target latency
+	private static final int ADDITIVE_INCREASE = 16;
+	private static final double MULTIPLICATIVE_DECREASE = 0.5;
+	// Kafka producer buffer utilization over which the window is decreased
+	private static final double BUFFER_UTILIZATION_THRESHOLD = 0.8;
+
+	private long targetLatency;
+	private int minWindow;
+	private int maxWindow;
+
+	private int window;
+	private int outstanding;
+	private long latency;
+
+	// acknowledgements since the last window change
+	private int acks;
+	private boolean decreased;
+
+	/**
+	 * Constructor
+	 *
+	 * @param amqpConfigProperties	AMQP configuration
+	 */
+	public AimdCreditController(AmqpConfigProperties amqpConfigProperties) {
+
+		this.targetLatency = amqpConfigProperties.getCreditTargetLatency();
+		this.minWindow = Math.max(1, amqpConfigProperties.getCreditMin());
+		this.maxWindow = Math.max(this.minWindow, amqpConfigProperties.getCreditMax());
+		this.window = Math.min(this.maxWindow, Math.max(this.minWindow, amqpConfigProperties.getFlowCredit()));
+	}
+
+	@Override
+	public int initialCredits() {
+		this.outstanding = this.window;
+		return this.window;
+	}
+
+	@Override
+	public int acked(long latency, double bufferUtilization) {
+
+		this.latency = latency;
+		this.outstanding--;
+		this.acks++;
+
+		boolean congested = latency > this.targetLatency || bufferUtilization > BUFFER_UTILIZATION_THRESHOLD;
+
+		if (congested) {
+
+			// decrease only once for each window, the acks already in flight
+			// were sent with the previous (bigger) window
+			if (!this.decreased || this.acks >= this.window) {
+				this.window = Math.max(this.minWindow, (int) (this.window * MULTIPLICATIVE_DECREASE));
+				this.decreased = true;
+				this.acks = 0;
+			}
+
+		} else if (this.acks >= this.window) {
+
+			// a full window acknowledged under the target latency
+			if (!this.decreased) {
+				this.window = Math.min(this.maxWindow, this.window + ADDITIVE_INCREASE);
+			}
+			this.decreased = false;
+			this.acks = 0;
+		}
+
+		// grant credits only to fill the current window
+		int credits = Math.max(0, this.window - this.outstanding);
+		this.outstanding += credits;
+		return credits;
+	}
+
+	@Override
+	public int window() {
+		return this.window;
+	}
+
+	@Override
+	public int outstanding() {
+		return this.outstanding;
+	}
+
+	@Override
+	public long latency() {
+		return this.latency;
+	}
+}
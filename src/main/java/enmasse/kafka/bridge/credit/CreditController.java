@@ -0,0 +1,61 @@
+/*
+ * Copyright 2016 Red Hat Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package enmasse.kafka.bridge.credit;
+
+/**
+ * Interface for controlling the credits granted on a receiver link
+ * based on the acknowledgements received from Apache Kafka
+ */
+public interface CreditController {
+
+	/**
+	 * Credits to grant when the link is attached
+	 *
+	 * @return		number of credits
+	 */
+	int initialCredits();
+
+	/**
+	 * Handle a delivery acknowledged (or rejected) by Apache Kafka
+	 *
+	 * @param latency				time (in ms) elapsed between sending the record and the Kafka acknowledgement
+	 * @param bufferUtilization		Kafka producer buffer utilization (from 0 to 1)
+	 * @return						number of credits to grant
+	 */
+	int acked(long latency, double bufferUtilization);
+
+	/**
+	 * Current window of credits (deliveries in flight plus credits not yet used)
+	 *
+	 * @return		window size
+	 */
+	int window();
+
+	/**
+	 * Credits granted and not yet acknowledged by Apache Kafka
+	 *
+	 * @return		outstanding credits, -1 if not tracked by the controller
+	 */
+	int outstanding();
+
+	/**
+	 * Latency (in ms) of the last acknowledgement
+	 *
+	 * @return		last latency
+	 */
+	long latency();
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2016 Red Hat Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package enmasse.kafka.bridge.credit;
+
+import enmasse.kafka.bridge.config.AmqpConfigProperties;
+
+import java.lang.reflect.Constructor;
+
+/**
+ * Factory for the credit controllers of the receiver links.
+ * The credit controller class is resolved once, so that a wrong
+ * configuration is reported at bridge startup and not on link attachment
+ */
+public class CreditControllerFactory {
+
+	private final AmqpConfigProperties amqpConfigProperties;
+	private final Constructor<? extends CreditController> constructor;
+
+	/**
+	 * Constructor
+	 *
+	 * @param amqpConfigProperties	AMQP configuration
+	 * @throws IllegalArgumentException	if the configured credit controller can't be created
+	 */
+	public CreditControllerFactory(AmqpConfigProperties amqpConfigProperties) {
+
+		this.amqpConfigProperties = amqpConfigProperties;
+
+		String className = amqpConfigProperties.getCreditController();
+		try {
+			this.constructor = Class.forName(className)
+					.asSubclass(CreditController.class)
+					.getConstructor(AmqpConfigProperties.class);
+			// fail fast on a controller rejecting the configuration
+			this.constructor.newInstance(amqpConfigProperties);
+		} catch (Exception e) {
+			throw new IllegalArgumentException("Error creating credit controller " + className, e);
+		}
+	}
+
+	/**
+	 * Create a credit controller for a receiver link
+	 *
+	 * @return		credit controller
+	 */
+	public CreditController create() {
+
+		try {
+			return this.constructor.newInstance(this.amqpConfigProperties);
+		} catch (Exception e) {
+			throw new IllegalStateException("Error creating credit controller " + this.constructor.getDeclaringClass().getName(), e);
+		}
+	}
+}
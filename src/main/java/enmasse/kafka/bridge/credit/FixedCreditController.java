@@ -0,0 +1,66 @@
+/*
+ * Copyright 2016 Red Hat Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package enmasse.kafka.bridge.credit;
+
+import enmasse.kafka.bridge.config.AmqpConfigProperties;
+
+/**
+ * Credit controller with a fixed window.
+ * It grants the configured flow credit at link attachment and
+ * then one credit for each acknowledgement from Apache Kafka
+ */
+public class FixedCreditController implements CreditController {
+
+	private int window;
+	private long latency;
+
+	/**
+	 * Constructor
+	 *
+	 * @param amqpConfigProperties	AMQP configuration
+	 */
+	public FixedCreditController(AmqpConfigProperties amqpConfigProperties) {
+		this.window = amqpConfigProperties.getFlowCredit();
+	}
+
+	@Override
+	public int initialCredits() {
+		return this.window;
+	}
+
+	@Override
+	public int acked(long latency, double bufferUtilization) {
+		this.latency = latency;
+		return 1;
+	}
+
+	@Override
+	public int window() {
+		return this.window;
+	}
+
+	@Override
+	public int outstanding() {
+		// a credit is granted again on each acknowledgement, the outstanding credits are always the window
+		return -1;
+	}
+
+	@Override
+	public long latency() {
+		return this.latency;
+	}
+}
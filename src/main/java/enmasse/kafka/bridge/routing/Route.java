@@ -0,0 +1,76 @@
+/*
+ * Copyright 2016 Red Hat Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package enmasse.kafka.bridge.routing;
+
+import enmasse.kafka.bridge.converter.MessageConverter;
+
+/**
+ * Route resolved for an AMQP address, with the Kafka topic and the related settings
+ */
+public class Route {
+
+	private final String topic;
+	private final Integer partition;
+	private final MessageConverter<?, ?> converter;
+
+	/**
+	 * Constructor
+	 *
+	 * @param topic			Kafka topic
+	 * @param partition		fixed partition for the records without one (null for the producer partitioner)
+	 * @param converter		message converter
+	 */
+	public Route(String topic, Integer partition, MessageConverter<?, ?> converter) {
+		this.topic = topic;
+		this.partition = partition;
+		this.converter = converter;
+	}
+
+	/**
+	 * Kafka topic
+	 *
+	 * @return
+	 */
+	public String topic() {
+		return this.topic;
+	}
+
+	/**
+	 * Fixed partition for the records without one (null for the producer partitioner)
+	 *
+	 * @return
+	 */
+	public Integer partition() {
+		return this.partition;
+	}
+
+	/**
+	 * Message converter
+	 *
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	public <K, V> MessageConverter<K, V> converter() {
+		return (MessageConverter<K, V>) this.converter;
+	}
+
+	@Override
+	public String toString() {
+		return "Route(topic=" + this.topic + ", partition=" + this.partition + ", converter=" + this.converter.getClass().getName() + ")";
+	}
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright 2016 Red Hat Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package enmasse.kafka.bridge.routing;
+
+import enmasse.kafka.bridge.converter.ConverterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Routing table from AMQP addresses to Kafka topics, compiled once and shared by all the source endpoints.
+ * Routes are defined through rules like [address pattern]=[topic](@[partition]) (comma separated, the first
+ * matching one wins) where each * wildcard in the pattern matches any characters which replace the
+ * corresponding * in the topic (i.e. tenant1/orders/*=tenant1.orders.* for prefix rewriting or
+ * sensors/*=sensors for topics fan-in), and the optional partition is used for the records without one.
+ * Without rules, the topic is the address itself (with "/" replaced by ".") and any address is routable.
+ * The resolved routes are cached, so the resolution happens once for each distinct address.
+ */
+public class RoutingTable {
+
+	private static final Logger LOG = LoggerFactory.getLogger(RoutingTable.class);
+
+	private static final String RULES_SEPARATOR = ",";
+	private static final String RULE_SEPARATOR = "=";
+	private static final String PARTITION_SEPARATOR = "@";
+	private static final String WILDCARD = "*";
+
+	// legal characters for a Kafka topic name
+	private static final Pattern TOPIC = Pattern.compile("[a-zA-Z0-9._-]+");
+	private static final int TOPIC_MAX_LENGTH = 249;
+
+	// max number of distinct addresses with a cached route
+	private static final int MAX_CACHED_ROUTES = 10000;
+
+	private final List<Rule> rules;
+	private final ConverterRegistry converterRegistry;
+
+	private final Map<String, Route> routes;
+
+	/**
+	 * Constructor
+	 *
+	 * @param rules					comma separated [address pattern]=[topic](@[partition]) rules (it can be null)
+	 * @param converterRegistry		registry providing the message converter for the addresses
+	 * @throws IllegalArgumentException	if a rule isn't valid
+	 */
+	public RoutingTable(String rules, ConverterRegistry converterRegistry) {
+
+		this.rules = new ArrayList<>();
+		this.converterRegistry = converterRegistry;
+		this.routes = new ConcurrentHashMap<>();
+
+		if (rules != null && !rules.trim().isEmpty()) {
+
+			for (String rule : rules.split(RULES_SEPARATOR)) {
+
+				int index = rule.indexOf(RULE_SEPARATOR);
+				if (index <= 0)
+					throw new IllegalArgumentException("Route [" + rule.trim() + "] isn't [address pattern]=[topic](@[partition])");
+
+				String pattern = rule.substring(0, index).trim();
+				String topic = rule.substring(index + RULE_SEPARATOR.length()).trim();
+
+				Integer partition = null;
+				int partitionIndex = topic.indexOf(PARTITION_SEPARATOR);
+				if (partitionIndex != -1) {
+					try {
+						partition = Integer.valueOf(topic.substring(partitionIndex + PARTITION_SEPARATOR.length()).trim());
+					} catch (NumberFormatException e) {
+						throw new IllegalArgumentException("Route [" + rule.trim() + "] has an invalid partition", e);
+					}
+					if (partition < 0)
+						throw new IllegalArgumentException("Route [" + rule.trim() + "] has an invalid partition");
+					topic = topic.substring(0, partitionIndex).trim();
+				}
+
+				if (topic.isEmpty())
+					throw new IllegalArgumentException("Route [" + rule.trim() + "] has no topic");
+
+				this.rules.add(new Rule(pattern, topic, partition));
+			}
+		}
+
+		LOG.info("Routing table with {} routes", this.rules.size());
+	}
+
+	/**
+	 * Get the route for the provided address
+	 *
+	 * @param address	AMQP address
+	 * @return			route, null if the address isn't routable
+	 */
+	public Route route(String address) {
+
+		if (address == null)
+			return null;
+
+		Route route = this.routes.get(address);
+		if (route == null) {
+
+			route = this.resolve(address);
+
+			// addresses can be provided by the clients (i.e. message "to"), so the cache is bounded
+			if (route != null && this.routes.size() < MAX_CACHED_ROUTES)
+				this.routes.put(address, route);
+		}
+		return route;
+	}
+
+	/**
+	 * Resolve the route for the provided address through the rules
+	 *
+	 * @param address	AMQP address
+	 * @return			route, null if the address isn't routable
+	 */
+	private Route resolve(String address) {
+
+		String topic = null;
+		Integer partition = null;
+
+		if (this.rules.isEmpty()) {
+			topic = address;
+		} else {
+			for (Rule rule : this.rules) {
+				topic = rule.topic(address);
+				if (topic != null) {
+					partition = rule.partition;
+					break;
+				}
+			}
+		}
+
+		if (topic == null)
+			return null;
+
+		// replace unsupported "/" (in a topic name in Kafka) with "."
+		topic = topic.replace('/', '.');
+		if (topic.length() > TOPIC_MAX_LENGTH || !TOPIC.matcher(topic).matches())
+			return null;
+
+		return new Route(topic, partition, this.converterRegistry.converter(address));
+	}
+
+	/**
+	 * Rule which routes the addresses matching a pattern to a topic
+	 */
+	private static class Rule {
+
+		private final Pattern pattern;
+		private final String[] topic;
+		private final Integer partition;
+
+		/**
+		 * Constructor
+		 *
+		 * @param pattern		address pattern (with * wildcards)
+		 * @param topic			topic (with * replaced by the matching characters)
+		 * @param partition		fixed partition (it can be null)
+		 */
+		Rule(String pattern, String topic, Integer partition) {
+
+			StringBuilder regex = new StringBuilder();
+			int start = 0;
+			int index;
+			int wildcards = 0;
+			while ((index = pattern.indexOf(WILDCARD, start)) != -1) {
+				regex.append(Pattern.quote(pattern.substring(start, index))).append("(.*)");
+				start = index + WILDCARD.length();
+				wildcards++;
+			}
+			regex.append(Pattern.quote(pattern.substring(start)));
+
+			// topic parts around the wildcards
+			this.topic = topic.split(Pattern.quote(WILDCARD), -1);
+			if (this.topic.length - 1 > wildcards)
+				throw new IllegalArgumentException("Route topic " + topic + " has more wildcards than the address pattern " + pattern);
+
+			this.pattern = Pattern.compile(regex.toString());
+			this.partition = partition;
+		}
+
+		/**
+		 * Get the topic for the provided address
+		 *
+		 * @param address	AMQP address
+		 * @return			topic, null if the address doesn't match
+		 */
+		String topic(String address) {
+
+			Matcher matcher = this.pattern.matcher(address);
+			if (!matcher.matches())
+				return null;
+
+			if (this.topic.length == 1)
+				return this.topic[0];
+
+			StringBuilder topic = new StringBuilder(this.topic[0]);
+			for (int i = 1; i < this.topic.length; i++) {
+				topic.append(matcher.group(i)).append(this.topic[i]);
+			}
+			return topic.toString();
+		}
+	}
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2016 Red Hat Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package enmasse.kafka.bridge.tracker;
+
+/**
+ * Binary AMQP delivery tag for a Kafka record, made by the record partition (4 bytes)
+ * followed by the record offset (8 bytes), both big endian.
+ * It's built once by the Kafka consumer worker and decoded without allocations
+ * when the delivery is settled
+ */
+public final class DeliveryTag {
+
+	public static final int SIZE = 12;
+
+	private DeliveryTag() {
+	}
+
+	/**
+	 * Build the delivery tag for a partition and offset
+	 *
+	 * @param partition		Kafka record partition
+	 * @param offset		Kafka record offset
+	 * @return				delivery tag
+	 */
+	public static byte[] tag(int partition, long offset) {
+
+		byte[] tag = new byte[SIZE];
+		for (int i = 3; i >= 0; i--) {
+			tag[i] = (byte) partition;
+			partition >>>= 8;
+		}
+		for (int i = SIZE - 1; i >= 4; i--) {
+			tag[i] = (byte) offset;
+			offset >>>= 8;
+		}
+		return tag;
+	}
+
+	/**
+	 * Get the partition from a delivery tag
+	 *
+	 * @param tag		delivery tag
+	 * @return			Kafka record partition
+	 */
+	public static int partition(byte[] tag) {
+
+		check(tag);
+		int partition = 0;
+		for (int i = 0; i < 4; i++) {
+			partition = (partition << 8) | (tag[i] & 0xff);
+		}
+		return partition;
+	}
+
+	/**
+	 * Get the offset from a delivery tag
+	 *
+	 * @param tag		delivery tag
+	 * @return			Kafka record offset
+	 */
+	public static long offset(byte[] tag) {
+
+		check(tag);
+		long offset = 0;
+		for (int i = 4; i < SIZE; i++) {
+			offset = (offset << 8) | (tag[i] & 0xff);
+		}
+		return offset;
+	}
+
+	private static void check(byte[] tag) {
+
+		if (tag == null || tag.length != SIZE)
+			throw new IllegalArgumentException("The delivery tag must be " + SIZE + " bytes long");
+	}
+}
@@ -14,41 +14,43 @@
  * limitations under the License.
  */
 
+
 package enmasse.kafka.bridge.tracker;
 
-import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.clients.consumer.OffsetAndMetadata;
 import org.apache.kafka.common.TopicPartition;
 
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Optional;
-import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Full implementation of offset tracker.
  * It tracks the offset immediately before the first unsettled offset waiting for it.
  * If receiver settles "out of order" the offset goes forward only if there aren't
  * unsettled offset in the middle. It means that already settled messages MAY be
- * re-delivered so AT_LEAST_ONCE QoS is guaranteed
+ * re-delivered so AT_LEAST_ONCE QoS is guaranteed.
+ * The unsettled offsets of each partition are tracked in a sliding window bitset,
+ * so tracking and settling are O(1) (amortized) and the first unsettled offset
+ * is found scanning the bitset a word at a time.
+ * It doesn't lock : the event loop is the only writer of the windows and publishes
+ * the offset to commit of each partition, read by the Kafka consumer thread which
+ * keeps the committed offsets on its own
  */
 public class FullOffsetTracker<K, V> implements OffsetTracker<K, V> {
 
+	// initial size (in offsets) of the window for each partition, it's doubled when needed
+	private static final int INITIAL_WINDOW_SIZE = 1024;
+
 	// Apache Kafka topic to track
 	private String topic;
 	
-	// map with offset settlement status for each partition
-	private Map<Integer, Map<Long, Boolean>> offsetSettlements;
-	
-	// map with each partition and related tracked offset 
-	private Map<Integer, Long> offsets;
-	// map with changed status of offsets
-	private Map<Integer, Boolean> offsetsFlag;
-	// map with each partition and related first UNSETTLED offset
-	private Map<Integer, Long> firstUnsettledOffsets;
+	// unsettled offsets window for each partition, the map is replaced (copy on write)
+	// only when a new partition is tracked or on clear
+	private AtomicReference<Map<Integer, Window>> windows;
 	
 	/**
 	 * Contructor
@@ -58,109 +60,54 @@ public class FullOffsetTracker<K, V> implements OffsetTracker<K, V> {
 	public FullOffsetTracker(String topic) {
 		
 		this.topic = topic;
-		this.offsetSettlements = new HashMap<>();
-		this.offsets = new HashMap<>();
-		this.offsetsFlag = new HashMap<>();
-		this.firstUnsettledOffsets = new HashMap<>();
+		this.windows = new AtomicReference<>(Collections.emptyMap());
 	}
 	
 	@Override
-	public synchronized void track(String tag, ConsumerRecord<K, V> record) {
+	public void track(int partition, long offset) {
 	
-		// get partition and offset from delivery tag : <partition>_<offset>
-		int partition = Integer.valueOf(tag.substring(0, tag.indexOf("_")));
-		long offset = Long.valueOf(tag.substring(tag.indexOf("_") + 1));
-		
-		if (!this.offsetSettlements.containsKey(partition)) {
-			
-			// new partition to track, create new related offset settlements map
-			Map<Long, Boolean> offsets = new LinkedHashMap<>();
-			// the offset in UNSETTLED
-			offsets.put(offset, false);
+		Window window = this.windows.get().get(partition);
+		if (window == null) {
 			
-			this.offsetSettlements.put(partition, offsets);
+			// new partition to track
+			window = new Window(INITIAL_WINDOW_SIZE);
 			
-			// this is the first UNSETTLED offset for the partition (just created)
-			this.firstUnsettledOffsets.put(partition, offset);
-			
-		} else {
-			
-			// partition already tracked, new offset is UNSETTLED
-			this.offsetSettlements.get(partition).put(offset, false);
+			Map<Integer, Window> windows, updated;
+			do {
+				windows = this.windows.get();
+				updated = new HashMap<>(windows);
+				updated.put(partition, window);
+			} while (!this.windows.compareAndSet(windows, updated));
 		}
+		
+		// the offset is UNSETTLED
+		window.track(offset);
 	}
 
 	@Override
-	public synchronized void delivered(String tag) {
-		
-		// get partition and offset from delivery tag : <partition>_<offset>
-		int partition = Integer.valueOf(tag.substring(0, tag.indexOf("_")));
-		long offset = Long.valueOf(tag.substring(tag.indexOf("_") + 1));
-		
-		// offset SETTLED, updating map partition
-		this.offsetSettlements.get(partition).put(offset, true);
+	public void delivered(int partition, long offset) {
 		
-		// the first UNSETTLED offset is delivered
-		if (offset == this.firstUnsettledOffsets.get(partition)) {
-			
-			// using Java 8 streams
-			
-			Optional<Long> firstUnsettledOffset = this.offsetSettlements.get(partition).entrySet().stream().filter(e -> e.getValue() == false).map(Map.Entry::getKey).findFirst();
-			
-			if (firstUnsettledOffset.isPresent()) {
-				
-				// first UNSETTLED offset found
-				this.firstUnsettledOffsets.put(partition, firstUnsettledOffset.get());
-				
-				// we need to remove from map all SETTLED offset there are before the first UNSETTLED offset
-				Set<Long> offsetToRemove = this.offsetSettlements.get(partition).keySet().stream().filter(k -> k < firstUnsettledOffset.get()).collect(Collectors.toSet());
-				
-				// offset to commit
-				Optional<Long> offsetToCommit = offsetToRemove.stream().reduce((a, b) -> b);
-				
-				if (offsetToCommit.isPresent()) {
-					this.offsets.put(partition, offsetToCommit.get());
-					this.offsetsFlag.put(partition, true);
-				}
-				
-				// removing all SETTLED offset before the first UNSETTLED we found
-				this.offsetSettlements.get(partition).keySet().removeAll(offsetToRemove);
-				
-			} else {
-				
-				// no other UNSETTLED offset, so the one just arrived is for commit
-				
-				long offsetToCommit = offset;
-				
-				this.offsets.put(partition, offsetToCommit);
-				this.offsetsFlag.put(partition, true);
-				
-				// all offset SETTLED, clear list
-				this.offsetSettlements.get(partition).clear();
-			}
-			
-		} else if (offset > this.firstUnsettledOffsets.get(partition)) {
-			
-			// do nothing
+		Window window = this.windows.get().get(partition);
+		if (window != null) {
 			
-		} else {
-			
-			// impossible ?
+			// offset SETTLED, the offset to commit goes forward if it was the first UNSETTLED one
+			window.settle(offset);
 		}
 	}
 
 	@Override
-	public synchronized Map<TopicPartition, OffsetAndMetadata> getOffsets() {
+	public Map<TopicPartition, OffsetAndMetadata> getOffsets() {
 		
 		Map<TopicPartition, OffsetAndMetadata> changedOffsets = new HashMap<>();
 		
-		for (Entry<Integer, Long> entry : this.offsets.entrySet()) {
+		for (Entry<Integer, Window> entry : this.windows.get().entrySet()) {
 			
 			// check if partition offset is changed and it needs to be committed
-			if (this.offsetsFlag.get(entry.getKey())) {
+			long committable = entry.getValue().committable;
+			if (committable != -1 && committable != entry.getValue().committed) {
 						
 				changedOffsets.put(new TopicPartition(this.topic, entry.getKey()), 
-						new OffsetAndMetadata(entry.getValue()));
+						new OffsetAndMetadata(committable));
 			}
 		}
 		
@@ -168,30 +115,153 @@ public class FullOffsetTracker<K, V> implements OffsetTracker<K, V> {
 	}
 	
 	@Override
-	public synchronized void commit(Map<TopicPartition, OffsetAndMetadata> offsets) {
+	public void commit(Map<TopicPartition, OffsetAndMetadata> offsets) {
+		
+		Map<Integer, Window> windows = this.windows.get();
 		
 		for (Entry<TopicPartition, OffsetAndMetadata> offset : offsets.entrySet()) {
 			
 			// be sure we are tracking the current partition and related offset
-			if (this.offsets.containsKey(offset.getKey().partition())) {
+			Window window = windows.get(offset.getKey().partition());
 			
-				// if offset tracked isn't changed during Kafka committing operation 
-				// (it means no other messages were acknowledged)
-				if (this.offsets.get(offset.getKey().partition()) == offset.getValue().offset()) {
-					// we can mark this offset as committed (not changed)
-					this.offsetsFlag.put(offset.getKey().partition(), false);
-				}
+			// if offset tracked is changed during Kafka committing operation
+			// (it means other messages were acknowledged) it will be returned on next getOffsets
+			if (window != null) {
+				window.committed = offset.getValue().offset();
 			}
 		}
 	}
 
 	@Override
-	public synchronized void clear() {
+	public void clear() {
 		
-		this.offsetSettlements.clear();
-		this.offsets.clear();
-		this.offsetsFlag.clear();
-		this.firstUnsettledOffsets.clear();
+		this.windows.set(Collections.emptyMap());
+	}
+	
+	/**
+	 * Sliding window over the offsets of a partition, from the first UNSETTLED offset
+	 * to the last tracked one. A bit is set for each UNSETTLED offset, at the offset
+	 * position modulo the window size (so the window slides without moving bits)
+	 */
+	private static class Window {
+		
+		private static final AtomicLongFieldUpdater<Window> COMMITTABLE =
+				AtomicLongFieldUpdater.newUpdater(Window.class, "committable");
+		
+		private long[] bits;
+		private long mask;
+		
+		// first UNSETTLED offset (equals to next when there are no UNSETTLED offsets)
+		private long first;
+		// offset following the last tracked one
+		private long next;
+		
+		// offset to commit (the one before the first UNSETTLED), -1 if none yet :
+		// written by the event loop only, read by the Kafka consumer thread
+		private volatile long committable;
+		// last committed offset, accessed by the Kafka consumer thread only
+		private long committed;
+		
+		Window(int size) {
+			this.bits = new long[size >>> 6];
+			this.mask = size - 1;
+			this.committable = -1;
+			this.committed = -1;
+		}
+		
+		void track(long offset) {
+			
+			if (this.first == this.next) {
+				// no UNSETTLED offsets, the window starts from this offset
+				this.first = offset;
+				this.next = offset;
+			} else if (offset < this.first) {
+				// already settled and committed (i.e. duplicated)
+				return;
+			}
+			
+			while (offset - this.first > this.mask) {
+				this.grow();
+			}
+			
+			this.set(offset);
+			if (offset >= this.next)
+				this.next = offset + 1;
+		}
+		
+		void settle(long offset) {
+			
+			if (offset < this.first || offset >= this.next || !this.get(offset))
+				return;
+			
+			this.clear(offset);
+			
+			if (offset == this.first) {
+				
+				long first = this.firstUnsettled(offset + 1);
+				
+				if (first == -1) {
+					// no other UNSETTLED offset, so the last tracked one is for commit
+					this.first = this.next;
+				} else {
+					// the offset just before the first UNSETTLED one is for commit
+					this.first = first;
+				}
+				// ordered write, no need to wait for the store being visible to the consumer thread
+				COMMITTABLE.lazySet(this, this.first - 1);
+			}
+		}
+		
+		/**
+		 * Find the first UNSETTLED offset starting from the provided one
+		 *
+		 * @param from	offset from which starting the scan
+		 * @return		first UNSETTLED offset, -1 if there are no UNSETTLED offsets
+		 */
+		private long firstUnsettled(long from) {
+			
+			while (from < this.next) {
+				
+				int bit = (int) (from & this.mask);
+				// bits in the word before the current position are masked out
+				long word = this.bits[bit >>> 6] & (-1L << bit);
+				if (word != 0) {
+					long offset = from + Long.numberOfTrailingZeros(word) - (bit & 63);
+					return (offset < this.next) ? offset : -1;
+				}
+				from += 64 - (bit & 63);
+			}
+			return -1;
+		}
+		
+		private void grow() {
+			
+			long[] bits = new long[this.bits.length << 1];
+			long mask = (this.mask << 1) | 1;
+			
+			// UNSETTLED offsets are moved at their position in the bigger window
+			for (long offset = this.firstUnsettled(this.first); offset != -1; offset = this.firstUnsettled(offset + 1)) {
+				int bit = (int) (offset & mask);
+				bits[bit >>> 6] |= 1L << bit;
+			}
+			
+			this.bits = bits;
+			this.mask = mask;
+		}
+		
+		private boolean get(long offset) {
+			int bit = (int) (offset & this.mask);
+			return (this.bits[bit >>> 6] & (1L << bit)) != 0;
+		}
+		
+		private void set(long offset) {
+			int bit = (int) (offset & this.mask);
+			this.bits[bit >>> 6] |= 1L << bit;
+		}
+		
+		private void clear(long offset) {
+			int bit = (int) (offset & this.mask);
+			this.bits[bit >>> 6] &= ~(1L << bit);
+		}
 	}
-
 }
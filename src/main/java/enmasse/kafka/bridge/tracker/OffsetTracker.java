@@ -16,31 +16,33 @@
 
 package enmasse.kafka.bridge.tracker;
 
-import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.clients.consumer.OffsetAndMetadata;
 import org.apache.kafka.common.TopicPartition;
 
 import java.util.Map;
 
 /**
- * Interface for tracking offset for all partitions read by Kafka consumer
+ * Interface for tracking offset for all partitions read by Kafka consumer.
+ * Deliveries are tracked and settled on the Vert.x event loop while the offsets
+ * are read and committed by the Kafka consumer thread
  */
 public interface OffsetTracker<K, V> {
 
 	/**
-	 * Track information about Kafka consumer record and AMQP delivery
+	 * Track a Kafka record sent as AMQP delivery
 	 *
-	 * @param tag		AMQP delivery tag
-	 * @param record	Kafka consumer record to track
+	 * @param partition	Kafka record partition
+	 * @param offset	Kafka record offset
 	 */
-	void track(String tag, ConsumerRecord<K, V> record);
+	void track(int partition, long offset);
 	
 	/**
 	 * Confirm delivery of AMQP message
 	 * 
-	 * @param tag	AMQP delivery tag
+	 * @param partition	Kafka record partition
+	 * @param offset	Kafka record offset
 	 */
-	void delivered(String tag);
+	void delivered(int partition, long offset);
 	
 	/**
 	 * Get a map with changed offsets for all partitions
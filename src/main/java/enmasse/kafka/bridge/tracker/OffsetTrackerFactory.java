@@ -0,0 +1,68 @@
+/*
+ * Copyright 2016 Red Hat Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package enmasse.kafka.bridge.tracker;
+
+import enmasse.kafka.bridge.config.AmqpConfigProperties;
+
+import java.lang.reflect.Constructor;
+
+/**
+ * Factory for the configured offset tracker of the sender links.
+ * The offset tracker class is resolved once, so that a wrong
+ * configuration is reported at bridge startup and not on link attachment
+ */
+public class OffsetTrackerFactory {
+
+	private final Constructor<? extends OffsetTracker> constructor;
+
+	/**
+	 * Constructor
+	 *
+	 * @param amqpConfigProperties	AMQP configuration
+	 * @throws IllegalArgumentException	if the configured offset tracker can't be created
+	 */
+	public OffsetTrackerFactory(AmqpConfigProperties amqpConfigProperties) {
+
+		String className = amqpConfigProperties.getOffsetTracker();
+		try {
+			this.constructor = Class.forName(className)
+					.asSubclass(OffsetTracker.class)
+					.getConstructor(String.class);
+			// fail fast on a tracker which can't be instantiated
+			this.constructor.newInstance("");
+		} catch (Exception e) {
+			throw new IllegalArgumentException("Error creating offset tracker " + className, e);
+		}
+	}
+
+	/**
+	 * Create an offset tracker for a sender link
+	 *
+	 * @param topic		topic to track offset
+	 * @return			offset tracker
+	 */
+	@SuppressWarnings("unchecked")
+	public <K, V> OffsetTracker<K, V> create(String topic) {
+
+		try {
+			return (OffsetTracker<K, V>) this.constructor.newInstance(topic);
+		} catch (Exception e) {
+			throw new IllegalStateException("Error creating offset tracker " + this.constructor.getDeclaringClass().getName(), e);
+		}
+	}
+}
@@ -16,7 +16,6 @@
 
 package enmasse.kafka.bridge.tracker;
 
-import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.clients.consumer.OffsetAndMetadata;
 import org.apache.kafka.common.TopicPartition;
 
@@ -52,16 +51,12 @@ public class SimpleOffsetTracker<K, V> implements OffsetTracker<K, V> {
 	}
 	
 	@Override
-	public synchronized void track(String tag, ConsumerRecord<K, V> record) {
+	public synchronized void track(int partition, long offset) {
 		// nothing
 	}
 	
 	@Override
-	public synchronized void delivered(String tag) {
-		
-		// get partition and offset from delivery tag : <partition>_<offset>
-		int partition = Integer.valueOf(tag.substring(0, tag.indexOf("_")));
-		long offset = Long.valueOf(tag.substring(tag.indexOf("_") + 1));
+	public synchronized void delivered(int partition, long offset) {
 		
 		if (this.offsets.containsKey(partition)) {
 			
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2016 Red Hat Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package enmasse.kafka.bridge;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.consumer.OffsetCommitCallback;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+public class AtMostOnceCommitterTest {
+
+	private TopicPartition partition = new TopicPartition("my_topic", 0);
+	private PendingCommitConsumer consumer;
+	private List<Long> sent;
+
+	/**
+	 * Mock consumer completing the asynchronous commits on request
+	 */
+	private static class PendingCommitConsumer extends MockConsumer<String, byte[]> {
+
+		private Queue<Map<TopicPartition, OffsetAndMetadata>> offsets = new LinkedList<>();
+		private Queue<OffsetCommitCallback> callbacks = new LinkedList<>();
+
+		PendingCommitConsumer() {
+			super(OffsetResetStrategy.EARLIEST);
+		}
+
+		@Override
+		public synchronized void commitAsync(Map<TopicPartition, OffsetAndMetadata> offsets, OffsetCommitCallback callback) {
+			this.offsets.add(offsets);
+			this.callbacks.add(callback);
+		}
+
+		@Override
+		public synchronized void commitSync(Map<TopicPartition, OffsetAndMetadata> offsets) {
+			// the mock synchronous commit is done through the asynchronous one
+			super.commitAsync(offsets, null);
+		}
+
+		void complete(Exception exception) {
+			Map<TopicPartition, OffsetAndMetadata> offsets = this.offsets.remove();
+			if (exception == null)
+				super.commitAsync(offsets, null);
+			this.callbacks.remove().onComplete(offsets, exception);
+		}
+	}
+
+	@Before
+	public void before() {
+
+		this.consumer = new PendingCommitConsumer();
+		this.consumer.assign(Collections.singletonList(this.partition));
+		this.sent = new ArrayList<>();
+	}
+
+	private ConsumerRecords<String, byte[]> records(long from, long to) {
+
+		List<ConsumerRecord<String, byte[]>> records = new ArrayList<>();
+		for (long offset = from; offset < to; offset++) {
+			records.add(new ConsumerRecord<>("my_topic", 0, offset, null, null));
+		}
+		return new ConsumerRecords<>(Collections.singletonMap(this.partition, records));
+	}
+
+	private AtMostOnceCommitter<String, byte[]> committer(int window) {
+
+		return new AtMostOnceCommitter<>(this.consumer, window, records -> {
+			for (ConsumerRecord<String, byte[]> record : records) {
+				this.sent.add(record.offset());
+			}
+		});
+	}
+
+	@Test
+	public void sentWhenCommitted() {
+
+		AtMostOnceCommitter<String, byte[]> committer = this.committer(100);
+
+		committer.commit(this.records(0, 10));
+		committer.commit(this.records(10, 20));
+
+		// nothing sent before the commit
+		Assert.assertTrue(this.sent.isEmpty());
+		Assert.assertEquals(20, committer.waiting());
+
+		this.consumer.complete(null);
+		Assert.assertEquals(10, this.sent.size());
+		Assert.assertEquals(10, this.consumer.committed(this.partition).offset());
+
+		this.consumer.complete(null);
+		Assert.assertEquals(20, this.sent.size());
+		Assert.assertEquals(20, this.consumer.committed(this.partition).offset());
+		Assert.assertEquals(0, committer.waiting());
+	}
+
+	@Test
+	public void windowExceeded() {
+
+		AtMostOnceCommitter<String, byte[]> committer = this.committer(15);
+
+		committer.commit(this.records(0, 10));
+		Assert.assertTrue(this.sent.isEmpty());
+
+		// synchronous commit for all the waiting records, sent in order
+		committer.commit(this.records(10, 20));
+		Assert.assertEquals(20, this.sent.size());
+		Assert.assertEquals(Long.valueOf(0), this.sent.get(0));
+		Assert.assertEquals(Long.valueOf(19), this.sent.get(19));
+		Assert.assertEquals(20, this.consumer.committed(this.partition).offset());
+
+		// the late asynchronous commit doesn't send again
+		this.consumer.complete(null);
+		Assert.assertEquals(20, this.sent.size());
+		Assert.assertEquals(0, committer.waiting());
+	}
+
+	@Test
+	public void commitFailed() {
+
+		AtMostOnceCommitter<String, byte[]> committer = this.committer(100);
+
+		committer.commit(this.records(0, 10));
+		committer.commit(this.records(10, 20));
+
+		// records not committed are never sent
+		this.consumer.complete(new RuntimeException("commit failed"));
+		Assert.assertTrue(this.sent.isEmpty());
+
+		this.consumer.complete(null);
+		Assert.assertEquals(10, this.sent.size());
+		Assert.assertEquals(Long.valueOf(10), this.sent.get(0));
+	}
+
+	@Test
+	public void synchronous() {
+
+		AtMostOnceCommitter<String, byte[]> committer = this.committer(0);
+
+		committer.commit(this.records(0, 10));
+		Assert.assertEquals(10, this.sent.size());
+		Assert.assertEquals(10, this.consumer.committed(this.partition).offset());
+	}
+}
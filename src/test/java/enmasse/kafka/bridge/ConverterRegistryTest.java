@@ -0,0 +1,100 @@
+/*
+ * Copyright 2016 Red Hat Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package enmasse.kafka.bridge;
+
+import enmasse.kafka.bridge.converter.ConverterRegistry;
+import enmasse.kafka.bridge.converter.DefaultMessageConverter;
+import enmasse.kafka.bridge.converter.JsonMessageConverter;
+import enmasse.kafka.bridge.converter.MessageConverter;
+import enmasse.kafka.bridge.converter.RawMessageConverter;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ConverterRegistryTest {
+
+	private static final String DEFAULT = "enmasse.kafka.bridge.converter.DefaultMessageConverter";
+	private static final String JSON = "enmasse.kafka.bridge.converter.JsonMessageConverter";
+	private static final String RAW = "enmasse.kafka.bridge.converter.RawMessageConverter";
+	private static final String TYPED = "enmasse.kafka.bridge.converter.TypedMessageConverter";
+	private static final String BINARY_KEY = "enmasse.kafka.bridge.converter.BinaryKeyMessageConverter";
+	private static final String BYTE_BUFFER = "enmasse.kafka.bridge.converter.ByteBufferMessageConverter";
+	
+	private static final String STRING_SERIALIZER = "org.apache.kafka.common.serialization.StringSerializer";
+	private static final String STRING_DESERIALIZER = "org.apache.kafka.common.serialization.StringDeserializer";
+	private static final String BYTE_ARRAY_SERIALIZER = "org.apache.kafka.common.serialization.ByteArraySerializer";
+	private static final String BYTE_ARRAY_DESERIALIZER = "org.apache.kafka.common.serialization.ByteArrayDeserializer";
+
+	@Test
+	public void addressRules() {
+
+		ConverterRegistry registry = new ConverterRegistry(DEFAULT,
+				"metrics/*=" + RAW + ", audit.*=" + JSON + ",*.json=" + JSON);
+
+		Assert.assertEquals(RawMessageConverter.class, registry.converter("metrics/cpu").getClass());
+		Assert.assertEquals(JsonMessageConverter.class, registry.converter("audit.logins").getClass());
+		Assert.assertEquals(JsonMessageConverter.class, registry.converter("orders.json").getClass());
+		Assert.assertEquals(DefaultMessageConverter.class, registry.converter("orders").getClass());
+		Assert.assertEquals(DefaultMessageConverter.class, registry.converter(null).getClass());
+
+		// the pattern is matched literally, except for the wildcard
+		Assert.assertEquals(DefaultMessageConverter.class, registry.converter("auditXlogins").getClass());
+
+		// converters are shared
+		MessageConverter<?, ?> converter = registry.converter("audit.logins");
+		Assert.assertSame(converter, registry.converter("orders.json"));
+		Assert.assertSame(registry.converter("orders"), registry.converter("events"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void unknownConverter() {
+		new ConverterRegistry("enmasse.kafka.bridge.DefaultMessageConverter", null);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void invalidRule() {
+		new ConverterRegistry(DEFAULT, "metrics/*");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void mixedKeyTypes() {
+		new ConverterRegistry(DEFAULT, "binary/*=" + BINARY_KEY);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void mixedValueTypes() {
+		new ConverterRegistry(DEFAULT, "buffers/*=" + BYTE_BUFFER);
+	}
+
+	@Test
+	public void serializers() {
+
+		// a subclass of a converter has the same types
+		ConverterRegistry registry = new ConverterRegistry(DEFAULT, "typed/*=" + TYPED + ",raw/*=" + RAW);
+		registry.checkSerializers(STRING_SERIALIZER, BYTE_ARRAY_SERIALIZER, STRING_DESERIALIZER, BYTE_ARRAY_DESERIALIZER);
+
+		registry = new ConverterRegistry(BINARY_KEY, null);
+		registry.checkSerializers(BYTE_ARRAY_SERIALIZER, BYTE_ARRAY_SERIALIZER, BYTE_ARRAY_DESERIALIZER, BYTE_ARRAY_DESERIALIZER);
+
+		try {
+			registry.checkSerializers(STRING_SERIALIZER, BYTE_ARRAY_SERIALIZER, STRING_DESERIALIZER, BYTE_ARRAY_DESERIALIZER);
+			Assert.fail("String key serializer accepted for the binary key converter");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+}
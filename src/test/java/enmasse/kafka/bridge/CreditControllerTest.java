@@ -0,0 +1,133 @@
+/*
+ * Copyright 2016 Red Hat Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package enmasse.kafka.bridge;
+
+import enmasse.kafka.bridge.config.AmqpConfigProperties;
+import enmasse.kafka.bridge.credit.AimdCreditController;
+import enmasse.kafka.bridge.credit.CreditController;
+import enmasse.kafka.bridge.credit.CreditControllerFactory;
+import enmasse.kafka.bridge.credit.FixedCreditController;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CreditControllerTest {
+
+	private AmqpConfigProperties amqpConfigProperties;
+	
+	@Before
+	public void before() {
+		
+		this.amqpConfigProperties = new AmqpConfigProperties()
+				.setFlowCredit(100)
+				.setCreditTargetLatency(100)
+				.setCreditMin(10)
+				.setCreditMax(200);
+	}
+	
+	@Test
+	public void fixedCreditController() {
+		
+		CreditController creditController = new FixedCreditController(this.amqpConfigProperties);
+		
+		Assert.assertEquals(100, creditController.initialCredits());
+		
+		for (int i = 0; i < 500; i++) {
+			Assert.assertEquals(1, creditController.acked(1000, 1.0));
+		}
+		Assert.assertEquals(100, creditController.window());
+		// outstanding credits not tracked
+		Assert.assertEquals(-1, creditController.outstanding());
+	}
+	
+	@Test
+	public void aimdCreditControllerIncrease() {
+		
+		CreditController creditController = new AimdCreditController(this.amqpConfigProperties);
+		
+		Assert.assertEquals(100, creditController.initialCredits());
+		
+		// a full window acknowledged under the target latency
+		int credits = 0;
+		for (int i = 0; i < 100; i++) {
+			credits += creditController.acked(10, 0.0);
+		}
+		
+		Assert.assertTrue(creditController.window() > 100);
+		// the acked credits are granted again plus the window increase
+		Assert.assertEquals(creditController.window(), credits);
+		Assert.assertEquals(creditController.window(), creditController.outstanding());
+		
+		// never over the max window
+		for (int i = 0; i < 10000; i++) {
+			creditController.acked(10, 0.0);
+		}
+		Assert.assertEquals(200, creditController.window());
+	}
+	
+	@Test
+	public void aimdCreditControllerDecrease() {
+		
+		CreditController creditController = new AimdCreditController(this.amqpConfigProperties);
+		
+		creditController.initialCredits();
+		
+		// latency over the target, the window is halved once and no credits are granted
+		Assert.assertEquals(0, creditController.acked(500, 0.0));
+		Assert.assertEquals(50, creditController.window());
+		Assert.assertEquals(500, creditController.latency());
+		
+		// the acks in flight don't decrease the window again
+		for (int i = 0; i < 49; i++) {
+			Assert.assertEquals(0, creditController.acked(500, 0.0));
+		}
+		Assert.assertEquals(50, creditController.window());
+		
+		// buffer almost full, the window is decreased again down to the min window
+		for (int i = 0; i < 10000; i++) {
+			creditController.acked(10, 0.9);
+		}
+		Assert.assertEquals(10, creditController.window());
+	}
+	
+	@Test
+	public void creditControllerFactory() {
+		
+		this.amqpConfigProperties.setCreditController(AimdCreditController.class.getName());
+		CreditControllerFactory factory = new CreditControllerFactory(this.amqpConfigProperties);
+		
+		CreditController first = factory.create();
+		CreditController second = factory.create();
+		Assert.assertTrue(first instanceof AimdCreditController);
+		Assert.assertNotSame(first, second);
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void creditControllerFactoryUnknownClass() {
+		
+		this.amqpConfigProperties.setCreditController("enmasse.kafka.bridge.credit.NotExistingCreditController");
+		new CreditControllerFactory(this.amqpConfigProperties);
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void creditControllerFactoryNotCreditController() {
+		
+		this.amqpConfigProperties.setCreditController(String.class.getName());
+		new CreditControllerFactory(this.amqpConfigProperties);
+	}
+}
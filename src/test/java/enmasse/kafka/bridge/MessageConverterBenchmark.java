@@ -0,0 +1,112 @@
+/*
+ * Copyright 2016 Red Hat Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package enmasse.kafka.bridge;
+
+import enmasse.kafka.bridge.converter.DefaultMessageConverter;
+import enmasse.kafka.bridge.converter.MessageConverter;
+import enmasse.kafka.bridge.converter.TypedMessageConverter;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.record.TimestampType;
+import org.apache.qpid.proton.Proton;
+import org.apache.qpid.proton.amqp.messaging.AmqpValue;
+import org.apache.qpid.proton.message.Message;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Comparison of the AMQP value body encodings of the default (string formatting)
+ * and typed (AMQP type system) converters.
+ * It's not run with the other tests (the class name doesn't match the Surefire patterns),
+ * run it with "mvn test -Dtest=MessageConverterBenchmark"
+ */
+public class MessageConverterBenchmark {
+
+	private static final Logger LOG = LoggerFactory.getLogger(MessageConverterBenchmark.class);
+
+	private static final int ROUNDS = 5;
+	private static final int ITERATIONS = 500_000;
+
+	// keeps the JIT from removing the benchmarked code
+	private long sink;
+
+	@Test
+	public void amqpValueEncoding() {
+
+		Map<Object, Object> map = new HashMap<>();
+		for (int i = 0; i < 10; i++) {
+			map.put("key" + i, (long) i * 1000);
+		}
+		map.put("list", Arrays.asList("a", 1, true, 2.5));
+
+		List<Object> list = new ArrayList<>();
+		for (int i = 0; i < 20; i++) {
+			list.add((long) i * 1000003);
+		}
+
+		this.compare("map", map);
+		this.compare("list", list);
+	}
+
+	private void compare(String name, Object value) {
+
+		Message message = Proton.message();
+		message.setBody(new AmqpValue(value));
+
+		MessageConverter<String, byte[]> plain = new DefaultMessageConverter();
+		MessageConverter<String, byte[]> typed = new TypedMessageConverter();
+
+		ProducerRecord<String, byte[]> typedRecord = typed.toKafkaRecord("my_topic", message);
+		ConsumerRecord<String, byte[]> record = new ConsumerRecord<>("my_topic", 0, 0, 0L, TimestampType.CREATE_TIME, null, 0, 0,
+				null, typedRecord.value(), typedRecord.headers());
+
+		LOG.info("{} body : string {} bytes, typed {} bytes",
+				name, plain.toKafkaRecord("my_topic", message).value().length, typedRecord.value().length);
+
+		// the last rounds are the ones to look at, the first ones warm up the JIT
+		for (int round = 0; round < ROUNDS; round++) {
+
+			long start = System.nanoTime();
+			for (int i = 0; i < ITERATIONS; i++) {
+				this.sink += plain.toKafkaRecord("my_topic", message).value().length;
+			}
+			long plainEncode = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			for (int i = 0; i < ITERATIONS; i++) {
+				this.sink += typed.toKafkaRecord("my_topic", message).value().length;
+			}
+			long typedEncode = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			for (int i = 0; i < ITERATIONS; i++) {
+				this.sink += typed.toAmqpMessage("my_topic", record).getBody().hashCode();
+			}
+			long typedDecode = System.nanoTime() - start;
+
+			LOG.info("{} body, round {} : string encode {} ns/op, typed encode {} ns/op, typed decode {} ns/op",
+					name, round, plainEncode / ITERATIONS, typedEncode / ITERATIONS, typedDecode / ITERATIONS);
+		}
+	}
+}
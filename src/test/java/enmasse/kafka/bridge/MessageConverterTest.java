@@ -0,0 +1,532 @@
+/*
+ * Copyright 2016 Red Hat Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package enmasse.kafka.bridge;
+
+import enmasse.kafka.bridge.converter.AmqpSectionCodec;
+import enmasse.kafka.bridge.converter.BinaryKeyMessageConverter;
+import enmasse.kafka.bridge.converter.ByteBufferMessageConverter;
+import enmasse.kafka.bridge.converter.EnvelopeMessageConverter;
+import enmasse.kafka.bridge.converter.HeadersMessageConverter;
+import enmasse.kafka.bridge.converter.JsonMessageConverter;
+import enmasse.kafka.bridge.converter.MessageConverter;
+import enmasse.kafka.bridge.converter.RawMessageConverter;
+import enmasse.kafka.bridge.converter.TypedMessageConverter;
+import io.vertx.core.json.JsonObject;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.record.TimestampType;
+import org.apache.kafka.common.serialization.ByteBufferDeserializer;
+import org.apache.kafka.common.serialization.ByteBufferSerializer;
+import org.apache.qpid.proton.Proton;
+import org.apache.qpid.proton.amqp.Binary;
+import org.apache.qpid.proton.amqp.Symbol;
+import org.apache.qpid.proton.amqp.UnsignedInteger;
+import org.apache.qpid.proton.amqp.UnsignedLong;
+import org.apache.qpid.proton.amqp.messaging.AmqpValue;
+import org.apache.qpid.proton.amqp.messaging.ApplicationProperties;
+import org.apache.qpid.proton.amqp.messaging.MessageAnnotations;
+import org.apache.qpid.proton.amqp.messaging.Data;
+import org.apache.qpid.proton.message.Message;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+public class MessageConverterTest {
+
+	@Test
+	public void rawMessageConverterSmallAndBig() {
+		
+		MessageConverter<String, byte[]> converter = new RawMessageConverter();
+		
+		// bigger than the initial encode buffer and the previous 32 KB limit, then small again
+		for (int size : new int[] { 100, 100000, 5 * 1024 * 1024, 100 }) {
+			
+			byte[] body = new byte[size];
+			Arrays.fill(body, (byte) 'a');
+			
+			Message message = Proton.message();
+			message.setAddress("my_topic");
+			message.setBody(new Data(new Binary(body)));
+			
+			ProducerRecord<String, byte[]> record = converter.toKafkaRecord("my_topic", message);
+			
+			// the record value is exactly the encoded message
+			Assert.assertTrue(record.value().length > size);
+			Assert.assertTrue(record.value().length < size + 64);
+			
+			Message decoded = converter.toAmqpMessage("my_topic",
+					new ConsumerRecord<>("my_topic", 0, 0, null, record.value()));
+			
+			Assert.assertEquals(new Binary(body), ((Data) decoded.getBody()).getValue());
+		}
+	}
+	
+	@Test
+	public void byteBufferMessageConverterNoCopy() {
+		
+		MessageConverter<String, ByteBuffer> converter = new ByteBufferMessageConverter();
+		ByteBufferSerializer serializer = new ByteBufferSerializer();
+		ByteBufferDeserializer deserializer = new ByteBufferDeserializer();
+		
+		// binary as a slice of a bigger buffer (i.e. the transfer frame)
+		byte[] frame = "headerpayloadtrailer".getBytes();
+		Message message = Proton.message();
+		message.setAddress("my_topic");
+		message.setBody(new Data(new Binary(frame, 6, 7)));
+		
+		// only the payload is serialized
+		ProducerRecord<String, ByteBuffer> record = converter.toKafkaRecord("my_topic", message);
+		byte[] serialized = serializer.serialize("my_topic", record.value());
+		Assert.assertArrayEquals("payload".getBytes(), serialized);
+		// the record can be serialized again (i.e. on a retry)
+		Assert.assertArrayEquals("payload".getBytes(), serializer.serialize("my_topic", record.value()));
+		
+		// binary as the whole buffer, serialized without copies
+		byte[] payload = "payload".getBytes();
+		message.setBody(new Data(new Binary(payload)));
+		record = converter.toKafkaRecord("my_topic", message);
+		Assert.assertSame(payload, serializer.serialize("my_topic", record.value()));
+		
+		// the deserialized bytes are the AMQP message body, without copies
+		ByteBuffer value = deserializer.deserialize("my_topic", serialized);
+		Message decoded = converter.toAmqpMessage("my_topic",
+				new ConsumerRecord<>("my_topic", 0, 0, null, value));
+		
+		Binary binary = ((Data) decoded.getBody()).getValue();
+		Assert.assertSame(serialized, binary.getArray());
+		Assert.assertEquals(new Binary("payload".getBytes()), binary);
+	}
+	
+	@Test
+	public void typedMessageConverterRoundTrip() {
+		
+		MessageConverter<String, byte[]> converter = new TypedMessageConverter();
+		
+		Map<Object, Object> map = new HashMap<>();
+		map.put("count", 10L);
+		map.put(Symbol.valueOf("unsigned"), UnsignedInteger.valueOf(5));
+		map.put("list", Arrays.asList("a", 1, true));
+		
+		List<Object> list = Arrays.asList(1.5, "b", map);
+		
+		for (Object amqpValue : new Object[] { map, list, 42, "text" }) {
+			
+			Message message = Proton.message();
+			message.setAddress("my_topic");
+			message.setBody(new AmqpValue(amqpValue));
+			
+			ProducerRecord<String, byte[]> record = converter.toKafkaRecord("my_topic", message);
+			
+			Message decoded = converter.toAmqpMessage("my_topic",
+					new ConsumerRecord<>("my_topic", 0, 0, 0L, TimestampType.CREATE_TIME, null, 0, 0,
+							null, record.value(), record.headers()));
+			
+			if (amqpValue instanceof String) {
+				// String bodies are still raw bytes
+				Assert.assertEquals("text", new String(record.value()));
+				Assert.assertEquals(new Binary("text".getBytes()), ((Data) decoded.getBody()).getValue());
+			} else {
+				Assert.assertEquals(amqpValue, ((AmqpValue) decoded.getBody()).getValue());
+			}
+		}
+	}
+	
+	@Test
+	public void amqpValueEncoding() {
+		
+		char[] longText = new char[300];
+		Arrays.fill(longText, 'x');
+		byte[] longBinary = new byte[300];
+		Arrays.fill(longBinary, (byte) 1);
+		
+		Map<Object, Object> map = new HashMap<>();
+		map.put("text", "h\u00e9llo \u20ac \ud83d\ude00");
+		map.put("long text", new String(longText));
+		map.put(Symbol.valueOf("symbol"), Symbol.valueOf("value"));
+		map.put("empty", Collections.emptyList());
+		map.put("null", null);
+		
+		List<Object> values = Arrays.asList(
+				null, true, false, (byte) -1, (short) 300, 5, -100000, 7L, Long.MIN_VALUE, 1.5f, 2.5,
+				UnsignedInteger.valueOf(0), UnsignedInteger.valueOf(200), UnsignedInteger.valueOf(-1),
+				UnsignedLong.valueOf(0), UnsignedLong.valueOf(200), UnsignedLong.valueOf(1L << 40),
+				new Binary(new byte[] { 1, 2, 3 }), new Binary(longBinary), map,
+				Arrays.asList(1, Arrays.asList("nested", 2L), map),
+				// not written directly, encoded by Proton
+				new Date(1000), UUID.randomUUID(), Arrays.asList("a", new Date(2000)));
+		
+		for (Object value : values) {
+			byte[] encoded = AmqpSectionCodec.encodeAmqpValue(value);
+			// the same bytes as the Proton encoder
+			Assert.assertArrayEquals(String.valueOf(value), AmqpSectionCodec.encode(new AmqpValue(value)), encoded);
+			Assert.assertEquals(new AmqpValue(value).getValue(),
+					((AmqpValue) AmqpSectionCodec.decode(encoded, 0, encoded.length)).getValue());
+		}
+		
+		// bigger than the encoding buffer
+		byte[] big = new byte[100_000];
+		Arrays.fill(big, (byte) 2);
+		List<Object> bigList = Arrays.asList(new Binary(big), "end");
+		byte[] encoded = AmqpSectionCodec.encodeAmqpValue(bigList);
+		Assert.assertEquals(bigList, ((AmqpValue) AmqpSectionCodec.decode(encoded, 0, encoded.length)).getValue());
+	}
+	
+	@Test
+	public void typedMessageConverterNotMarked() {
+		
+		MessageConverter<String, byte[]> converter = new TypedMessageConverter();
+		
+		Message message = Proton.message();
+		message.setAddress("my_topic");
+		message.setBody(new AmqpValue(Arrays.asList(1, 2)));
+		ProducerRecord<String, byte[]> record = converter.toKafkaRecord("my_topic", message);
+		
+		// a record from another producer starting as an AMQP value section, without the marker header
+		Message decoded = converter.toAmqpMessage("my_topic",
+				new ConsumerRecord<>("my_topic", 0, 0, null, record.value()));
+		Assert.assertEquals(new Binary(record.value()), ((Data) decoded.getBody()).getValue());
+		
+		// a marked record which can't be decoded
+		byte[] value = new byte[] { 0x00, 0x53, 0x77, (byte) 0xff };
+		decoded = converter.toAmqpMessage("my_topic",
+				new ConsumerRecord<>("my_topic", 0, 0, 0L, TimestampType.CREATE_TIME, null, 0, 0,
+						null, value, record.headers()));
+		Assert.assertEquals(new Binary(value), ((Data) decoded.getBody()).getValue());
+	}
+	
+	@Test
+	public void jsonMessageConverterRoundTrip() {
+		
+		MessageConverter<String, byte[]> converter = new JsonMessageConverter();
+		
+		Map<String, Object> applicationProperties = new HashMap<>();
+		applicationProperties.put("prop1", "value1");
+		applicationProperties.put("prop2", 2);
+		
+		Map<Symbol, Object> annotations = new HashMap<>();
+		annotations.put(Symbol.valueOf(Bridge.AMQP_PARTITION_ANNOTATION), 1);
+		annotations.put(Symbol.valueOf(Bridge.AMQP_KEY_ANNOTATION), "my_key");
+		annotations.put(Symbol.valueOf("x-opt-ann"), Symbol.valueOf("my_symbol"));
+		
+		Message message = Proton.message();
+		message.setAddress("my_topic");
+		message.setMessageId("my_id");
+		message.setSubject("my_subject");
+		message.setApplicationProperties(new ApplicationProperties(applicationProperties));
+		message.setMessageAnnotations(new MessageAnnotations(annotations));
+		message.setBody(new Data(new Binary("headerpayload".getBytes(), 6, 7)));
+		
+		ProducerRecord<String, byte[]> record = converter.toKafkaRecord("my_topic", message);
+		
+		Assert.assertEquals(Integer.valueOf(1), record.partition());
+		Assert.assertEquals("my_key", record.key());
+		
+		// the Data section is Base64 encoded only once
+		JsonObject json = new JsonObject(new String(record.value()));
+		Assert.assertEquals(JsonMessageConverter.SECTION_BINARY_TYPE,
+				json.getJsonObject(JsonMessageConverter.BODY).getString(JsonMessageConverter.SECTION_TYPE));
+		Assert.assertEquals(Base64.getEncoder().encodeToString("payload".getBytes()),
+				json.getJsonObject(JsonMessageConverter.BODY).getString(JsonMessageConverter.SECTION));
+		
+		Message decoded = converter.toAmqpMessage("my_topic",
+				new ConsumerRecord<>("my_topic", 1, 0, "my_key", record.value()));
+		
+		Assert.assertEquals("my_id", decoded.getMessageId());
+		Assert.assertEquals("my_subject", decoded.getSubject());
+		Assert.assertEquals("value1", decoded.getApplicationProperties().getValue().get("prop1"));
+		Assert.assertEquals(2, decoded.getApplicationProperties().getValue().get("prop2"));
+		Assert.assertEquals("my_symbol", decoded.getMessageAnnotations().getValue().get(Symbol.valueOf("x-opt-ann")));
+		Assert.assertEquals(new Binary("payload".getBytes()), ((Data) decoded.getBody()).getValue());
+		
+		// AMQP value body
+		message.setBody(new AmqpValue(Arrays.asList("a", 1L, true)));
+		record = converter.toKafkaRecord("my_topic", message);
+		decoded = converter.toAmqpMessage("my_topic",
+				new ConsumerRecord<>("my_topic", 1, 0, "my_key", record.value()));
+		
+		Assert.assertEquals(Arrays.asList("a", 1, true), ((AmqpValue) decoded.getBody()).getValue());
+	}
+	
+	@Test
+	public void jsonMessageConverterFieldsOrder() {
+		
+		MessageConverter<String, byte[]> converter = new JsonMessageConverter();
+		
+		// section before type and unknown fields
+		String json = "{\"unknown\":{\"a\":[1,2]},\"body\":{\"section\":\"" +
+				Base64.getEncoder().encodeToString("payload".getBytes()) + "\",\"type\":\"binary\"}," +
+				"\"properties\":{\"to\":\"my_address\",\"correlationId\":5}}";
+		
+		Message decoded = converter.toAmqpMessage("my_topic",
+				new ConsumerRecord<>("my_topic", 0, 10, null, json.getBytes()));
+		
+		Assert.assertEquals("my_address", decoded.getAddress());
+		Assert.assertEquals(5, decoded.getCorrelationId());
+		Assert.assertEquals(10L, decoded.getMessageAnnotations().getValue().get(Symbol.valueOf(Bridge.AMQP_OFFSET_ANNOTATION)));
+		Assert.assertEquals(new Binary("payload".getBytes()), ((Data) decoded.getBody()).getValue());
+	}
+	
+	@Test
+	public void jsonMessageConverterLegacyData() {
+		
+		MessageConverter<String, byte[]> converter = new JsonMessageConverter();
+		
+		// Data section as encoded by the previous versions (Base64 encoded twice)
+		JsonObject json = new JsonObject()
+				.put(JsonMessageConverter.PROPERTIES, new JsonObject().put(JsonMessageConverter.TO, "my_address"))
+				.put(JsonMessageConverter.BODY, new JsonObject()
+						.put(JsonMessageConverter.SECTION_TYPE, JsonMessageConverter.SECTION_DATA_TYPE)
+						.put(JsonMessageConverter.SECTION, Base64.getEncoder().encode("payload".getBytes())));
+		
+		Message decoded = converter.toAmqpMessage("my_topic",
+				new ConsumerRecord<>("my_topic", 0, 10, null, json.encode().getBytes()));
+		
+		Assert.assertEquals("my_address", decoded.getAddress());
+		Assert.assertEquals(new Binary("payload".getBytes()), ((Data) decoded.getBody()).getValue());
+		
+		// same record with the section before the type
+		String reordered = "{\"body\":{\"section\":\"" +
+				Base64.getEncoder().encodeToString(Base64.getEncoder().encode("payload".getBytes())) + "\",\"type\":\"data\"}}";
+		
+		decoded = converter.toAmqpMessage("my_topic",
+				new ConsumerRecord<>("my_topic", 0, 10, null, reordered.getBytes()));
+		
+		Assert.assertEquals(new Binary("payload".getBytes()), ((Data) decoded.getBody()).getValue());
+	}
+	
+	@Test
+	public void messageConverterReusedMessage() {
+		
+		MessageConverter<String, byte[]> converter = new JsonMessageConverter();
+		
+		String json = "{\"properties\":{\"subject\":\"my_subject\"},\"messageAnnotations\":{\"x-opt-ann\":\"a\"}}";
+		
+		Message message = Proton.message();
+		Message decoded = converter.toAmqpMessage("my_topic",
+				new ConsumerRecord<>("my_topic", 0, 10, "my_key", json.getBytes()), message);
+		
+		Assert.assertSame(message, decoded);
+		Assert.assertEquals("my_subject", decoded.getSubject());
+		Map<Symbol, Object> annotations = decoded.getMessageAnnotations().getValue();
+		
+		// nothing left from the previous record, the annotations are reused
+		decoded = converter.toAmqpMessage("my_topic",
+				new ConsumerRecord<>("my_topic", 1, 11, null, "{}".getBytes()), message);
+		
+		Assert.assertSame(message, decoded);
+		Assert.assertNull(decoded.getSubject());
+		Assert.assertSame(annotations, decoded.getMessageAnnotations().getValue());
+		Assert.assertEquals(3, annotations.size());
+		Assert.assertEquals(11L, annotations.get(Symbol.valueOf(Bridge.AMQP_OFFSET_ANNOTATION)));
+		Assert.assertNull(annotations.get(Symbol.valueOf(Bridge.AMQP_KEY_ANNOTATION)));
+	}
+	
+	@Test
+	public void envelopeMessageConverterRoundTrip() {
+		
+		MessageConverter<String, byte[]> converter = new EnvelopeMessageConverter();
+		
+		Map<String, Object> applicationProperties = new HashMap<>();
+		applicationProperties.put("prop1", "value1");
+		applicationProperties.put("prop2", new UnsignedInteger(2));
+		
+		Map<Symbol, Object> annotations = new HashMap<>();
+		annotations.put(Symbol.valueOf(Bridge.AMQP_PARTITION_ANNOTATION), 1);
+		annotations.put(Symbol.valueOf(Bridge.AMQP_KEY_ANNOTATION), "my_key");
+		annotations.put(Symbol.valueOf("x-opt-ann"), Symbol.valueOf("my_symbol"));
+		
+		byte[] payload = new byte[1024];
+		Arrays.fill(payload, (byte) 7);
+		
+		Message message = Proton.message();
+		message.setAddress("my_topic");
+		message.setMessageId("my_id");
+		message.setSubject("my_subject");
+		message.setCorrelationId(5L);
+		message.setApplicationProperties(new ApplicationProperties(applicationProperties));
+		message.setMessageAnnotations(new MessageAnnotations(annotations));
+		message.setBody(new Data(new Binary(payload)));
+		
+		ProducerRecord<String, byte[]> record = converter.toKafkaRecord("my_topic", message);
+		
+		Assert.assertEquals(Integer.valueOf(1), record.partition());
+		Assert.assertEquals("my_key", record.key());
+		// no Base64 inflation of the binary body
+		Assert.assertTrue(record.value().length < new JsonMessageConverter().toKafkaRecord("my_topic", message).value().length);
+		
+		Message decoded = converter.toAmqpMessage("my_topic",
+				new ConsumerRecord<>("my_topic", 1, 10, "my_key", record.value()));
+		
+		Assert.assertEquals("my_id", decoded.getMessageId());
+		Assert.assertEquals("my_subject", decoded.getSubject());
+		Assert.assertEquals(5L, decoded.getCorrelationId());
+		Assert.assertEquals("my_topic", decoded.getAddress());
+		Assert.assertEquals(applicationProperties, decoded.getApplicationProperties().getValue());
+		Assert.assertEquals(Symbol.valueOf("my_symbol"), decoded.getMessageAnnotations().getValue().get(Symbol.valueOf("x-opt-ann")));
+		Assert.assertEquals(10L, decoded.getMessageAnnotations().getValue().get(Symbol.valueOf(Bridge.AMQP_OFFSET_ANNOTATION)));
+		
+		// the body is a slice of the record value
+		Binary body = ((Data) decoded.getBody()).getValue();
+		Assert.assertSame(record.value(), body.getArray());
+		Assert.assertEquals(new Binary(payload), body);
+		
+		// AMQP value body, with its type
+		message.setBody(new AmqpValue(Arrays.asList("a", 1L, true)));
+		record = converter.toKafkaRecord("my_topic", message);
+		decoded = converter.toAmqpMessage("my_topic",
+				new ConsumerRecord<>("my_topic", 1, 11, "my_key", record.value()), decoded);
+		
+		Assert.assertEquals(Arrays.asList("a", 1L, true), ((AmqpValue) decoded.getBody()).getValue());
+		Assert.assertEquals("my_id", decoded.getMessageId());
+	}
+	
+	@Test
+	public void envelopeMessageConverterMalformed() {
+		
+		MessageConverter<String, byte[]> converter = new EnvelopeMessageConverter();
+		
+		// application properties section which can't be decoded, followed by the body
+		byte[] value = new byte[] {
+				EnvelopeMessageConverter.MAGIC, EnvelopeMessageConverter.VERSION,
+				EnvelopeMessageConverter.APPLICATION_PROPERTIES, 0, 0, 0, 1, (byte) 0xFF,
+				EnvelopeMessageConverter.BODY_DATA, 0, 0, 0, 3, 'a', 'b', 'c',
+				EnvelopeMessageConverter.PROPERTIES, 0, 0, 0, 100 };
+		
+		Message message = converter.toAmqpMessage("my_topic", new ConsumerRecord<>("my_topic", 1, 10, "my_key", value));
+		
+		Assert.assertNull(message.getApplicationProperties());
+		Assert.assertEquals(new Binary("abc".getBytes()), ((Data) message.getBody()).getValue());
+		Assert.assertEquals("my_topic", message.getAddress());
+		Assert.assertEquals(10L, message.getMessageAnnotations().getValue().get(Symbol.valueOf(Bridge.AMQP_OFFSET_ANNOTATION)));
+		
+		// not an envelope at all, delivered as binary
+		message = converter.toAmqpMessage("my_topic", new ConsumerRecord<>("my_topic", 1, 11, "my_key", "payload".getBytes()), message);
+		
+		Assert.assertEquals(new Binary("payload".getBytes()), ((Data) message.getBody()).getValue());
+		Assert.assertEquals(11L, message.getMessageAnnotations().getValue().get(Symbol.valueOf(Bridge.AMQP_OFFSET_ANNOTATION)));
+	}
+	
+	@Test
+	public void headersMessageConverterMalformed() {
+		
+		MessageConverter<String, byte[]> converter = new HeadersMessageConverter();
+		
+		RecordHeaders headers = new RecordHeaders();
+		// a value which isn't an AMQP properties section
+		headers.add(HeadersMessageConverter.PROPERTIES_HEADER, AmqpSectionCodec.encodeValue("my_properties"));
+		headers.add(HeadersMessageConverter.APPLICATION_PROPERTY_HEADER_PREFIX + "prop1", new byte[] { (byte) 0xFF });
+		headers.add(HeadersMessageConverter.APPLICATION_PROPERTY_HEADER_PREFIX + "prop2", AmqpSectionCodec.encodeValue(2L));
+		headers.add(HeadersMessageConverter.MESSAGE_ANNOTATION_HEADER_PREFIX + "x-opt-ann", new byte[] { (byte) 0xFF });
+		
+		Message message = converter.toAmqpMessage("my_topic",
+				new ConsumerRecord<>("my_topic", 1, 10, 0L, TimestampType.CREATE_TIME, null, 0, 0,
+						"my_key", "payload".getBytes(), headers));
+		
+		Assert.assertEquals("my_topic", message.getAddress());
+		Assert.assertNull(message.getMessageId());
+		Assert.assertEquals(Collections.singletonMap("prop2", 2L), message.getApplicationProperties().getValue());
+		Assert.assertFalse(message.getMessageAnnotations().getValue().containsKey(Symbol.valueOf("x-opt-ann")));
+		Assert.assertEquals(10L, message.getMessageAnnotations().getValue().get(Symbol.valueOf(Bridge.AMQP_OFFSET_ANNOTATION)));
+		Assert.assertEquals(new Binary("payload".getBytes()), ((Data) message.getBody()).getValue());
+	}
+	
+	@Test
+	public void headersMessageConverterRoundTrip() {
+		
+		MessageConverter<String, byte[]> converter = new HeadersMessageConverter();
+		
+		Map<String, Object> applicationProperties = new HashMap<>();
+		applicationProperties.put("prop1", "value1");
+		applicationProperties.put("prop2", 2L);
+		
+		Map<Symbol, Object> annotations = new HashMap<>();
+		annotations.put(Symbol.valueOf(Bridge.AMQP_KEY_ANNOTATION), "my_key");
+		annotations.put(Symbol.valueOf("x-opt-ann"), Symbol.valueOf("my_symbol"));
+		
+		Message message = Proton.message();
+		message.setAddress("my_topic");
+		message.setMessageId("my_id");
+		message.setSubject("my_subject");
+		message.setApplicationProperties(new ApplicationProperties(applicationProperties));
+		message.setMessageAnnotations(new MessageAnnotations(annotations));
+		message.setBody(new Data(new Binary("payload".getBytes())));
+		
+		ProducerRecord<String, byte[]> record = converter.toKafkaRecord("my_topic", message);
+		
+		// the body is the Kafka record value, as is
+		Assert.assertEquals("my_key", record.key());
+		Assert.assertArrayEquals("payload".getBytes(), record.value());
+		Assert.assertNotNull(record.headers().lastHeader(HeadersMessageConverter.APPLICATION_PROPERTY_HEADER_PREFIX + "prop1"));
+		Assert.assertNull(record.headers().lastHeader(HeadersMessageConverter.MESSAGE_ANNOTATION_HEADER_PREFIX + Bridge.AMQP_KEY_ANNOTATION));
+		
+		Message decoded = converter.toAmqpMessage("my_topic",
+				new ConsumerRecord<>("my_topic", 1, 10, 0L, TimestampType.CREATE_TIME, null, 0, 0,
+						"my_key", record.value(), record.headers()));
+		
+		Assert.assertEquals("my_id", decoded.getMessageId());
+		Assert.assertEquals("my_subject", decoded.getSubject());
+		Assert.assertEquals(applicationProperties, decoded.getApplicationProperties().getValue());
+		Assert.assertEquals(Symbol.valueOf("my_symbol"), decoded.getMessageAnnotations().getValue().get(Symbol.valueOf("x-opt-ann")));
+		Assert.assertEquals("my_key", decoded.getMessageAnnotations().getValue().get(Symbol.valueOf(Bridge.AMQP_KEY_ANNOTATION)));
+		Assert.assertEquals(new Binary("payload".getBytes()), ((Data) decoded.getBody()).getValue());
+	}
+	
+	@Test
+	public void binaryKeyMessageConverterRoundTrip() {
+		
+		MessageConverter<byte[], byte[]> converter = new BinaryKeyMessageConverter();
+		
+		// not a valid UTF-8 sequence
+		byte[] key = new byte[] { (byte) 0xff, (byte) 0xfe, 0x00, (byte) 0x80 };
+		
+		Map<Symbol, Object> annotations = new HashMap<>();
+		annotations.put(Symbol.valueOf(Bridge.AMQP_KEY_ANNOTATION), new Binary(key));
+		
+		Message message = Proton.message();
+		message.setMessageAnnotations(new MessageAnnotations(annotations));
+		message.setBody(new Data(new Binary("payload".getBytes())));
+		
+		ProducerRecord<byte[], byte[]> record = converter.toKafkaRecord("my_topic", message);
+		
+		// the key bytes, as is
+		Assert.assertSame(key, record.key());
+		Assert.assertArrayEquals("payload".getBytes(), record.value());
+		
+		Message decoded = converter.toAmqpMessage("my_topic",
+				new ConsumerRecord<>("my_topic", 0, 0, record.key(), record.value()));
+		
+		Assert.assertEquals(new Binary(key), decoded.getMessageAnnotations().getValue().get(Symbol.valueOf(Bridge.AMQP_KEY_ANNOTATION)));
+		
+		// a String key is accepted as UTF-8 bytes
+		annotations.put(Symbol.valueOf(Bridge.AMQP_KEY_ANNOTATION), "my_key");
+		Assert.assertArrayEquals("my_key".getBytes(), converter.toKafkaRecord("my_topic", message).key());
+		
+		// the key annotation can be sent on the AMQP link
+		Assert.assertTrue(decoded.encode(new byte[1024], 0, 1024) > 0);
+	}
+}
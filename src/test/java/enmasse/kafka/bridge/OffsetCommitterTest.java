@@ -0,0 +1,150 @@
+/*
+ * Copyright 2016 Red Hat Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package enmasse.kafka.bridge;
+
+import enmasse.kafka.bridge.tracker.FullOffsetTracker;
+import enmasse.kafka.bridge.tracker.OffsetTracker;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.consumer.OffsetCommitCallback;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Queue;
+
+public class OffsetCommitterTest {
+
+	private TopicPartition partition = new TopicPartition("my_topic", 0);
+	private MockConsumer<String, byte[]> consumer;
+	private OffsetTracker<String, byte[]> offsetTracker;
+
+	@Before
+	public void before() {
+
+		this.consumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+		this.consumer.assign(Collections.singletonList(this.partition));
+		this.offsetTracker = new FullOffsetTracker<>("my_topic");
+	}
+
+	private void settle(long from, long to) {
+
+		for (long offset = from; offset < to; offset++) {
+			this.offsetTracker.track(0, offset);
+			this.offsetTracker.delivered(0, offset);
+		}
+	}
+
+	@Test
+	public void coalescedByCount() {
+
+		OffsetCommitter<String, byte[]> committer = new OffsetCommitter<>(this.consumer, this.offsetTracker, 10, 60000);
+
+		// nothing settled, nothing to commit
+		committer.commit();
+		Assert.assertNull(this.consumer.committed(this.partition));
+
+		// first offsets for the partition are committed immediately
+		this.settle(0, 1);
+		committer.commit();
+		Assert.assertEquals(1, this.consumer.committed(this.partition).offset());
+
+		// coalesced until 10 records are settled
+		this.settle(1, 6);
+		committer.commit();
+		Assert.assertEquals(1, this.consumer.committed(this.partition).offset());
+
+		this.settle(6, 11);
+		committer.commit();
+		Assert.assertEquals(11, this.consumer.committed(this.partition).offset());
+		Assert.assertEquals(2, committer.commits());
+		Assert.assertTrue(this.offsetTracker.getOffsets().isEmpty());
+
+		// the synchronous commit doesn't wait for the count
+		this.settle(11, 13);
+		committer.commitSync();
+		Assert.assertEquals(13, this.consumer.committed(this.partition).offset());
+		Assert.assertEquals(3, committer.commits());
+	}
+
+	@Test
+	public void coalescedByTime() throws InterruptedException {
+
+		OffsetCommitter<String, byte[]> committer = new OffsetCommitter<>(this.consumer, this.offsetTracker, 1000, 50);
+
+		this.settle(0, 1);
+		committer.commit();
+		Assert.assertEquals(1, this.consumer.committed(this.partition).offset());
+
+		this.settle(1, 3);
+		committer.commit();
+		Assert.assertEquals(1, this.consumer.committed(this.partition).offset());
+
+		Thread.sleep(60);
+		committer.commit();
+		Assert.assertEquals(3, this.consumer.committed(this.partition).offset());
+	}
+
+	@Test
+	public void commitAfterRevocationIgnored() {
+
+		// asynchronous commits completed on request
+		Queue<Map<TopicPartition, OffsetAndMetadata>> pending = new LinkedList<>();
+		Queue<OffsetCommitCallback> callbacks = new LinkedList<>();
+		MockConsumer<String, byte[]> consumer = new MockConsumer<String, byte[]>(OffsetResetStrategy.EARLIEST) {
+
+			@Override
+			public synchronized void commitAsync(Map<TopicPartition, OffsetAndMetadata> offsets, OffsetCommitCallback callback) {
+				pending.add(offsets);
+				callbacks.add(callback);
+			}
+
+			@Override
+			public synchronized void commitSync(Map<TopicPartition, OffsetAndMetadata> offsets) {
+				// the mock synchronous commit is done through the asynchronous one
+				super.commitAsync(offsets, null);
+			}
+		};
+		consumer.assign(Collections.singletonList(this.partition));
+
+		OffsetCommitter<String, byte[]> committer = new OffsetCommitter<>(consumer, this.offsetTracker, 10, 60000);
+
+		this.settle(0, 1);
+		committer.commit();
+		Assert.assertEquals(1, pending.size());
+
+		// partitions revoked while the commit is in flight
+		committer.commitSync();
+		this.offsetTracker.clear();
+		Assert.assertEquals(1, consumer.committed(this.partition).offset());
+
+		// the late callback doesn't mark the partition as committed again
+		callbacks.remove().onComplete(pending.remove(), null);
+		Assert.assertEquals(1, committer.commits());
+
+		// partition assigned again, its first offsets are committed immediately
+		this.settle(1, 2);
+		committer.commit();
+		Assert.assertEquals(1, pending.size());
+	}
+}
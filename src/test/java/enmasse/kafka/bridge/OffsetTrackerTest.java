@@ -16,8 +16,11 @@
 
 package enmasse.kafka.bridge;
 
+import enmasse.kafka.bridge.config.AmqpConfigProperties;
+import enmasse.kafka.bridge.tracker.DeliveryTag;
 import enmasse.kafka.bridge.tracker.FullOffsetTracker;
 import enmasse.kafka.bridge.tracker.OffsetTracker;
+import enmasse.kafka.bridge.tracker.OffsetTrackerFactory;
 import enmasse.kafka.bridge.tracker.SimpleOffsetTracker;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.clients.consumer.OffsetAndMetadata;
@@ -57,47 +60,46 @@ public class OffsetTrackerTest {
 		OffsetTracker<String, byte[]> offsetTracker  = new FullOffsetTracker<>("my_topic");
 		
 		for (ConsumerRecord<String, byte[]> record : this.records) {
-			String deliveryTag = String.format("%s_%s", record.partition(), record.offset());
-			offsetTracker.track(deliveryTag, record);
+			offsetTracker.track(record.partition(), record.offset());
 		}
 		
 		LOG.info("0_2 deliverd");
-		offsetTracker.delivered("0_2");
+		offsetTracker.delivered(0, 2);
 		this.offsets = offsetTracker.getOffsets();
 		printOffsetsToCommit(this.offsets);
 		offsetTracker.commit(this.offsets);
 		Assert.assertTrue(this.offsets.isEmpty());
 		
 		LOG.info("0_3 deliverd");
-		offsetTracker.delivered("0_3");
+		offsetTracker.delivered(0, 3);
 		this.offsets = offsetTracker.getOffsets();
 		printOffsetsToCommit(this.offsets);
 		offsetTracker.commit(this.offsets);
 		Assert.assertTrue(this.offsets.isEmpty());
 		
 		LOG.info("0_0 deliverd");
-		offsetTracker.delivered("0_0");
+		offsetTracker.delivered(0, 0);
 		this.offsets = offsetTracker.getOffsets();
 		printOffsetsToCommit(this.offsets);
 		offsetTracker.commit(this.offsets);
 		Assert.assertTrue(this.offsets.get(new TopicPartition("my_topic", 0)).offset() == 0);
 		
 		LOG.info("0_1 deliverd");
-		offsetTracker.delivered("0_1");
+		offsetTracker.delivered(0, 1);
 		this.offsets = offsetTracker.getOffsets();
 		printOffsetsToCommit(this.offsets);
 		offsetTracker.commit(this.offsets);
 		Assert.assertTrue(this.offsets.get(new TopicPartition("my_topic", 0)).offset() == 3);
 		
 		LOG.info("0_4 deliverd");
-		offsetTracker.delivered("0_4");
+		offsetTracker.delivered(0, 4);
 		this.offsets = offsetTracker.getOffsets();
 		printOffsetsToCommit(this.offsets);
 		offsetTracker.commit(this.offsets);
 		Assert.assertTrue(this.offsets.get(new TopicPartition("my_topic", 0)).offset() == 4);
 		
 		LOG.info("0_5 deliverd");
-		offsetTracker.delivered("0_5");
+		offsetTracker.delivered(0, 5);
 		this.offsets = offsetTracker.getOffsets();
 		printOffsetsToCommit(this.offsets);
 		offsetTracker.commit(this.offsets);
@@ -112,47 +114,46 @@ public class OffsetTrackerTest {
 		OffsetTracker<String, byte[]> offsetTracker  = new FullOffsetTracker<>("my_topic");
 		
 		for (ConsumerRecord<String, byte[]> record : this.records) {
-			String deliveryTag = String.format("%s_%s", record.partition(), record.offset());
-			offsetTracker.track(deliveryTag, record);
+			offsetTracker.track(record.partition(), record.offset());
 		}
 		
 		LOG.info("0_0 deliverd");
-		offsetTracker.delivered("0_0");
+		offsetTracker.delivered(0, 0);
 		this.offsets = offsetTracker.getOffsets();
 		printOffsetsToCommit(this.offsets);
 		offsetTracker.commit(this.offsets);
 		Assert.assertTrue(this.offsets.get(new TopicPartition("my_topic", 0)).offset() == 0);
 		
 		LOG.info("0_1 deliverd");
-		offsetTracker.delivered("0_1");
+		offsetTracker.delivered(0, 1);
 		this.offsets = offsetTracker.getOffsets();
 		printOffsetsToCommit(this.offsets);
 		offsetTracker.commit(this.offsets);
 		Assert.assertTrue(this.offsets.get(new TopicPartition("my_topic", 0)).offset() == 1);
 		
 		LOG.info("0_2 deliverd");
-		offsetTracker.delivered("0_2");
+		offsetTracker.delivered(0, 2);
 		this.offsets = offsetTracker.getOffsets();
 		printOffsetsToCommit(this.offsets);
 		offsetTracker.commit(this.offsets);
 		Assert.assertTrue(this.offsets.get(new TopicPartition("my_topic", 0)).offset() == 2);
 		
 		LOG.info("0_3 deliverd");
-		offsetTracker.delivered("0_3");
+		offsetTracker.delivered(0, 3);
 		this.offsets = offsetTracker.getOffsets();
 		printOffsetsToCommit(this.offsets);
 		offsetTracker.commit(this.offsets);
 		Assert.assertTrue(this.offsets.get(new TopicPartition("my_topic", 0)).offset() == 3);
 		
 		LOG.info("0_4 deliverd");
-		offsetTracker.delivered("0_4");
+		offsetTracker.delivered(0, 4);
 		this.offsets = offsetTracker.getOffsets();
 		printOffsetsToCommit(this.offsets);
 		offsetTracker.commit(this.offsets);
 		Assert.assertTrue(this.offsets.get(new TopicPartition("my_topic", 0)).offset() == 4);
 		
 		LOG.info("0_5 deliverd");
-		offsetTracker.delivered("0_5");
+		offsetTracker.delivered(0, 5);
 		this.offsets = offsetTracker.getOffsets();
 		printOffsetsToCommit(this.offsets);
 		offsetTracker.commit(this.offsets);
@@ -167,47 +168,46 @@ public class OffsetTrackerTest {
 		OffsetTracker<String, byte[]> offsetTracker  = new SimpleOffsetTracker<>("my_topic");
 		
 		for (ConsumerRecord<String, byte[]> record : records) {
-			String deliveryTag = String.format("%s_%s", record.partition(), record.offset());
-			offsetTracker.track(deliveryTag, record);
+			offsetTracker.track(record.partition(), record.offset());
 		}
 		
 		LOG.info("0_2 deliverd");
-		offsetTracker.delivered("0_2");
+		offsetTracker.delivered(0, 2);
 		this.offsets = offsetTracker.getOffsets();
 		printOffsetsToCommit(this.offsets);
 		offsetTracker.commit(this.offsets);
 		Assert.assertTrue(this.offsets.get(new TopicPartition("my_topic", 0)).offset() == 2);
 		
 		LOG.info("0_3 deliverd");
-		offsetTracker.delivered("0_3");
+		offsetTracker.delivered(0, 3);
 		this.offsets = offsetTracker.getOffsets();
 		printOffsetsToCommit(this.offsets);
 		offsetTracker.commit(this.offsets);
 		Assert.assertTrue(this.offsets.get(new TopicPartition("my_topic", 0)).offset() == 3);
 		
 		LOG.info("0_0 deliverd");
-		offsetTracker.delivered("0_0");
+		offsetTracker.delivered(0, 0);
 		this.offsets = offsetTracker.getOffsets();
 		printOffsetsToCommit(this.offsets);
 		offsetTracker.commit(this.offsets);
 		Assert.assertTrue(this.offsets.isEmpty());
 		
 		LOG.info("0_1 deliverd");
-		offsetTracker.delivered("0_1");
+		offsetTracker.delivered(0, 1);
 		this.offsets = offsetTracker.getOffsets();
 		printOffsetsToCommit(this.offsets);
 		offsetTracker.commit(this.offsets);
 		Assert.assertTrue(this.offsets.isEmpty());
 		
 		LOG.info("0_4 deliverd");
-		offsetTracker.delivered("0_4");
+		offsetTracker.delivered(0, 4);
 		this.offsets = offsetTracker.getOffsets();
 		printOffsetsToCommit(this.offsets);
 		offsetTracker.commit(this.offsets);
 		Assert.assertTrue(this.offsets.get(new TopicPartition("my_topic", 0)).offset() == 4);
 		
 		LOG.info("0_5 deliverd");
-		offsetTracker.delivered("0_5");
+		offsetTracker.delivered(0, 5);
 		this.offsets = offsetTracker.getOffsets();
 		printOffsetsToCommit(this.offsets);
 		offsetTracker.commit(this.offsets);
@@ -222,47 +222,46 @@ public class OffsetTrackerTest {
 		OffsetTracker<String, byte[]> offsetTracker  = new SimpleOffsetTracker<>("my_topic");
 		
 		for (ConsumerRecord<String, byte[]> record : records) {
-			String deliveryTag = String.format("%s_%s", record.partition(), record.offset());
-			offsetTracker.track(deliveryTag, record);
+			offsetTracker.track(record.partition(), record.offset());
 		}
 		
 		LOG.info("0_0 deliverd");
-		offsetTracker.delivered("0_0");
+		offsetTracker.delivered(0, 0);
 		this.offsets = offsetTracker.getOffsets();
 		printOffsetsToCommit(this.offsets);
 		offsetTracker.commit(this.offsets);
 		Assert.assertTrue(this.offsets.get(new TopicPartition("my_topic", 0)).offset() == 0);
 		
 		LOG.info("0_1 deliverd");
-		offsetTracker.delivered("0_1");
+		offsetTracker.delivered(0, 1);
 		this.offsets = offsetTracker.getOffsets();
 		printOffsetsToCommit(this.offsets);
 		offsetTracker.commit(this.offsets);
 		Assert.assertTrue(this.offsets.get(new TopicPartition("my_topic", 0)).offset() == 1);
 		
 		LOG.info("0_2 deliverd");
-		offsetTracker.delivered("0_2");
+		offsetTracker.delivered(0, 2);
 		this.offsets = offsetTracker.getOffsets();
 		printOffsetsToCommit(this.offsets);
 		offsetTracker.commit(this.offsets);
 		Assert.assertTrue(this.offsets.get(new TopicPartition("my_topic", 0)).offset() == 2);
 		
 		LOG.info("0_3 deliverd");
-		offsetTracker.delivered("0_3");
+		offsetTracker.delivered(0, 3);
 		this.offsets = offsetTracker.getOffsets();
 		printOffsetsToCommit(this.offsets);
 		offsetTracker.commit(this.offsets);
 		Assert.assertTrue(this.offsets.get(new TopicPartition("my_topic", 0)).offset() == 3);
 		
 		LOG.info("0_4 deliverd");
-		offsetTracker.delivered("0_4");
+		offsetTracker.delivered(0, 4);
 		this.offsets = offsetTracker.getOffsets();
 		printOffsetsToCommit(this.offsets);
 		offsetTracker.commit(this.offsets);
 		Assert.assertTrue(this.offsets.get(new TopicPartition("my_topic", 0)).offset() == 4);
 		
 		LOG.info("0_5 deliverd");
-		offsetTracker.delivered("0_5");
+		offsetTracker.delivered(0, 5);
 		this.offsets = offsetTracker.getOffsets();
 		printOffsetsToCommit(this.offsets);
 		offsetTracker.commit(this.offsets);
@@ -271,9 +270,120 @@ public class OffsetTrackerTest {
 		offsetTracker.clear();
 	}
 	
+	@Test
+	public void fullOffsetTrackerWindow() {
+		
+		OffsetTracker<String, byte[]> offsetTracker  = new FullOffsetTracker<>("my_topic");
+		TopicPartition partition = new TopicPartition("my_topic", 0);
+		
+		// a gap in the offsets (i.e. compacted topic) and more offsets than the initial window
+		for (long offset = 100; offset < 5000; offset++) {
+			if (offset < 200 || offset >= 300)
+				offsetTracker.track(0, offset);
+		}
+		
+		// all settled in reverse order but the first one
+		for (long offset = 4999; offset > 100; offset--) {
+			offsetTracker.delivered(0, offset);
+		}
+		Assert.assertTrue(offsetTracker.getOffsets().isEmpty());
+		
+		offsetTracker.delivered(0, 100);
+		this.offsets = offsetTracker.getOffsets();
+		offsetTracker.commit(this.offsets);
+		Assert.assertTrue(this.offsets.get(partition).offset() == 4999);
+		Assert.assertTrue(offsetTracker.getOffsets().isEmpty());
+		
+		// unsettled offset in the middle of a word
+		for (long offset = 5000; offset < 5200; offset++) {
+			offsetTracker.track(0, offset);
+		}
+		for (long offset = 5000; offset < 5200; offset++) {
+			if (offset != 5130)
+				offsetTracker.delivered(0, offset);
+		}
+		this.offsets = offsetTracker.getOffsets();
+		offsetTracker.commit(this.offsets);
+		Assert.assertTrue(this.offsets.get(partition).offset() == 5129);
+		
+		offsetTracker.delivered(0, 5130);
+		this.offsets = offsetTracker.getOffsets();
+		Assert.assertTrue(this.offsets.get(partition).offset() == 5199);
+		
+		offsetTracker.clear();
+	}
+	
+	@Test
+	public void fullOffsetTrackerConcurrent() throws InterruptedException {
+		
+		OffsetTracker<String, byte[]> offsetTracker  = new FullOffsetTracker<>("my_topic");
+		TopicPartition partition = new TopicPartition("my_topic", 0);
+		
+		// the event loop role : tracking and settling out of order, in pairs
+		Thread writer = new Thread(() -> {
+			for (long offset = 0; offset < 100000; offset += 2) {
+				offsetTracker.track(0, offset);
+				offsetTracker.track(0, offset + 1);
+				offsetTracker.delivered(0, offset + 1);
+				offsetTracker.delivered(0, offset);
+			}
+		});
+		writer.start();
+		
+		// the Kafka consumer thread role : committed offsets never go back
+		long committed = -1;
+		boolean done;
+		do {
+			done = !writer.isAlive();
+			this.offsets = offsetTracker.getOffsets();
+			if (!this.offsets.isEmpty()) {
+				long offset = this.offsets.get(partition).offset();
+				Assert.assertTrue(offset > committed);
+				Assert.assertTrue(offset % 2 == 1);
+				offsetTracker.commit(this.offsets);
+				committed = offset;
+			}
+		} while (!done);
+		writer.join();
+		Assert.assertEquals(99999, committed);
+		Assert.assertTrue(offsetTracker.getOffsets().isEmpty());
+		
+		offsetTracker.clear();
+	}
+	
+	@Test
+	public void deliveryTag() {
+		
+		byte[] tag = DeliveryTag.tag(3, 5L);
+		Assert.assertEquals(DeliveryTag.SIZE, tag.length);
+		Assert.assertEquals(3, DeliveryTag.partition(tag));
+		Assert.assertEquals(5L, DeliveryTag.offset(tag));
+		
+		tag = DeliveryTag.tag(Integer.MAX_VALUE, Long.MAX_VALUE);
+		Assert.assertEquals(Integer.MAX_VALUE, DeliveryTag.partition(tag));
+		Assert.assertEquals(Long.MAX_VALUE, DeliveryTag.offset(tag));
+	}
+	
 	private void printOffsetsToCommit(Map<TopicPartition, OffsetAndMetadata> offsets) {
 		for (Entry<TopicPartition, OffsetAndMetadata> entry : offsets.entrySet()) {
 			LOG.info("Committed {} - {} [{}]", entry.getKey().topic(), entry.getKey().partition(), entry.getValue().offset());
 		}
 	}
+	
+	@Test
+	public void offsetTrackerFactory() {
+		
+		OffsetTrackerFactory factory = new OffsetTrackerFactory(new AmqpConfigProperties()
+				.setOffsetTracker(SimpleOffsetTracker.class.getName()));
+		
+		OffsetTracker<String, byte[]> first = factory.create("my_topic");
+		Assert.assertTrue(first instanceof SimpleOffsetTracker);
+		Assert.assertNotSame(first, factory.create("my_topic"));
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void offsetTrackerFactoryNotOffsetTracker() {
+		
+		new OffsetTrackerFactory(new AmqpConfigProperties().setOffsetTracker(String.class.getName()));
+	}
 }
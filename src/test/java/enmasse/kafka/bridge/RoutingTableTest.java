@@ -0,0 +1,85 @@
+/*
+ * Copyright 2016 Red Hat Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package enmasse.kafka.bridge;
+
+import enmasse.kafka.bridge.converter.ConverterRegistry;
+import enmasse.kafka.bridge.converter.DefaultMessageConverter;
+import enmasse.kafka.bridge.converter.RawMessageConverter;
+import enmasse.kafka.bridge.routing.Route;
+import enmasse.kafka.bridge.routing.RoutingTable;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RoutingTableTest {
+
+	private static final ConverterRegistry CONVERTER_REGISTRY = new ConverterRegistry(
+			"enmasse.kafka.bridge.converter.DefaultMessageConverter",
+			"metrics/*=enmasse.kafka.bridge.converter.RawMessageConverter");
+
+	@Test
+	public void noRoutes() {
+
+		RoutingTable routingTable = new RoutingTable(null, CONVERTER_REGISTRY);
+
+		Route route = routingTable.route("my/topic");
+		Assert.assertEquals("my.topic", route.topic());
+		Assert.assertNull(route.partition());
+		Assert.assertEquals(DefaultMessageConverter.class, route.converter().getClass());
+
+		// resolved once
+		Assert.assertSame(route, routingTable.route("my/topic"));
+
+		// not a legal topic name
+		Assert.assertNull(routingTable.route("my topic"));
+		Assert.assertNull(routingTable.route(null));
+	}
+
+	@Test
+	public void routes() {
+
+		RoutingTable routingTable = new RoutingTable(
+				"tenant1/*/*=t1.*.*, sensors/*=sensors, audit=audit@3, metrics/*=metrics.*", CONVERTER_REGISTRY);
+
+		// prefix rewriting
+		Assert.assertEquals("t1.orders.eu", routingTable.route("tenant1/orders/eu").topic());
+
+		// topics fan-in
+		Assert.assertEquals("sensors", routingTable.route("sensors/temperature").topic());
+		Assert.assertEquals("sensors", routingTable.route("sensors/humidity").topic());
+
+		// fixed partition
+		Assert.assertEquals(Integer.valueOf(3), routingTable.route("audit").partition());
+
+		// converter by address
+		Assert.assertEquals(RawMessageConverter.class, routingTable.route("metrics/cpu").converter().getClass());
+
+		// unroutable
+		Assert.assertNull(routingTable.route("orders"));
+		Assert.assertNull(routingTable.route("audit/logins"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void invalidPartition() {
+		new RoutingTable("audit=audit@first", CONVERTER_REGISTRY);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void invalidWildcards() {
+		new RoutingTable("audit=audit.*", CONVERTER_REGISTRY);
+	}
+}
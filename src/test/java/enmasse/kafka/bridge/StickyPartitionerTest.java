@@ -0,0 +1,118 @@
+/*
+ * Copyright 2016 Red Hat Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package enmasse.kafka.bridge;
+
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.internals.DefaultPartitioner;
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.Node;
+import org.apache.kafka.common.PartitionInfo;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class StickyPartitionerTest {
+
+	private static final String TOPIC = "my_topic";
+	private static final int PARTITIONS = 6;
+
+	private Cluster cluster() {
+
+		Node node = new Node(0, "localhost", 9092);
+		List<PartitionInfo> partitions = new ArrayList<>();
+		for (int i = 0; i < PARTITIONS; i++) {
+			partitions.add(new PartitionInfo(TOPIC, i, node, new Node[] { node }, new Node[] { node }));
+		}
+		return new Cluster("my_cluster", Collections.singletonList(node), partitions, Collections.emptySet(), Collections.emptySet());
+	}
+
+	private StickyPartitioner partitioner(int batchSize) {
+
+		Map<String, Object> configs = new HashMap<>();
+		configs.put(ProducerConfig.BATCH_SIZE_CONFIG, String.valueOf(batchSize));
+		configs.put(ProducerConfig.LINGER_MS_CONFIG, 60000);
+
+		StickyPartitioner partitioner = new StickyPartitioner();
+		partitioner.configure(configs);
+		return partitioner;
+	}
+
+	@Test
+	public void stickyWithoutKey() {
+
+		Cluster cluster = this.cluster();
+		StickyPartitioner partitioner = this.partitioner(1000);
+		byte[] value = new byte[100];
+
+		// a batch is filled by 10 records, then the partition changes
+		int partition = partitioner.partition(TOPIC, null, null, value, value, cluster);
+		for (int i = 1; i < 10; i++) {
+			Assert.assertEquals(partition, partitioner.partition(TOPIC, null, null, value, value, cluster));
+		}
+		int next = partitioner.partition(TOPIC, null, null, value, value, cluster);
+		Assert.assertNotEquals(partition, next);
+		Assert.assertEquals(next, partitioner.partition(TOPIC, null, null, value, value, cluster));
+	}
+
+	@Test
+	public void recordsPerBatch() {
+
+		Cluster cluster = this.cluster();
+		StickyPartitioner sticky = this.partitioner(16384);
+		DefaultPartitioner roundRobin = new DefaultPartitioner();
+		byte[] value = new byte[100];
+
+		// consecutive records on the same partition end up in the same batch
+		int stickyRuns = 0, roundRobinRuns = 0;
+		int stickyLast = -1, roundRobinLast = -1;
+		for (int i = 0; i < 10000; i++) {
+
+			int partition = sticky.partition(TOPIC, null, null, value, value, cluster);
+			if (partition != stickyLast)
+				stickyRuns++;
+			stickyLast = partition;
+
+			partition = roundRobin.partition(TOPIC, null, null, value, value, cluster);
+			if (partition != roundRobinLast)
+				roundRobinRuns++;
+			roundRobinLast = partition;
+		}
+
+		Assert.assertEquals(10000, roundRobinRuns);
+		Assert.assertTrue(stickyRuns <= 10000 * value.length / 16384 + 1);
+	}
+
+	@Test
+	public void keyAsDefaultPartitioner() {
+
+		Cluster cluster = this.cluster();
+		StickyPartitioner partitioner = this.partitioner(1000);
+		DefaultPartitioner defaultPartitioner = new DefaultPartitioner();
+
+		for (int i = 0; i < 100; i++) {
+			byte[] key = ("key" + i).getBytes();
+			Assert.assertEquals(defaultPartitioner.partition(TOPIC, key, key, null, null, cluster),
+					partitioner.partition(TOPIC, key, key, null, null, cluster));
+		}
+	}
+}